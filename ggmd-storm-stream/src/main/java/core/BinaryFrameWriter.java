@@ -0,0 +1,153 @@
+package main.java.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sérialisation binaire d'un top, préfixée par sa longueur (entiers big-endian) :
+ *
+ * frame   := MAGIC type(1) longueur(int32) payload
+ * payload := timestamp(int64) raceId(int32) top(int64) total(int32) maxcel(int32) count(int32) record*
+ * record  := varint(id - id précédent) varint(tour) varint(cellule)     (id précédent = -1 au départ)
+ *
+ * Les varints sont non signés, 7 bits par octet, bit de poids fort = suite.
+ * Pour un top complet les id se suivent : un coureur tient en 3 ou 4 octets
+ * contre environ 70 en JSON. Décodé côté topologie par stormTP.stream.FrameDecoder.
+ *
+ * Un top delta ne contient que les coureurs qui ont bougé depuis le top précédent
+ * et pas les métadonnées fixes de la course (total, maxcel), connues par le dernier top complet :
+ * payload := timestamp(int64) raceId(int32) top(int64) count(int32) record*
+ *
+ * Pour une partition, seuls ses coureurs sont écrits (count) ; total reste le nombre
+ * de coureurs de la course.
+ */
+public class BinaryFrameWriter {
+
+	public static final byte MAGIC = (byte) 0xB5;
+	public static final byte FULL = 0;
+	public static final byte DELTA = 1;
+
+	public static final int HEADER_SIZE = 6;
+	public static final int META_SIZE = 8 + 4 + 8 + 4 + 4 + 4;
+	public static final int DELTA_META_SIZE = 8 + 4 + 8 + 4;
+	/* 3 varints de 5 octets au plus */
+	private static final int MAX_RECORD_SIZE = 15;
+
+	private byte[] buf = new byte[0];
+	private ByteBuffer view = ByteBuffer.wrap(this.buf);
+
+
+	/*
+	écriture d'un top complet, la vue retournée est valable jusqu'au prochain appel
+	* */
+	public ByteBuffer write(Tick tick) {
+		return this.write(tick, null);
+	}
+
+	/*
+	écriture d'un top complet restreint aux coureurs de la partition (tous si null)
+	* */
+	public ByteBuffer write(Tick tick, Partition part) {
+		int nbRunners = tick.getNbRunners();
+		int count = (part == null) ? nbRunners : part.size();
+		int[] pos = tick.getCellules();
+
+		this.ensureCapacity(HEADER_SIZE + META_SIZE + count * MAX_RECORD_SIZE);
+		ByteBuffer b = this.view;
+		b.clear();
+
+		b.put(MAGIC);
+		b.put(FULL);
+		b.putInt(0);            // longueur, renseignée à la fin
+		b.putLong(tick.getTimestamp());
+		b.putInt(tick.getRaceId());
+		b.putLong(tick.getTop());
+		b.putInt(nbRunners);
+		b.putInt(tick.getNbCellules());
+		b.putInt(count);
+
+		byte[] a = this.buf;
+		int p = b.position();
+		if (part == null) {
+			for (int i = 0; i < nbRunners; i++) {
+				a[p++] = 1;         // id - id précédent
+				p = putVarint(a, p, tick.getTour(i));
+				p = putVarint(a, p, pos[i]);
+			}
+		} else {
+			int last = -1;
+			for (int i : part.getRunners()) {
+				p = putVarint(a, p, i - last);
+				p = putVarint(a, p, tick.getTour(i));
+				p = putVarint(a, p, pos[i]);
+				last = i;
+			}
+		}
+
+		b.putInt(2, p - HEADER_SIZE);
+		b.position(0);
+		b.limit(p);
+		return b;
+	}
+
+	/*
+	écriture des seuls coureurs qui ont bougé depuis le top précédent
+	* */
+	public ByteBuffer writeDelta(Tick tick) {
+		return this.writeDelta(tick, null);
+	}
+
+	public ByteBuffer writeDelta(Tick tick, Partition part) {
+		int nbRunners = (part == null) ? tick.getNbRunners() : part.size();
+		int[] pos = tick.getCellules();
+
+		this.ensureCapacity(HEADER_SIZE + DELTA_META_SIZE + nbRunners * MAX_RECORD_SIZE);
+		ByteBuffer b = this.view;
+		b.clear();
+
+		b.put(MAGIC);
+		b.put(DELTA);
+		b.putInt(0);
+		b.putLong(tick.getTimestamp());
+		b.putInt(tick.getRaceId());
+		b.putLong(tick.getTop());
+		int countAt = b.position();
+		b.putInt(0);            // nombre de coureurs, renseigné à la fin
+
+		byte[] a = this.buf;
+		int p = b.position();
+		int count = 0;
+		int last = -1;
+		for (int k = 0; k < nbRunners; k++) {
+			int i = (part == null) ? k : part.getRunners()[k];
+			if (tick.hasMoved(i)) {
+				p = putVarint(a, p, i - last);
+				p = putVarint(a, p, tick.getTour(i));
+				p = putVarint(a, p, pos[i]);
+				last = i;
+				count++;
+			}
+		}
+
+		b.putInt(countAt, count);
+		b.putInt(2, p - HEADER_SIZE);
+		b.position(0);
+		b.limit(p);
+		return b;
+	}
+
+	private void ensureCapacity(int size) {
+		if (this.buf.length < size) {
+			this.buf = new byte[size];
+			this.view = ByteBuffer.wrap(this.buf);
+		}
+	}
+
+	static int putVarint(byte[] b, int p, int v) {
+		while ((v & ~0x7F) != 0) {
+			b[p++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		b[p++] = (byte) v;
+		return p;
+	}
+}
@@ -0,0 +1,165 @@
+package main.java.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sérialisation d'un top directement en octets, sans objet JSON intermédiaire.
+ * Le tampon est réutilisé d'un top à l'autre ; le format produit est identique
+ * à celui de javax.json :
+ * {"timestamp":..,"runners":[{"id":..,"top":..,"tour":..,"cellule":..,"total":..,"maxcel":..},..]}
+ * Quand plusieurs courses partagent un port, le champ "raceId" suit "timestamp".
+ * Pour une partition, seuls ses coureurs figurent dans "runners".
+ */
+public class FrameWriter {
+
+	private static final byte[] TIMESTAMP = ascii("{\"timestamp\":");
+	private static final byte[] RACE_ID = ascii(",\"raceId\":");
+	private static final byte[] RUNNERS = ascii(",\"runners\":[");
+	private static final byte[] ID = ascii("{\"id\":");
+	private static final byte[] TOP = ascii(",\"top\":");
+	private static final byte[] TOUR = ascii(",\"tour\":");
+	private static final byte[] CELLULE = ascii(",\"cellule\":");
+	private static final byte[] TOTAL = ascii(",\"total\":");
+	private static final byte[] MAXCEL = ascii(",\"maxcel\":");
+	private static final byte[] END = ascii("]}\n");
+
+	/* taille maximale d'un coureur : libellés + 5 entiers de 11 caractères */
+	private static final int MAX_RUNNER_SIZE = 128;
+
+	private byte[] buf = new byte[0];
+	private ByteBuffer view = ByteBuffer.wrap(this.buf);
+	private int len = 0;
+
+	/* partie commune à tous les coureurs d'un top : ,"top":T */
+	private final byte[] topPart = new byte[TOP.length + 20];
+	private int topLen = 0;
+	/* ,"total":N,"maxcel":M} */
+	private final byte[] tailPart = new byte[TOTAL.length + MAXCEL.length + 23];
+	private int tailLen = 0;
+
+
+	/*
+	écriture d'un top complet, la vue retournée est valable jusqu'au prochain appel.
+	Le champ raceId n'est écrit que si la course en a un.
+	* */
+	public ByteBuffer write(Tick tick) {
+		return this.write(tick, null);
+	}
+
+	/*
+	écriture d'un top restreint aux coureurs de la partition (tous si null)
+	* */
+	public ByteBuffer write(Tick tick, Partition part) {
+		int nbRunners = tick.getNbRunners();
+		int count = (part == null) ? nbRunners : part.size();
+		int[] ids = (part == null) ? null : part.getRunners();
+		int nbCellules = tick.getNbCellules();
+		int raceId = tick.getRaceId();
+		int[] pos = tick.getCellules();
+		int[] cumul = tick.getCumul();
+
+		this.ensureCapacity(96 + count * MAX_RUNNER_SIZE);
+		this.prepareCommon(tick.getTop(), nbRunners, nbCellules);
+
+		byte[] b = this.buf;
+		int p = 0;
+
+		p = put(b, p, TIMESTAMP);
+		p = putLong(b, p, tick.getTimestamp());
+		if (raceId >= 0) {
+			p = put(b, p, RACE_ID);
+			p = putLong(b, p, raceId);
+		}
+		p = put(b, p, RUNNERS);
+
+		for (int k = 0; k < count; k++) {
+			int i = (ids == null) ? k : ids[k];
+			if (k > 0) {
+				b[p++] = ',';
+			}
+			p = put(b, p, ID);
+			p = putLong(b, p, i);
+			System.arraycopy(this.topPart, 0, b, p, this.topLen);
+			p += this.topLen;
+			p = put(b, p, TOUR);
+			p = putLong(b, p, cumul[i] / nbCellules);
+			p = put(b, p, CELLULE);
+			p = putLong(b, p, pos[i]);
+			System.arraycopy(this.tailPart, 0, b, p, this.tailLen);
+			p += this.tailLen;
+		}
+
+		p = put(b, p, END);
+		this.len = p;
+
+		this.view.clear();
+		this.view.limit(p);
+		return this.view;
+	}
+
+	public byte[] getBuffer() {
+		return buf;
+	}
+
+	/* longueur du dernier top écrit, '\n' final compris */
+	public int getLength() {
+		return len;
+	}
+
+	private void prepareCommon(long top, int nbRunners, int nbCellules) {
+		int p = put(this.topPart, 0, TOP);
+		this.topLen = putLong(this.topPart, p, top);
+
+		p = put(this.tailPart, 0, TOTAL);
+		p = putLong(this.tailPart, p, nbRunners);
+		p = put(this.tailPart, p, MAXCEL);
+		p = putLong(this.tailPart, p, nbCellules);
+		this.tailPart[p++] = '}';
+		this.tailLen = p;
+	}
+
+	private void ensureCapacity(int size) {
+		if (this.buf.length < size) {
+			this.buf = new byte[size];
+			this.view = ByteBuffer.wrap(this.buf);
+		}
+	}
+
+	private static int put(byte[] b, int p, byte[] src) {
+		System.arraycopy(src, 0, b, p, src.length);
+		return p + src.length;
+	}
+
+	/*
+	écriture décimale d'un entier sans passer par String
+	* */
+	static int putLong(byte[] b, int p, long v) {
+		if (v == 0) {
+			b[p] = '0';
+			return p + 1;
+		}
+		if (v < 0) {
+			if (v == Long.MIN_VALUE) {
+				return put(b, p, ascii(Long.toString(v)));
+			}
+			b[p++] = '-';
+			v = -v;
+		}
+
+		int digits = 0;
+		for (long t = v; t > 0; t /= 10) {
+			digits++;
+		}
+		int end = p + digits;
+		for (int i = end - 1; i >= p; i--) {
+			b[i] = (byte) ('0' + (v % 10));
+			v /= 10;
+		}
+		return end;
+	}
+
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,127 @@
+package main.java.core;
+
+import java.util.Arrays;
+
+/**
+ * Sous-ensemble des coureurs d'une course diffusé sur son propre port,
+ * pour qu'autant de spouts lisent la course en parallèle sans doublon.
+ * Les id sont rangés par ordre croissant, comme dans un top complet.
+ */
+public class Partition {
+
+	private final int index;
+	private final int count;
+	private final int[] runners;
+
+
+	public Partition(int index, int count, int[] runners) {
+		this.index = index;
+		this.count = count;
+		this.runners = runners;
+	}
+
+	/*
+	découpage des coureurs en k partitions : par blocs d'id contigus (range)
+	ou selon un hachage de l'id qui mélange les coureurs voisins (hash)
+	* */
+	public static Partition[] split(int nbRunners, int k, boolean hash) {
+		int[][] ids = new int[k][];
+		int[] sizes = new int[k];
+
+		if (hash) {
+			for (int i = 0; i < k; i++) {
+				ids[i] = new int[nbRunners / k + 1];
+			}
+			for (int id = 0; id < nbRunners; id++) {
+				int p = partitionOf(id, k);
+				if (sizes[p] == ids[p].length) {
+					ids[p] = Arrays.copyOf(ids[p], ids[p].length * 2);
+				}
+				ids[p][sizes[p]++] = id;
+			}
+		} else {
+			for (int p = 0; p < k; p++) {
+				int from = (int) ((long) nbRunners * p / k);
+				int to = (int) ((long) nbRunners * (p + 1) / k);
+				ids[p] = new int[to - from];
+				for (int id = from; id < to; id++) {
+					ids[p][sizes[p]++] = id;
+				}
+			}
+		}
+
+		Partition[] parts = new Partition[k];
+		for (int p = 0; p < k; p++) {
+			parts[p] = new Partition(p, k, Arrays.copyOf(ids[p], sizes[p]));
+		}
+		return parts;
+	}
+
+	/*
+	coureurs de within (de toute la course si null) dont l'id appartient à l'une des plages
+	ranges = {from0, to0, from1, to1, ..} (bornes incluses, croissantes et disjointes) ;
+	le résultat garde l'index et le nombre de partitions de within
+	* */
+	public static Partition select(int nbRunners, Partition within, int[] ranges) {
+		int n = (within == null) ? nbRunners : within.size();
+		int[] ids = new int[n];
+		int size = 0;
+		for (int k = 0; k < n; k++) {
+			int id = (within == null) ? k : within.runners[k];
+			if (inRanges(id, ranges)) {
+				ids[size++] = id;
+			}
+		}
+		return (within == null)
+				? new Partition(0, 1, Arrays.copyOf(ids, size))
+				: new Partition(within.index, within.count, Arrays.copyOf(ids, size));
+	}
+
+	/* recherche dichotomique de la plage dont le début précède id */
+	private static boolean inRanges(int id, int[] ranges) {
+		int lo = 0;
+		int hi = ranges.length / 2 - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ranges[2 * mid] > id) {
+				hi = mid - 1;
+			} else if (ranges[2 * mid + 1] < id) {
+				lo = mid + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* partition d'un coureur en découpage par hachage (mélange de Murmur3) */
+	public static int partitionOf(int id, int k) {
+		int h = id * 0xcc9e2d51;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return Math.floorMod(h, k);
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/* id des coureurs de la partition, croissants */
+	public int[] getRunners() {
+		return runners;
+	}
+
+	public int size() {
+		return runners.length;
+	}
+
+	@Override
+	public String toString() {
+		return "Partition[" + this.index + "/" + this.count + ", " + this.runners.length + " runners]";
+	}
+}
@@ -0,0 +1,84 @@
+package main.java.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Enregistrement compact d'une course, relu par RaceReplay.
+ *
+ * En-tête (32 octets) : "RACE", version, nbRunners, nbCellules, graine, premier top, réservé.
+ * Puis un enregistrement de taille fixe par top : l'instant (long, ms) suivi des
+ * déplacements (0, 1 ou 2) de tous les coureurs, sur 2 bits chacun.
+ * Les positions se reconstruisent en cumulant les déplacements depuis 0.
+ */
+public class RaceRecorder implements AutoCloseable {
+
+	public static final int MAGIC = 0x52414345;   // "RACE"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	private final FileChannel channel;
+	private final ByteBuffer out;
+	private final int movesSize;
+	private long records = 0;
+
+
+	public RaceRecorder(Path file, int nbRunners, int nbCellules, long seed, int firstTop) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.movesSize = movesSize(nbRunners);
+		this.out = ByteBuffer.allocateDirect(Math.max(1 << 20, recordSize(nbRunners)));
+
+		this.out.putInt(MAGIC);
+		this.out.putInt(VERSION);
+		this.out.putInt(nbRunners);
+		this.out.putInt(nbCellules);
+		this.out.putLong(seed);
+		this.out.putInt(firstTop);
+		this.out.putInt(0);
+	}
+
+	/* octets nécessaires pour les déplacements d'un top */
+	public static int movesSize(int nbRunners) {
+		return (nbRunners + 3) / 4;
+	}
+
+	public static int recordSize(int nbRunners) {
+		return 8 + movesSize(nbRunners);
+	}
+
+	/*
+	ajout d'un top : moves contient les déplacements empaquetés 4 par octet
+	* */
+	public synchronized void record(long timestamp, byte[] moves) throws IOException {
+		if (this.out.remaining() < 8 + this.movesSize) {
+			this.flush();
+		}
+		this.out.putLong(timestamp);
+		this.out.put(moves, 0, this.movesSize);
+		this.records++;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	private void flush() throws IOException {
+		this.out.flip();
+		while (this.out.hasRemaining()) {
+			this.channel.write(this.out);
+		}
+		this.out.clear();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.channel.isOpen()) {
+			this.flush();
+			this.channel.close();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package main.java.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Rejeu d'une course enregistrée par RaceRecorder.
+ * Le fichier est projeté en mémoire par fenêtres d'enregistrements entiers,
+ * aucun tirage aléatoire n'est refait : seuls les déplacements sont cumulés.
+ */
+public class RaceReplay implements RaceSource, AutoCloseable {
+
+	private final FileChannel channel;
+	private final int nbRunners;
+	private final int nbCellules;
+	private final long seed;
+	private final int movesSize;
+	private final int recordSize;
+	private final long nbRecords;
+	private final long window;
+
+	private MappedByteBuffer map = null;
+	private long mapStart = 0;
+	private long record = 0;
+
+	private final Tick tick;
+	private final int[] runnersPos;
+	private final int[] runnersCumul;
+	private int top;
+	private long raceTime = 0;
+
+
+	public RaceReplay(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+		ByteBuffer header = ByteBuffer.allocate(RaceRecorder.HEADER_SIZE);
+		while (header.hasRemaining()) {
+			if (this.channel.read(header, header.position()) < 0) {
+				break;
+			}
+		}
+		header.flip();
+		if (header.remaining() < RaceRecorder.HEADER_SIZE || header.getInt() != RaceRecorder.MAGIC) {
+			throw new IOException("not a race record : " + file);
+		}
+		int version = header.getInt();
+		if (version != RaceRecorder.VERSION) {
+			throw new IOException("unsupported race record version " + version);
+		}
+		this.nbRunners = header.getInt();
+		this.nbCellules = header.getInt();
+		this.seed = header.getLong();
+		this.top = header.getInt() - 1;
+
+		this.movesSize = RaceRecorder.movesSize(this.nbRunners);
+		this.recordSize = RaceRecorder.recordSize(this.nbRunners);
+		this.nbRecords = (this.channel.size() - RaceRecorder.HEADER_SIZE) / this.recordSize;
+		this.window = (long) (Integer.MAX_VALUE / this.recordSize) * this.recordSize;
+
+		this.tick = new Tick(this.nbRunners, this.nbCellules);
+		this.runnersPos = this.tick.getCellules();
+		this.runnersCumul = this.tick.getCumul();
+	}
+
+	/*
+	top suivant : cumul des déplacements enregistrés, horodaté à l'instant du rejeu
+	* */
+	@Override
+	public boolean next() {
+		if (this.record >= this.nbRecords) {
+			return false;
+		}
+
+		try {
+			ByteBuffer in = this.position(this.record++);
+			this.tick.save();
+			this.raceTime = in.getLong();
+
+			int i = 0;
+			for (int b = 0; b < this.movesSize; b++) {
+				int packed = in.get();
+				for (int k = 0; k < 4 && i < this.nbRunners; k++, i++) {
+					int valea = (packed >> (k * 2)) & 3;
+					this.runnersPos[i] = (this.runnersPos[i] + valea) % this.nbCellules;
+					this.runnersCumul[i] += valea;
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("race record unreadable", e);
+		}
+
+		this.top++;
+		this.tick.setTop(this.top);
+		this.tick.setTimestamp(System.currentTimeMillis());
+		return true;
+	}
+
+	@Override
+	public Tick getTick() {
+		return tick;
+	}
+
+	/*
+	positionnement sur un enregistrement, en projetant la fenêtre suivante si besoin
+	* */
+	private ByteBuffer position(long rec) throws IOException {
+		long offset = RaceRecorder.HEADER_SIZE + rec * this.recordSize;
+
+		if (this.map == null || offset + this.recordSize > this.mapStart + this.map.capacity()) {
+			this.mapStart = offset;
+			long size = Math.min(this.window, this.channel.size() - offset);
+			this.map = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		}
+		this.map.position((int) (offset - this.mapStart));
+		return this.map;
+	}
+
+	@Override
+	public int getNbRunners() {
+		return nbRunners;
+	}
+
+	public int getNbCellules() {
+		return nbCellules;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getNbRecords() {
+		return nbRecords;
+	}
+
+	@Override
+	public long getRaceTime() {
+		return raceTime;
+	}
+
+	@Override
+	public long getNextRaceTime() {
+		if (this.record >= this.nbRecords) {
+			return -1;
+		}
+		try {
+			return this.position(this.record).getLong();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
@@ -0,0 +1,22 @@
+package main.java.core;
+
+/**
+ * Source de tops d'une course : générée (StreamRunners) ou rejouée (RaceReplay).
+ * La sérialisation (JSON, binaire) est laissée au serveur.
+ */
+public interface RaceSource {
+
+	/* passage au top suivant, false quand la course est terminée */
+	boolean next();
+
+	/* état du top courant, mis à jour en place par next() */
+	Tick getTick();
+
+	int getNbRunners();
+
+	/* instant (ms) du dernier top dans la course d'origine, sert au cadencement des rejeux */
+	long getRaceTime();
+
+	/* instant (ms) du prochain top dans la course d'origine, -1 s'il n'est pas connu d'avance */
+	long getNextRaceTime();
+}
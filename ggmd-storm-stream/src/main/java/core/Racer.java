@@ -5,6 +5,27 @@ public class Racer {
     int nbRunners = 0;
     int nbCells = 0;
     int port = 0;
+    double ticksPerSecond = 0;      // 0 = délai selon l'animal
+    double runnersPerSecond = 0;
+    boolean unbounded = false;      // aussi vite que les abonnés consomment
+    boolean echo = false;           // recopie des tops sur la console
+    long seed = System.nanoTime();  // graine du tirage des déplacements
+    int maxTops = 0;                // 0 = course sans fin
+    String recordFile = null;       // enregistrement de la course
+    String replayFile = null;       // rejeu d'une course enregistrée
+    double replaySpeed = 1;
+    int raceId = -1;                // -1 : course seule sur son port
+    int nbRaces = 1;                // courses hébergées par le processus
+    boolean sharedPort = false;     // toutes les courses sur le même port
+    int keyframeInterval = 100;     // tops complets en mode delta
+    String multicastGroup = null;   // publication multicast group:port
+    int multicastPort = -1;
+    String multicastIface = null;   // null : boucle locale
+    int mtu = 1472;
+    boolean multicastDelta = false; // deltas entre les tops complets
+    int partitions = 1;             // coureurs répartis sur autant de ports
+    boolean hashPartitioning = false; // par hachage de l'id plutôt que par blocs
+    int history = 0;                // tops conservés pour les abonnés qui reprennent (0 : aucun)
 
 public Racer(){
 
@@ -26,6 +47,90 @@ public Racer(){
         return port;
     }
 
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    public double getRunnersPerSecond() {
+        return runnersPerSecond;
+    }
+
+    public boolean isUnbounded() {
+        return unbounded;
+    }
+
+    public boolean isEcho() {
+        return echo;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getMaxTops() {
+        return maxTops;
+    }
+
+    public String getRecordFile() {
+        return recordFile;
+    }
+
+    public String getReplayFile() {
+        return replayFile;
+    }
+
+    public double getReplaySpeed() {
+        return replaySpeed;
+    }
+
+    public int getRaceId() {
+        return raceId;
+    }
+
+    public int getNbRaces() {
+        return nbRaces;
+    }
+
+    public boolean isSharedPort() {
+        return sharedPort;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public String getMulticastGroup() {
+        return multicastGroup;
+    }
+
+    public int getMulticastPort() {
+        return multicastPort;
+    }
+
+    public String getMulticastIface() {
+        return multicastIface;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public boolean isMulticastDelta() {
+        return multicastDelta;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public boolean isHashPartitioning() {
+        return hashPartitioning;
+    }
+
+    public int getHistory() {
+        return history;
+    }
+
     public void setAnimals(String animals) {
         this.animals = animals;
     }
@@ -41,4 +146,118 @@ public Racer(){
     public void setPort(int port) {
         this.port = port;
     }
+
+    public void setTicksPerSecond(double ticksPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+    }
+
+    public void setRunnersPerSecond(double runnersPerSecond) {
+        this.runnersPerSecond = runnersPerSecond;
+    }
+
+    public void setUnbounded(boolean unbounded) {
+        this.unbounded = unbounded;
+    }
+
+    public void setEcho(boolean echo) {
+        this.echo = echo;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setMaxTops(int maxTops) {
+        this.maxTops = maxTops;
+    }
+
+    public void setRecordFile(String recordFile) {
+        this.recordFile = recordFile;
+    }
+
+    public void setReplayFile(String replayFile) {
+        this.replayFile = replayFile;
+    }
+
+    public void setReplaySpeed(double replaySpeed) {
+        this.replaySpeed = replaySpeed;
+    }
+
+    public void setRaceId(int raceId) {
+        this.raceId = raceId;
+    }
+
+    public void setNbRaces(int nbRaces) {
+        this.nbRaces = nbRaces;
+    }
+
+    public void setSharedPort(boolean sharedPort) {
+        this.sharedPort = sharedPort;
+    }
+
+    public void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public void setMulticast(String multicastGroup, int multicastPort) {
+        this.multicastGroup = multicastGroup;
+        this.multicastPort = multicastPort;
+    }
+
+    public void setMulticastIface(String multicastIface) {
+        this.multicastIface = multicastIface;
+    }
+
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    public void setMulticastDelta(boolean multicastDelta) {
+        this.multicastDelta = multicastDelta;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public void setHashPartitioning(boolean hashPartitioning) {
+        this.hashPartitioning = hashPartitioning;
+    }
+
+    public void setHistory(int history) {
+        this.history = history;
+    }
+
+    /*
+     * copie des propriétés pour une autre course hébergée par le même processus
+     * */
+    public Racer copy() {
+        Racer r = new Racer();
+        r.animals = this.animals;
+        r.nbRunners = this.nbRunners;
+        r.nbCells = this.nbCells;
+        r.port = this.port;
+        r.ticksPerSecond = this.ticksPerSecond;
+        r.runnersPerSecond = this.runnersPerSecond;
+        r.unbounded = this.unbounded;
+        r.echo = this.echo;
+        r.seed = this.seed;
+        r.maxTops = this.maxTops;
+        r.recordFile = this.recordFile;
+        r.replayFile = this.replayFile;
+        r.replaySpeed = this.replaySpeed;
+        r.raceId = this.raceId;
+        r.nbRaces = this.nbRaces;
+        r.sharedPort = this.sharedPort;
+        r.keyframeInterval = this.keyframeInterval;
+        r.multicastGroup = this.multicastGroup;
+        r.multicastPort = this.multicastPort;
+        r.multicastIface = this.multicastIface;
+        r.mtu = this.mtu;
+        r.multicastDelta = this.multicastDelta;
+        r.partitions = this.partitions;
+        r.hashPartitioning = this.hashPartitioning;
+        r.history = this.history;
+        return r;
+    }
 }
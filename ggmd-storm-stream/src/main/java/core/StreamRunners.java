@@ -1,27 +1,28 @@
 package main.java.core;
 
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
-import org.apache.storm.shade.org.json.simple.JSONObject;
-
-import javax.json.Json;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Random;
 
 
-public class StreamRunners {
+public class StreamRunners implements RaceSource {
 
 	private int nbRunners = -1;
 	private int nbCellules = -1;
-	private JsonObject[] runners = null;
+	private Tick tick = null;
 	private int[] runnersPos = null;
 	private int[] runnersCumul = null;
-	public static int top = 1;
+	private FrameWriter writer = null;
+	private Random alea = null;
+	private long seed = 0;
+	private int maxTops = 0;
+	private int nbTops = 0;
+	private RaceRecorder recorder = null;
+	private byte[] moves = null;
+	private int top = 1;
 
 	public StreamRunners(){
 
@@ -32,16 +33,57 @@ public class StreamRunners {
 		this();
 		this.nbRunners = r.getNbRunners();
 		this.nbCellules = r.getNbCellules();
-		
-		this.runners = new JsonObject[this.nbRunners];
-		this.runnersPos = new int[this.nbRunners];
-		this.runnersCumul = new int[this.nbRunners];
+		this.seed = r.getSeed();
+		this.maxTops = r.getMaxTops();
+		// une seule suite aléatoire pour toute la course : même graine, même course
+		this.alea = new Random(this.seed);
+
+		this.tick = new Tick(this.nbRunners, this.nbCellules);
+		this.tick.setRaceId(r.getRaceId());
+		this.runnersPos = this.tick.getCellules();
+		this.runnersCumul = this.tick.getCumul();
+	}
+
+
+
+	@Override
+	public int getNbRunners(){
+		return this.nbRunners;
+	}
+
+	public long getSeed(){
+		return this.seed;
+	}
+
+	public int getTop(){
+		return this.top;
+	}
+
+	@Override
+	public Tick getTick(){
+		return this.tick;
+	}
+
+	@Override
+	public long getRaceTime(){
+		return this.tick.getTimestamp();
+	}
+
+	@Override
+	public long getNextRaceTime(){
+		return -1;
+	}
+
+	/*
+	enregistrement de chaque top généré (déplacements empaquetés, cf. RaceRecorder)
+	* */
+	public void setRecorder(RaceRecorder recorder){
+		this.recorder = recorder;
+		this.moves = new byte[RaceRecorder.movesSize(this.nbRunners)];
 	}
-	
-	
 
 	public void init(){
-		
+
 		// initialisation des position des coureurs
 		for(int i = 0 ; i < this.nbRunners ; i++){
 			this.runnersPos[i] = 0;
@@ -49,70 +91,67 @@ public class StreamRunners {
 		}
 	}
 
+	/*
+	passage au top suivant ; false après maxTops tops
+	* */
+	@Override
+	public boolean next(){
+
+		if( this.maxTops > 0 && this.nbTops >= this.maxTops ){
+			return false;
+		}
+		this.nbTops++;
+		this.tick.save();
+		this.move();
+		this.tick.setTop(this.top);
+		this.tick.setTimestamp(System.currentTimeMillis());
+
+		if( this.recorder != null ){
+			try {
+				this.recorder.record(this.tick.getTimestamp(), this.moves);
+			} catch (IOException e) {
+				throw new IllegalStateException("cannot record race", e);
+			}
+		}
+		return true;
+	}
+
 	public String getMessage(){
-		
-		JsonObjectBuilder r = null;
-		JsonObject row = null;
-		JsonArrayBuilder ar = null;
-		
-		String res = null;
-		
-		ar = Json.createArrayBuilder();
-		
-		this.runners = this.getNewRow();
-		
-		for( int i = 0 ; i < this.runners.length ; i++ ){
-			ar.add( this.runners[i] );
-		}	
-		
-		r = Json.createObjectBuilder();
-		r.add("timestamp", System.currentTimeMillis() );
-		r.add("runners", ar);
-		row = r.build();
-		res = row.toString();
-		System.out.println( res );
-		/*
-		Gson gson = new GsonBuilder().setPrettyPrinting().create();
-		JsonParser jp = new JsonParser();
-		JsonElement je = jp.parse(res);
-		System.out.println( gson.toJson(je) );
-		*/
-		return res;
+
+		if( !this.next() ){
+			return null;
+		}
+		if( this.writer == null ){
+			this.writer = new FrameWriter();
+		}
+		ByteBuffer frame = this.writer.write(this.tick);
+
+		// sans le '\n' final
+		return new String(frame.array(), 0, frame.limit() - 1, StandardCharsets.US_ASCII);
 	}
 
-	public JsonObject[] getNewRow(){
+	/*
+	affectation des nouvelles positions (soit +1 +2 soit rien)
+	* */
+	private void move(){
 
-		JsonObjectBuilder json = Json.createObjectBuilder();
-		JsonObject res = null;
-		int tour = 0;
-		Random alea = new Random(System.currentTimeMillis());
 		int valea = 0;
 
-		top++;
+		this.top++;
+
+		if( this.moves != null ){
+			Arrays.fill(this.moves, (byte) 0);
+		}
 
-		// affectation des nouvelles positions (soit +1 +2 +3 soit rien)
 		for(int i = 0 ; i < this.nbRunners ; i++){
-			valea = alea.nextInt(3);
+			valea = this.alea.nextInt(3);
 			runnersPos[i] = ( runnersPos[i] + valea) % this.nbCellules ;
 			this.runnersCumul[i] += valea;
-
-		tour = this.runnersCumul[i] /  this.nbCellules ;
-
-		json.add("id", i);
-		json.add("top", top);
-		json.add("tour", tour);
-		json.add("cellule", runnersPos[i] );
-		json.add("total", this.nbRunners);
-		json.add("maxcel", this.nbCellules);
-
-			res = json.build();
-
-		this.runners[i] = res;
+			if( this.moves != null ){
+				this.moves[i >> 2] |= (byte) (valea << ((i & 3) * 2));
+			}
 		}
-
-		return this.runners;
-		
 	}
-	
+
 
 }
@@ -0,0 +1,85 @@
+package main.java.core;
+
+/**
+ * État d'une course à un top, tel que le sérialisent les FrameWriter.
+ * Les tableaux appartiennent à la source et sont mis à jour en place à chaque top.
+ */
+public class Tick {
+
+	private final int nbRunners;
+	private final int nbCellules;
+	private final int[] cellules;
+	private final int[] cumul;
+	private final int[] previous;
+	private int raceId = -1;
+	private long top = 0;
+	private long timestamp = 0;
+
+
+	public Tick(int nbRunners, int nbCellules) {
+		this.nbRunners = nbRunners;
+		this.nbCellules = nbCellules;
+		this.cellules = new int[nbRunners];
+		this.cumul = new int[nbRunners];
+		this.previous = new int[nbRunners];
+	}
+
+	/*
+	appelé par la source avant de calculer le top suivant :
+	conserve le cumul courant pour savoir quels coureurs ont bougé
+	* */
+	public void save() {
+		System.arraycopy(this.cumul, 0, this.previous, 0, this.nbRunners);
+	}
+
+	/* le coureur a changé de cellule depuis le top précédent */
+	public boolean hasMoved(int i) {
+		return this.cumul[i] != this.previous[i];
+	}
+
+	public int getNbRunners() {
+		return nbRunners;
+	}
+
+	public int getNbCellules() {
+		return nbCellules;
+	}
+
+	/* position de chaque coureur sur la piste */
+	public int[] getCellules() {
+		return cellules;
+	}
+
+	/* nombre total de cellules parcourues par chaque coureur */
+	public int[] getCumul() {
+		return cumul;
+	}
+
+	public int getTour(int i) {
+		return this.cumul[i] / this.nbCellules;
+	}
+
+	public int getRaceId() {
+		return raceId;
+	}
+
+	public void setRaceId(int raceId) {
+		this.raceId = raceId;
+	}
+
+	public long getTop() {
+		return top;
+	}
+
+	public void setTop(long top) {
+		this.top = top;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+}
@@ -1,10 +1,20 @@
 package main.java.main;
 
+import main.java.core.RaceRecorder;
+import main.java.core.RaceReplay;
+import main.java.core.RaceSource;
 import main.java.core.StreamRunners;
 import main.java.core.Racer;
+import main.java.network.Pacer;
+import main.java.network.Protocol;
 import main.java.network.StreamServer;
 //import network.StreamServer;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
 public class Main {
     /*
      * Fonction principale de lancement de flux
@@ -29,23 +39,187 @@ public class Main {
             course.setNbRunners(Integer.parseInt(nbR));
             course.setNbCellules(Integer.parseInt(nbC));
 
-            // création du flux
-            StreamRunners streamR = new StreamRunners( course );
-            streamR.init();
+            // options facultatives de la forme cle=valeur
+            for (int i = 4; i < args.length; i++) {
+                parseOption(course, args[i]);
+            }
+
+            // création du flux : courses générées ou rejeu d'une course enregistrée
+            List<RaceSource> sources = new ArrayList<>();
+            if (course.getReplayFile() != null) {
+                if (course.getNbRaces() > 1) {
+                    throw new IllegalArgumentException("replay serves a single race");
+                }
+                RaceReplay replay = new RaceReplay(Paths.get(course.getReplayFile()));
+                System.out.println("Replaying " + course.getReplayFile() + " : " + replay.getNbRecords()
+                        + " tops of " + replay.getNbRunners() + " runners (seed " + replay.getSeed() + ")");
+                sources.add(replay);
+            } else {
+                System.out.println("  - Seed: " + course.getSeed());
+                for (int r = 0; r < course.getNbRaces(); r++) {
+                    Racer rc = course.copy();
+                    if (course.getNbRaces() > 1) {
+                        // une graine et un enregistrement distincts par course
+                        rc.setSeed(course.getSeed() + r);
+                        if (course.getRecordFile() != null) {
+                            rc.setRecordFile(course.getRecordFile() + "." + r);
+                        }
+                    }
+                    if (course.isSharedPort()) {
+                        rc.setRaceId(r);
+                    }
+                    sources.add(createRace(rc));
+                }
+            }
 
             // publication du flux
             StreamServer sserver = new StreamServer( typeS , Integer.parseInt(port) );
-            sserver.send( streamR );
+            sserver.setEcho(course.isEcho());
+            sserver.setKeyframeInterval(course.getKeyframeInterval());
+            sserver.setPartitions(course.getPartitions(), course.isHashPartitioning());
+            sserver.setHistory(course.getHistory());
+            if (course.getMulticastGroup() != null) {
+                sserver.setMulticast(course.getMulticastGroup(), course.getMulticastPort());
+                sserver.setMulticastInterface(course.getMulticastIface());
+                sserver.setMtu(course.getMtu());
+                sserver.setMulticastFormat(course.isMulticastDelta() ? Protocol.DELTA : Protocol.BINARY);
+            }
+            if (course.isUnbounded()) {
+                sserver.setPacer(Pacer.unbounded());
+            } else if (course.getTicksPerSecond() > 0) {
+                sserver.setPacer(Pacer.ticksPerSecond(course.getTicksPerSecond()));
+            } else if (course.getRunnersPerSecond() > 0) {
+                sserver.setPacer(Pacer.runnersPerSecond(course.getRunnersPerSecond(), sources.get(0).getNbRunners()));
+            } else if (course.getReplayFile() != null) {
+                sserver.setPacer(Pacer.replay(course.getReplaySpeed()));
+            }
+            sserver.sendAll( sources, course.isSharedPort() );
 
 
         }catch( Exception e ){
             System.out.println( "ERROR : \n" +
                     "arg1 : kind of runner : tortoise or rabbit\n" +
                     "arg2 : number of runners  (more than one)\n" +
-                    "arg3 : number of cells (more than two)" +
-		    "arg3 : port to emit the stream.");
+                    "arg3 : number of cells (more than two)\n" +
+		    "arg4 : port to emit the stream.\n" +
+                    "options : tps=<tops/s>|max  rps=<runners/s>  echo=true\n" +
+                    "          seed=<long>  tops=<nb of tops>  record=<file>\n" +
+                    "          replay=<file>  speed=<factor>|max\n" +
+                    "          races=<nb of races>  shared=true (one port, raceId field)\n" +
+                    "          keyframe=<tops between full frames for delta subscribers>\n" +
+                    "          multicast=<group>:<port>  iface=<name>  mtu=<bytes>  mdelta=true\n" +
+                    "          partitions=<nb of ports per race>  partitioning=range|hash\n" +
+                    "          history=<tops kept for resuming subscribers, default 0 (off), 4 bytes per runner\n" +
+                    "                   per top kept; one race per port, no multicast>");
             System.out.println(e);
         }
     }
 
+    /*
+     * Création d'une course générée, enregistrée si demandé
+     * */
+    private static StreamRunners createRace(Racer rc) throws IOException {
+        StreamRunners streamR = new StreamRunners( rc );
+        streamR.init();
+        if (rc.getRecordFile() != null) {
+            RaceRecorder recorder = new RaceRecorder(Paths.get(rc.getRecordFile()),
+                    rc.getNbRunners(), rc.getNbCellules(), rc.getSeed(), streamR.getTop() + 1);
+            streamR.setRecorder(recorder);
+            // la course est en général interrompue par Ctrl-C : on ferme l'enregistrement à l'arrêt
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recorder.close();
+                    System.out.println("Recorded " + recorder.getRecords() + " tops in " + rc.getRecordFile());
+                } catch (IOException e) {
+                    System.out.println(e);
+                }
+            }));
+        }
+        return streamR;
+    }
+
+    /*
+     * Lecture d'une option cle=valeur
+     * */
+    private static void parseOption(Racer course, String arg){
+        String[] kv = arg.split("=", 2);
+        if (kv.length != 2) {
+            throw new IllegalArgumentException("option must be key=value : " + arg);
+        }
+        switch (kv[0]) {
+            case "tps":
+                if (kv[1].equals("max")) {
+                    course.setUnbounded(true);
+                } else {
+                    course.setTicksPerSecond(Double.parseDouble(kv[1]));
+                }
+                break;
+            case "rps":
+                course.setRunnersPerSecond(Double.parseDouble(kv[1]));
+                break;
+            case "echo":
+                course.setEcho(Boolean.parseBoolean(kv[1]));
+                break;
+            case "seed":
+                course.setSeed(Long.parseLong(kv[1]));
+                break;
+            case "tops":
+                course.setMaxTops(Integer.parseInt(kv[1]));
+                break;
+            case "record":
+                course.setRecordFile(kv[1]);
+                break;
+            case "replay":
+                course.setReplayFile(kv[1]);
+                break;
+            case "races":
+                course.setNbRaces(Integer.parseInt(kv[1]));
+                break;
+            case "shared":
+                course.setSharedPort(Boolean.parseBoolean(kv[1]));
+                break;
+            case "keyframe":
+                course.setKeyframeInterval(Integer.parseInt(kv[1]));
+                break;
+            case "multicast": {
+                int sep = kv[1].lastIndexOf(':');
+                if (sep < 0) {
+                    throw new IllegalArgumentException("multicast must be group:port : " + arg);
+                }
+                course.setMulticast(kv[1].substring(0, sep), Integer.parseInt(kv[1].substring(sep + 1)));
+                break;
+            }
+            case "iface":
+                course.setMulticastIface(kv[1]);
+                break;
+            case "mtu":
+                course.setMtu(Integer.parseInt(kv[1]));
+                break;
+            case "mdelta":
+                course.setMulticastDelta(Boolean.parseBoolean(kv[1]));
+                break;
+            case "partitions":
+                course.setPartitions(Integer.parseInt(kv[1]));
+                break;
+            case "partitioning":
+                if (!kv[1].equals("hash") && !kv[1].equals("range")) {
+                    throw new IllegalArgumentException("partitioning must be hash or range : " + arg);
+                }
+                course.setHashPartitioning(kv[1].equals("hash"));
+                break;
+            case "history":
+                course.setHistory(Integer.parseInt(kv[1]));
+                break;
+            case "speed":
+                if (kv[1].equals("max")) {
+                    course.setUnbounded(true);
+                } else {
+                    course.setReplaySpeed(Double.parseDouble(kv[1]));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option : " + arg);
+        }
+    }
+
 }
@@ -0,0 +1,115 @@
+package main.java.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publication des tops binaires sur un groupe multicast UDP : un seul envoi par top,
+ * quel que soit le nombre de récepteurs.
+ *
+ * Chaque top est découpé en datagrammes tenant dans le MTU :
+ *
+ * datagram := MAGIC flags(1) chunk(int16) chunks(int16) seq(int64) morceau du top
+ *
+ * seq numérote les datagrammes du groupe sans trou ; le premier morceau d'un top a
+ * le numéro seq - chunk. Un récepteur qui constate un trou abandonne le top en cours
+ * (et, en mode delta, attend le prochain top complet). Côté topologie : stormTP.stream.MulticastReceiver.
+ */
+public class MulticastPublisher {
+
+	public static final byte MAGIC = (byte) 0xB6;
+	public static final int HEADER_SIZE = 1 + 1 + 2 + 2 + 8;
+	/* charge utile d'un datagramme : MTU Ethernet moins les en-têtes IP et UDP */
+	public static final int DEFAULT_MTU = 1472;
+
+	private final InetSocketAddress group;
+	private final DatagramChannel channel;
+	private final ByteBuffer datagram;
+	private final ReentrantLock lock = new ReentrantLock();
+	private long seq = 0;
+	private volatile long frames = 0;
+	private volatile long datagrams = 0;
+	private volatile long bytes = 0;
+
+
+	/*
+	iface : nom de l'interface d'émission, null pour la boucle locale
+	* */
+	public MulticastPublisher(String group, int port, String iface, int mtu, int ttl) throws IOException {
+		this.group = new InetSocketAddress(InetAddress.getByName(group), port);
+		if (!this.group.getAddress().isMulticastAddress()) {
+			throw new IllegalArgumentException("not a multicast address : " + group);
+		}
+		NetworkInterface netIf = (iface == null)
+				? NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress())
+				: NetworkInterface.getByName(iface);
+		if (netIf == null) {
+			throw new IllegalArgumentException("unknown network interface : " + iface);
+		}
+
+		this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		this.channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, netIf);
+		this.channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+		this.channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+		this.channel.setOption(StandardSocketOptions.SO_SNDBUF, 4 * 1024 * 1024);
+		this.datagram = ByteBuffer.allocateDirect(Math.max(HEADER_SIZE + 1, mtu));
+	}
+
+	/*
+	envoi d'un top, découpé au MTU ; plusieurs courses peuvent partager un même groupe
+	* */
+	public void publish(ByteBuffer frame) throws IOException {
+		int len = frame.remaining();
+		int room = this.datagram.capacity() - HEADER_SIZE;
+		int chunks = Math.max(1, (len + room - 1) / room);
+		if (chunks > 0xFFFF) {
+			throw new IOException("frame too large for multicast : " + len + " bytes");
+		}
+
+		this.lock.lock();
+		try {
+			int from = frame.position();
+			for (int c = 0; c < chunks; c++) {
+				int n = Math.min(room, len - c * room);
+				ByteBuffer d = this.datagram;
+				d.clear();
+				d.put(MAGIC);
+				d.put((byte) 0);
+				d.putShort((short) c);
+				d.putShort((short) chunks);
+				d.putLong(this.seq++);
+				d.put(HEADER_SIZE, frame, from + c * room, n);
+				d.position(HEADER_SIZE + n);
+				d.flip();
+				this.channel.send(d, this.group);
+				this.bytes += HEADER_SIZE + n;
+			}
+			this.datagrams += chunks;
+			this.frames++;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public void close() {
+		try {
+			this.channel.close();
+		} catch (IOException ignored) {}
+	}
+
+	public InetSocketAddress getGroup() {
+		return group;
+	}
+
+	public String report() {
+		return "[multicast] group=" + this.group + " frames=" + this.frames + " datagrams=" + this.datagrams
+				+ " bytes=" + this.bytes;
+	}
+}
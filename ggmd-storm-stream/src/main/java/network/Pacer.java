@@ -0,0 +1,127 @@
+package main.java.network;
+
+import main.java.core.RaceSource;
+
+/**
+ * Cadencement des tops basé sur System.nanoTime.
+ * L'échéance du n-ième top est calculée depuis le départ (start + n * période)
+ * et non depuis le top précédent : les retards ne s'accumulent pas.
+ */
+public class Pacer {
+
+	/* au-delà de ce retard, on renonce à rattraper et on recale l'horloge */
+	private static final long MAX_CATCH_UP = 1_000_000_000L;
+
+	private final long period;       // ns, 0 = sans limite
+	private final double speed;      // rejeu : accélération par rapport à la course d'origine
+	private final String target;
+
+	private long start = 0;
+	private long origin = -1;
+	private volatile long ticks = 0;
+	private volatile long runners = 0;
+	private long late = 0;
+
+	private long reportNanos = 0;
+	private long reportTicks = 0;
+	private long reportRunners = 0;
+
+
+	private Pacer(long period, double speed, String target) {
+		this.period = period;
+		this.speed = speed;
+		this.target = target;
+	}
+
+	/* un top toutes les delay ms (comportement historique) */
+	public static Pacer fixedDelay(long delay) {
+		return new Pacer(delay * 1_000_000L, 0, delay + " ms/top");
+	}
+
+	public static Pacer ticksPerSecond(double rate) {
+		return new Pacer((long) (1e9 / rate), 0, rate + " tops/s");
+	}
+
+	public static Pacer runnersPerSecond(double rate, int nbRunners) {
+		return new Pacer((long) (1e9 * nbRunners / rate), 0, rate + " runners/s");
+	}
+
+	/* aussi vite que les abonnés consomment */
+	public static Pacer unbounded() {
+		return new Pacer(0, 0, "max");
+	}
+
+	/* rejeu au rythme des instants enregistrés, accéléré speed fois */
+	public static Pacer replay(double speed) {
+		return new Pacer(0, speed, "replay x" + speed);
+	}
+
+	/* même cadencement, compteurs remis à zéro (un Pacer par course) */
+	public Pacer copy() {
+		return new Pacer(this.period, this.speed, this.target);
+	}
+
+	public boolean isUnbounded() {
+		return this.period == 0 && this.speed == 0;
+	}
+
+	public void start() {
+		this.start = System.nanoTime();
+		this.reportNanos = this.start;
+		this.origin = -1;
+		this.ticks = 0;
+	}
+
+	/*
+	enregistrement d'un top émis par src, retourne l'échéance (nanoTime) du suivant
+	* */
+	public long tick(RaceSource src) {
+		this.ticks++;
+		this.runners += src.getNbRunners();
+
+		long deadline;
+		if (this.speed > 0) {
+			// rejeu : écart à l'instant du premier top de la course d'origine
+			if (this.origin < 0) {
+				this.origin = src.getRaceTime();
+			}
+			long next = src.getNextRaceTime();
+			deadline = next < 0 ? System.nanoTime() : this.start + (long) ((next - this.origin) * 1e6 / this.speed);
+		} else {
+			deadline = this.start + this.ticks * this.period;
+		}
+
+		long now = System.nanoTime();
+		if (!this.isUnbounded() && now - deadline > MAX_CATCH_UP) {
+			this.late++;
+			this.start += now - deadline;
+			deadline = now;
+		}
+		return deadline;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	public long getRunners() {
+		return runners;
+	}
+
+	/*
+	débit réellement atteint depuis le dernier rapport
+	* */
+	public String report() {
+		long now = System.nanoTime();
+		double elapsed = (now - this.reportNanos) / 1e9;
+		double tps = elapsed > 0 ? (this.ticks - this.reportTicks) / elapsed : 0;
+		double rps = elapsed > 0 ? (this.runners - this.reportRunners) / elapsed : 0;
+
+		this.reportNanos = now;
+		this.reportTicks = this.ticks;
+		this.reportRunners = this.runners;
+
+		return String.format("[rate] target=%s achieved=%.1f tops/s (%.0f runners/s) tops=%d resync=%d",
+				this.target, tps, rps, this.ticks, this.late);
+	}
+}
@@ -0,0 +1,40 @@
+package main.java.network;
+
+/**
+ * Octets envoyés par un abonné juste après sa connexion pour choisir le format du flux.
+ * Sans poignée de main, l'abonné reçoit du JSON (une ligne par top).
+ * Après un changement de format, le serveur termine les tops JSON déjà en file :
+ * un client binaire saute les lignes commençant par '{' avant le premier MAGIC.
+ *
+ * En DELTA, l'abonné reçoit des tops binaires complets périodiques et, entre deux,
+ * des tops delta ; un top complet suit toujours un top perdu (tampon plein).
+ * Sur un port partagé, chaque delta s'applique au dernier top complet de sa course (raceId) :
+ * l'abonné reçoit un top complet de chaque course avant ses deltas.
+ *
+ * RESUME suivi du dernier top reçu (int64) : un abonné qui se reconnecte reçoit d'abord
+ * les tops suivants encore conservés par le serveur (option history=, désactivée par défaut),
+ * puis le flux courant.
+ * Sans effet sur un port partagé par plusieurs courses ou pour une course publiée en multicast :
+ * le serveur n'y conserve aucun top.
+ *
+ * FILTER suivi du nombre de plages (int16) puis de chaque plage from(int32) to(int32), bornes
+ * incluses, triées et disjointes : seuls les coureurs de ces plages sont sérialisés pour cet
+ * abonné, dans tous les formats (le champ total reste le nombre de coureurs de la course).
+ * Zéro plage rétablit la course entière. Un top complet suit chaque changement de filtre.
+ * Sans effet en multicast, où tous les abonnés partagent le même flux.
+ */
+public final class Protocol {
+
+	public static final byte JSON = 'J';
+	public static final byte BINARY = 'B';
+	public static final byte DELTA = 'D';
+	public static final byte RESUME = 'R';
+	public static final byte FILTER = 'F';
+
+	private Protocol() {
+	}
+
+	public static boolean isFormat(byte b) {
+		return b == JSON || b == BINARY || b == DELTA;
+	}
+}
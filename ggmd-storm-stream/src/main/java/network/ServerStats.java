@@ -0,0 +1,106 @@
+package main.java.network;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compteurs du serveur de flux : abonnés, débit et retard par abonné.
+ */
+public class ServerStats {
+
+	private final AtomicInteger subscribers = new AtomicInteger();
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong framesBroadcast = new AtomicLong();
+	private final AtomicLong framesDropped = new AtomicLong();
+	private final AtomicLong resumes = new AtomicLong();
+	private final AtomicLong framesResent = new AtomicLong();
+	private final AtomicLong framesLost = new AtomicLong();
+
+	private long lastReportNanos = System.nanoTime();
+	private long lastReportBytes = 0;
+	private double bytesPerSecond = 0;
+
+
+	public void subscribed() {
+		this.subscribers.incrementAndGet();
+		this.accepted.incrementAndGet();
+	}
+
+	public void unsubscribed() {
+		this.subscribers.decrementAndGet();
+	}
+
+	public void sent(long bytes) {
+		this.bytesSent.addAndGet(bytes);
+	}
+
+	public void broadcast() {
+		this.framesBroadcast.incrementAndGet();
+	}
+
+	public void dropped() {
+		this.framesDropped.incrementAndGet();
+	}
+
+	/* reprise d'un abonné : tops renvoyés depuis l'historique et tops qui n'y étaient plus */
+	public void resumed(long resent, long lost) {
+		this.resumes.incrementAndGet();
+		this.framesResent.addAndGet(resent);
+		this.framesLost.addAndGet(lost);
+	}
+
+	public int getSubscribers() {
+		return subscribers.get();
+	}
+
+	public long getAccepted() {
+		return accepted.get();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	public long getFramesBroadcast() {
+		return framesBroadcast.get();
+	}
+
+	public long getFramesDropped() {
+		return framesDropped.get();
+	}
+
+	/* débit mesuré lors du dernier rapport */
+	public double getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/*
+	calcul du débit depuis le dernier rapport et mise en forme des compteurs
+	* */
+	public String report(List<Subscriber> clients) {
+		long now = System.nanoTime();
+		long bytes = this.bytesSent.get();
+
+		if (now > this.lastReportNanos) {
+			this.bytesPerSecond = (bytes - this.lastReportBytes) * 1e9 / (now - this.lastReportNanos);
+		}
+		this.lastReportNanos = now;
+		this.lastReportBytes = bytes;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("[stats] subscribers=").append(this.subscribers.get())
+				.append(" frames=").append(this.framesBroadcast.get())
+				.append(" dropped=").append(this.framesDropped.get())
+				.append(" resumes=").append(this.resumes.get())
+				.append(" resent=").append(this.framesResent.get())
+				.append(" lost=").append(this.framesLost.get())
+				.append(" bytes=").append(bytes)
+				.append(String.format(" rate=%.0f B/s", this.bytesPerSecond));
+		for (Subscriber s : clients) {
+			sb.append("\n  ").append(s);
+		}
+		return sb.toString();
+	}
+}
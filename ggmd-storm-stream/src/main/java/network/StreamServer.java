@@ -1,25 +1,89 @@
 package main.java.network;
 
-import main.java.core.StreamRunners;
-
-
-import java.net.*;
-import java.text.SimpleDateFormat;
-
-import java.io.*;
+import main.java.core.Partition;
+import main.java.core.RaceSource;
+import main.java.core.Tick;
 
 import java.io.IOException;
-
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serveur de flux non bloquant : accepte des abonnés à tout moment et
+ * diffuse chaque top, sérialisé une seule fois, à tous les abonnés.
+ *
+ * Un même serveur peut héberger plusieurs courses, chacune sur son port ou
+ * toutes sur un port commun (les tops portent alors un champ raceId).
+ * Les entrées/sorties sont traitées par un unique thread (Selector) ;
+ * chaque course est cadencée sur son propre thread virtuel.
+ *
+ * Les coureurs d'une course peuvent être répartis en partitions, chacune sur son port,
+ * pour être lus en parallèle par plusieurs spouts.
+ *
+ * En plus des abonnés TCP, les tops peuvent être publiés en multicast UDP
+ * (groupe, port + numéro de course) : la course n'attend alors plus d'abonné pour démarrer.
+ */
 public class StreamServer {
 
+	/* taille par défaut du tampon de sortie de chaque abonné */
+	public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+	/* période d'affichage des compteurs (ms) */
+	private static final long STATS_PERIOD = 10000;
+
 	private int port = -1;
-	private int delay = 0;
+	private Pacer pacer = null;
+	private boolean echo = false;
+	private int keyframeInterval = 100;
+	private String multicastGroup = null;
+	private int multicastPort = -1;
+	private String multicastInterface = null;
+	private int mtu = MulticastPublisher.DEFAULT_MTU;
+	private byte multicastFormat = Protocol.BINARY;
+	private int partitions = 1;
+	private boolean hashPartitioning = false;
+	private int historyDepth = 0;
+	private final List<MulticastPublisher> publishers = new ArrayList<>();
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private Selector selector = null;
+	private final List<Endpoint> endpoints = new ArrayList<>();
+	private final List<Pacer> pacers = new CopyOnWriteArrayList<>();
+	private final ServerStats stats = new ServerStats();
+	private final ByteBuffer scratch = ByteBuffer.allocate(512);
+	private volatile boolean running = false;
+	private long reportTicks = 0;
+	private long reportRunners = 0;
+	private long reportNanos = 0;
 
 
 	public StreamServer(String animals, int port) {
+		this(animals, port, DEFAULT_BUFFER_SIZE);
+	}
+
+	public StreamServer(String animals, int port, int bufferSize) {
 		this.port = port;
-		this.delay = this.getDelay(animals);
+		this.pacer = Pacer.fixedDelay(this.getDelay(animals));
+		this.bufferSize = bufferSize;
+	}
 
+	/*
+	remplace le cadencement par défaut (délai selon l'animal) ;
+	chaque course en reçoit une copie
+	* */
+	public void setPacer(Pacer pacer) {
+		this.pacer = pacer;
 	}
 
 	/*
@@ -38,229 +102,534 @@ public class StreamServer {
 
 	}
 
+	/* recopie console de chaque top JSON */
+	public void setEcho(boolean echo) {
+		this.echo = echo;
+	}
 
-	public void send(StreamRunners sr) throws Exception {
+	/* un top complet tous les n tops pour les abonnés en mode delta */
+	public void setKeyframeInterval(int keyframeInterval) {
+		this.keyframeInterval = Math.max(1, keyframeInterval);
+	}
 
-		try {
-			ServerSocket server = new ServerSocket(this.port);
+	/*
+	publication multicast des tops binaires sur group:port (port+r pour la course r)
+	* */
+	public void setMulticast(String group, int port) {
+		this.multicastGroup = group;
+		this.multicastPort = port;
+	}
+
+	/* interface d'émission multicast, boucle locale par défaut */
+	public void setMulticastInterface(String multicastInterface) {
+		this.multicastInterface = multicastInterface;
+	}
 
-			int counter = 0;
-			System.out.println("Server Started ....");
-			Socket serverClient = server.accept();  //server accept the client connection request
+	/* taille maximale d'un datagramme multicast */
+	public void setMtu(int mtu) {
+		this.mtu = mtu;
+	}
 
-			BufferedWriter out = new BufferedWriter(
-					new OutputStreamWriter(serverClient.getOutputStream()));
+	/* Protocol.BINARY : tops complets ; Protocol.DELTA : deltas entre deux tops complets */
+	public void setMulticastFormat(byte multicastFormat) {
+		this.multicastFormat = multicastFormat;
+	}
 
-			while (true) {
+	/*
+	découpage des coureurs de chaque course en k partitions, chacune sur son port :
+	par blocs d'id contigus, ou par hachage de l'id si hash
+	* */
+	public void setPartitions(int k, boolean hash) {
+		this.partitions = Math.max(1, k);
+		this.hashPartitioning = hash;
+	}
 
-				out.write(sr.getMessage());
-				out.newLine();
-				out.flush();
-				try {
-					Thread.sleep(this.delay);
-				} catch (InterruptedException e1) {
-					e1.printStackTrace();
-				}
+	/*
+	nombre de tops conservés par course pour les abonnés qui reprennent après une reconnexion ;
+	seules les courses seules sur leurs ports et sans multicast en conservent (cf. resume)
+	* */
+	public void setHistory(int tops) {
+		this.historyDepth = tops;
+	}
+
+	public ServerStats getStats() {
+		return stats;
+	}
+
+
+	/*
+	diffusion des tops de la source jusqu'à la fin de la course (sans fin pour une course générée)
+	* */
+	public void send(RaceSource sr) throws Exception {
+		this.sendAll(List.of(sr), true);
+	}
+
+	/*
+	diffusion de plusieurs courses : sur port, port+1, ... ou toutes sur port si sharedPort.
+	Avec k partitions, la partition p de la course r est diffusée sur port + r*k + p
+	(port + p si sharedPort) ; de même pour les groupes multicast.
+	* */
+	public void sendAll(List<? extends RaceSource> races, boolean sharedPort) throws Exception {
 
+		try {
+			this.selector = Selector.open();
+			int k = this.partitions;
+			int channels = sharedPort ? k : races.size() * k;
+			for (int c = 0; c < channels; c++) {
+				this.listen(this.port + c);
+				if (this.multicastGroup != null) {
+					this.publishers.add(new MulticastPublisher(this.multicastGroup, this.multicastPort + c,
+							this.multicastInterface, this.mtu, 1));
+				}
+			}
+			System.out.println("Server Started .... (" + races.size() + " race(s) in " + k + " partition(s) on "
+					+ this.endpoints.size() + " port(s), " + this.publishers.size() + " multicast group(s))");
+
+			this.running = true;
+			Thread io = new Thread(this::loop, "stream-io");
+			io.start();
+
+			// reprise possible seulement pour une course seule sur ses ports, diffusée en TCP
+			boolean resumable = this.historyDepth > 0 && this.publishers.isEmpty()
+					&& (!sharedPort || races.size() == 1);
+			List<Thread> threads = new ArrayList<>();
+			for (int r = 0; r < races.size(); r++) {
+				RaceSource src = races.get(r);
+				Partition[] parts = (k > 1)
+						? Partition.split(src.getNbRunners(), k, this.hashPartitioning)
+						: new Partition[] { null };
+				Output[] outs = new Output[k];
+				for (int p = 0; p < k; p++) {
+					int c = (sharedPort ? 0 : r * k) + p;
+					outs[p] = new Output(this.endpoints.get(c),
+							this.publishers.isEmpty() ? null : this.publishers.get(c), parts[p]);
+					outs[p].endpoint.races++;
+				}
+				Pacer pc = this.pacer.copy();
+				this.pacers.add(pc);
+				threads.add(Thread.ofVirtual().name("race-" + r).start(() -> this.race(outs, src, pc, resumable)));
 			}
+			for (Thread t : threads) {
+				t.join();
+			}
+
+			this.running = false;
+			this.selector.wakeup();
+			io.join();
+			System.out.println(this.report());
 		} catch (Exception e) {
 			System.out.println(e);
+		} finally {
+			this.close();
 		}
 	}
 
-}
-			/*	udpSocket = new DatagramSocket();
-				mcIPAddress = InetAddress.getByName(this.ipUDP);
-				group = new InetSocketAddress( mcIPAddress, this.port );
-				netIf = NetworkInterface.getByName("enp1s0");
-				skt = new MulticastSocket( this.port );
-				packet = null;
+	/*
+	boucle d'une course : un top par échéance du Pacer, diffusé sur chacune de ses partitions ;
+	les derniers tops ne sont conservés que si resumable
+	* */
+	private void race(Output[] outs, RaceSource sr, Pacer pacer, boolean resumable) {
+		try {
+			// la course démarre quand chaque partition a un abonné, ou tout de suite si elle est publiée en multicast
+			boolean multicast = outs[0].publisher != null;
+			if (!multicast) {
+				for (Output o : outs) {
+					o.endpoint.awaitSubscriber();
+				}
+			}
+			pacer.start();
+
+			boolean first = true;
+			TickHistory history = null;
+			while (sr.next()) {
+
+				Tick tick = sr.getTick();
+				boolean keyframe = first || tick.getTop() % this.keyframeInterval == 0;
+				first = false;
+				for (Output o : outs) {
+					o.encoder.reset(tick);
+					this.broadcast(o, history, tick);
+					if (multicast) {
+						o.publisher.publish(o.encoder.get(this.multicastFormat == Protocol.DELTA && !keyframe
+								? Protocol.DELTA : Protocol.BINARY));
+					}
+					if (this.echo) {
+						ByteBuffer frame = o.encoder.get(Protocol.JSON);
+						System.out.write(frame.array(), 0, frame.limit());
+					}
+				}
+				if (resumable) {
+					if (history == null) {
+						history = new TickHistory(this.historyDepth, tick.getNbRunners(), tick.getNbCellules(),
+								tick.getRaceId());
+					}
+					history.record(tick);
+				}
+				long deadline = pacer.tick(sr);
 
-				skt.joinGroup( new InetSocketAddress(mcIPAddress, 0), netIf );
-				byte[] msg = null;
-				json = row.getMessage();
-				msg = json.getBytes();
-				try{
-					packet = new DatagramPacket(msg, msg.length, group);
-					//packet.setAddress(mcIPAddress);
-					//packet.setPort(this.port);
-					skt.send(packet);
+				if (pacer.isUnbounded()) {
+					// top suivant dès que les abonnés ont tout consommé
+					for (Output o : outs) {
+						o.endpoint.awaitDrained(!multicast);
+					}
+				} else {
+					long wait;
+					while ((wait = deadline - System.nanoTime()) > 0) {
+						LockSupport.parkNanos(wait);
+					}
+				}
+			}
 
-					SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SS");
-//				System.out.println( sdf.format(System.currentTimeMillis()) + ":" + json.substring(0,150)   );
-					System.out.println( sdf.format(System.currentTimeMillis()) + ":" + json  );
+			// fin de course : on laisse les abonnés recevoir les derniers tops
+			for (Output o : outs) {
+				o.endpoint.awaitDrained(false);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException | RuntimeException e) {
+			System.out.println(e);
+		}
+	}
 
-				}catch(IOException e){ e.printStackTrace();}
 
+	private int listen(int port) throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		Endpoint ep = new Endpoint(port, server);
+		server.register(this.selector, SelectionKey.OP_ACCEPT, ep);
+		this.endpoints.add(ep);
+		return this.endpoints.size() - 1;
+	}
 
+	private void close() {
+		for (Endpoint ep : this.endpoints) {
+			for (Subscriber s : ep.subscribers) {
+				s.close();
+			}
+			ep.subscribers.clear();
+			try {
+				ep.server.close();
+			} catch (IOException ignored) {}
+		}
+		for (MulticastPublisher mp : this.publishers) {
+			mp.close();
+		}
+		try {
+			if (this.selector != null) {
+				this.selector.close();
+			}
+		} catch (IOException ignored) {}
+	}
 
-				try
-				{
-					fr = new FileReader (f);
-					br = new BufferedReader (fr);
+	/*
+	thread d'entrées/sorties : connexions, écritures en attente, déconnexions et compteurs
+	* */
+	private void loop() {
+		long nextReport = System.currentTimeMillis() + STATS_PERIOD;
+		this.reportNanos = System.nanoTime();
 
-					try
-					{
-						line = br.readLine();
+		try {
+			while (this.running) {
+				this.poll(Math.max(1, nextReport - System.currentTimeMillis()));
 
-						go = ( line.equals("GO") );
+				long now = System.currentTimeMillis();
+				if (now >= nextReport) {
+					System.out.println(this.report());
+					nextReport = now + STATS_PERIOD;
+				}
+			}
+		} catch (IOException e) {
+			System.out.println(e);
+		}
+	}
+
+	/*
+	attente (au plus timeout ms) puis traitement des événements réseau
+	* */
+	private void poll(long timeout) throws IOException {
+		this.selector.select(timeout);
+
+		Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+		while (it.hasNext()) {
+			SelectionKey key = it.next();
+			it.remove();
 
-						br.close();
-						fr.close();
+			if (!key.isValid()) {
+				continue;
+			}
+			if (key.isAcceptable()) {
+				this.accept((Endpoint) key.attachment());
+				continue;
+			}
+
+			Subscriber s = (Subscriber) key.attachment();
+			try {
+				if (key.isReadable()) {
+					this.read(s);
+				}
+				if (key.isValid() && key.isWritable()) {
+					this.stats.sent(s.flush());
+					if (s.getPendingBytes() == 0) {
+						s.getEndpoint().signal();
 					}
-					catch (IOException e){ e.printStackTrace();}
 				}
-				catch (FileNotFoundException ex){ex.printStackTrace();}
+			} catch (IOException e) {
+				this.remove(s);
+			}
+		}
+	}
 
+	private void accept(Endpoint ep) throws IOException {
+		SocketChannel client;
+		while ((client = ep.server.accept()) != null) {
+			client.configureBlocking(false);
+			client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			SelectionKey key = client.register(this.selector, SelectionKey.OP_READ);
+			Subscriber s = new Subscriber(client, key, this.bufferSize, ep);
+			key.attach(s);
+			ep.subscribers.add(s);
+			this.stats.subscribed();
+			ep.signal();
+			System.out.println("New subscriber " + s.getAddress() + " on port " + ep.port
+					+ " (" + this.stats.getSubscribers() + " connected)");
+		}
+	}
 
+	/*
+	lecture de la poignée de main (format du flux, filtre, reprise) ; sert aussi à détecter la déconnexion
+	* */
+	private void read(Subscriber s) throws IOException {
+		this.scratch.clear();
+		if (s.getChannel().read(this.scratch) < 0) {
+			this.remove(s);
+			return;
+		}
+		this.scratch.flip();
+		while (this.scratch.hasRemaining()) {
+			byte b = this.scratch.get();
+			if (s.isReadingResume()) {
+				s.resumeByte(b);
+			} else if (s.isReadingFilter()) {
+				s.filterByte(b);
+			} else if (b == Protocol.RESUME) {
+				s.startResume();
+			} else if (b == Protocol.FILTER) {
+				s.startFilter();
+			} else if (Protocol.isFormat(b) && b != s.getFormat()) {
+				s.setFormat(b);
+				System.out.println("Subscriber " + s.getAddress() + " switched to format " + (char) b);
+			}
+		}
+	}
 
+	private void remove(Subscriber s) {
+		Endpoint ep = s.getEndpoint();
+		if (ep.subscribers.remove(s)) {
+			s.close();
+			this.stats.unsubscribed();
+			ep.signal();
+			System.out.println("Subscriber " + s.getAddress() + " left ("
+					+ this.stats.getSubscribers() + " connected)");
+		}
+	}
 
-				//}
-				try {
-					Thread.sleep(this.delay );
-				} catch (InterruptedException e1) {
-					e1.printStackTrace();
+	/*
+	diffusion du top courant à tous les abonnés d'un port (thread de la course),
+	sérialisé une fois par format demandé ; un abonné filtré a son propre encodeur
+	* */
+	private void broadcast(Output o, TickHistory history, Tick tick) {
+		this.stats.broadcast();
+		boolean pending = false;
+		long top = tick.getTop();
+		boolean keyframe = top % this.keyframeInterval == 0;
+
+		for (Subscriber s : o.endpoint.subscribers) {
+			TickEncoder encoder = s.filteredEncoder(o, o.encoder.getPartition(), tick.getNbRunners());
+			if (encoder == null) {
+				encoder = o.encoder;
+			} else {
+				encoder.reset(tick);
+			}
+			long resumeFrom = s.takeResume();
+			if (resumeFrom >= 0) {
+				this.resume(s, o, history, resumeFrom, top, encoder);
+			}
+			byte format = s.getFormat();
+			boolean full = format == Protocol.DELTA && (keyframe || s.needsKeyframe(o));
+			if (s.offer(encoder.get(full ? Protocol.BINARY : format))) {
+				if (full) {
+					s.keyframeSent(o);
 				}
-				cpt++;
+			} else {
+				this.stats.dropped();
+			}
+			try {
+				this.stats.sent(s.flush());
+				pending |= s.getPendingBytes() > 0;
+			} catch (IOException e) {
+				this.remove(s);
+			}
+		}
 
+		// le reste sera écrit par le thread d'entrées/sorties
+		if (pending) {
+			this.selector.wakeup();
+		}
+	}
 
+	/*
+	reprise d'un abonné reconnecté : tops conservés postérieurs au dernier top qu'il a reçu,
+	avant le top courant. Un delta ne peut suivre que des tops complets.
+	* */
+	private void resume(Subscriber s, Output o, TickHistory history, long lastTop, long top, TickEncoder encoder) {
+		if (history == null) {
+			System.out.println("Subscriber " + s.getAddress() + " asked to resume after top " + lastTop
+					+ " : no history" + (o.endpoint.races > 1 ? " on a shared port"
+							: o.publisher != null ? " for a multicast race" : ""));
+			return;
+		}
+		if (lastTop >= top) {
+			// l'abonné suivait une course précédente (générateur redémarré)
+			System.out.println("Subscriber " + s.getAddress() + " asked to resume after top " + lastTop
+					+ " but the race is at top " + top);
+			return;
+		}
+
+		int count = history.countAfter(lastTop);
+		long missing = (top - lastTop - 1) - count;
+		byte format = (s.getFormat() == Protocol.DELTA) ? Protocol.BINARY : s.getFormat();
+		// abonné filtré : les tops rejoués sont restreints aux mêmes coureurs
+		TickEncoder replay = (encoder == o.encoder) ? o.history : new TickEncoder(encoder.getPartition());
+		int sent = 0;
+		for (int k = 0; k < count; k++) {
+			replay.reset(history.get(k, count));
+			if (!s.offer(replay.get(format))) {
+				break;
 			}
+			sent++;
+		}
+		this.stats.resumed(sent, missing + (count - sent));
+		System.out.println("Subscriber " + s.getAddress() + " resumed after top " + lastTop + " : "
+				+ sent + " tops resent, " + (missing + count - sent) + " lost");
+	}
 
-		}catch(IOException e){
-			e.printStackTrace();
-		}finally{
-			udpSocket.close();
+	/*
+	débit atteint par l'ensemble des courses depuis le dernier rapport, puis compteurs réseau
+	* */
+	private String report() {
+		List<Subscriber> clients = new ArrayList<>();
+		for (Endpoint ep : this.endpoints) {
+			clients.addAll(ep.subscribers);
+		}
+		StringBuilder multicast = new StringBuilder();
+		for (MulticastPublisher mp : this.publishers) {
+			multicast.append("\n").append(mp.report());
+		}
+		if (this.pacers.size() == 1) {
+			return this.pacers.get(0).report() + "\n" + this.stats.report(clients) + multicast;
 		}
 
+		long ticks = 0;
+		long runners = 0;
+		for (Pacer p : this.pacers) {
+			ticks += p.getTicks();
+			runners += p.getRunners();
+		}
+		long now = System.nanoTime();
+		double elapsed = (now - this.reportNanos) / 1e9;
+		String rate = String.format("[rate] races=%d achieved=%.1f tops/s (%.0f runners/s) tops=%d",
+				this.pacers.size(), (ticks - this.reportTicks) / elapsed,
+				(runners - this.reportRunners) / elapsed, ticks);
+		this.reportNanos = now;
+		this.reportTicks = ticks;
+		this.reportRunners = runners;
+		return rate + "\n" + this.stats.report(clients) + multicast;
 	}
 
-}*/
 
-/*package main.java.network;
+	/**
+	 * Sorties d'une partition d'une course : port TCP, groupe multicast éventuel et encodeur.
+	 */
+	private static class Output {
 
-import java.io.BufferedReader;
+		final Endpoint endpoint;
+		final MulticastPublisher publisher;
+		final TickEncoder encoder;
+		/* encodage des tops conservés, pour les reprises */
+		final TickEncoder history;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
+		Output(Endpoint endpoint, MulticastPublisher publisher, Partition partition) {
+			this.endpoint = endpoint;
+			this.publisher = publisher;
+			this.encoder = new TickEncoder(partition);
+			this.history = new TickEncoder(partition);
+		}
+	}
 
-import main.java.core.Row;
-import main.java.core.*;
 
-public class StreamServer {
+	/**
+	 * Port d'écoute et ses abonnés. Les threads des courses y attendent
+	 * un premier abonné ou la vidange des tampons (verrou compatible threads virtuels).
+	 */
+	static class Endpoint {
 
-	public static final String STATEFILE = "./streams/streamstate";
-	private int id = -1;
-	private int port = -1;
-	private String ipUDP = "";
-	
-	private String infoEmit = "";
-	private boolean go = true;
-	private double cpt = 0;
-	
-	
-	
-	
-	public StreamServer(int numRoom){
-		this.port = 9000 + numRoom;
-		this.ipUDP = "224.0.0." + numRoom;
-		this.go = true;
-			
-	}
-	
-	
-	 public  void send(JsonStream stream) throws IOException {
-	 
-	 int j;
-	 DatagramSocket udpSocket = null;
-	 InetAddress mcIPAddress = null;
-	 DatagramPacket packet = null;
-	 int cpt = 0;
-	 
-	 File f = new File (STATEFILE);
-	 FileReader fr = null;
-	 BufferedReader br = null;
-	 String line = null;
-	 
-	 try{
-		 
-	    udpSocket = new DatagramSocket();
-	    
-	    packet = null;
-	    byte[] msg = null;
-	    String message = null;
-	    String[] rows = null;
-	   	    
-		System.out.println("Sending...");
-		
-		cpt = 1;
-		
-		while( go ){
-		 
-		// rows = stream.getNewRow(cpt);
-			
-	//	for( j = 1 ; j <= rows.length ; j++ ){	
-			message = stream.getMessage();
-			msg = message.getBytes(); 
-			//rows[j-1].getBytes();
-		
-			//mcIPAddress = InetAddress.getByName(this.ipUDP + j);
-			mcIPAddress = InetAddress.getByName(this.ipUDP);
-			 		
-			packet = new DatagramPacket(msg, msg.length);
-			packet.setAddress(mcIPAddress);
-			//packet.setPort(this.port+j);
-			packet.setPort(this.port);
-			udpSocket.send(packet);
- 		
- 		
-			//System.out.println("row:"+ rows[j-1] + "; timestamp: " + System.currentTimeMillis() + "; " + (this.ipUDP + j) + "; " + (this.port+j));
-			System.out.println("rows at timestamp: " + System.currentTimeMillis() + " via IP: " + this.ipUDP + " and port: " + this.port);
-			System.out.println(message);
-			try
-			{
-			    fr = new FileReader (f);
-			    br = new BufferedReader (fr);
-			 
-			    try
-			    {
-			        line = br.readLine();
-			        
-			        go = ( line.equals("GO") );
-			      
-			        br.close();
-			        fr.close();
-			    }
-			    catch (IOException e){ e.printStackTrace();}
+		final int port;
+		final ServerSocketChannel server;
+		final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+		/* nombre de courses diffusées sur ce port */
+		int races = 0;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition changed = this.lock.newCondition();
+
+		Endpoint(int port, ServerSocketChannel server) {
+			this.port = port;
+			this.server = server;
+		}
+
+		void signal() {
+			this.lock.lock();
+			try {
+				this.changed.signalAll();
+			} finally {
+				this.lock.unlock();
 			}
-			catch (FileNotFoundException ex){ex.printStackTrace();}
-			
-			
-		
- 
- 		//}
-		try {
-		Thread.sleep(5000);
-		} catch (InterruptedException e1) {
-			e1.printStackTrace();
 		}
-		cpt++;
-		
-		
-	 }
-		
-	 }catch(IOException e){
-		 e.printStackTrace();
-	 }finally{		
-	    udpSocket.close();
-	 }
-	    
-}
-	
+
+		void awaitSubscriber() throws InterruptedException {
+			this.lock.lock();
+			try {
+				while (this.subscribers.isEmpty()) {
+					this.changed.await();
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/*
+		attente de la vidange de tous les tampons ; withSubscriber : attendre aussi un abonné
+		* */
+		void awaitDrained(boolean withSubscriber) throws InterruptedException {
+			this.lock.lock();
+			try {
+				while ((withSubscriber && this.subscribers.isEmpty()) || this.hasPending()) {
+					// délai de garde : le thread de la course peut aussi vider les tampons sans signaler
+					this.changed.await(10, TimeUnit.MILLISECONDS);
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		private boolean hasPending() {
+			for (Subscriber s : this.subscribers) {
+				if (s.getPendingBytes() > 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
 
 }
-*/
\ No newline at end of file
@@ -0,0 +1,297 @@
+package main.java.network;
+
+import main.java.core.Partition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Abonné au flux : une connexion cliente et son tampon de sortie borné.
+ * Un abonné trop lent perd des tops entiers plutôt que de ralentir les autres.
+ * Le tampon est rempli par le thread de la course et vidé par lui ou par le
+ * thread d'entrées/sorties, d'où le verrou.
+ */
+public class Subscriber {
+
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final String address;
+	private final StreamServer.Endpoint endpoint;
+	private final ReentrantLock lock = new ReentrantLock();
+	private ByteBuffer out = null;
+	private volatile byte format = Protocol.JSON;
+	/*
+	en mode delta : sorties (une par course partageant le port) dont un top complet a été
+	envoyé depuis le dernier top perdu ; le prochain top des autres doit être complet
+	* */
+	private final Set<Object> keyframed = ConcurrentHashMap.newKeySet();
+	/* commande RESUME en cours de lecture (thread d'entrées/sorties) */
+	private int resumeBytes = 0;
+	private long resumeTop = 0;
+	/* dernier top reçu par l'abonné avant sa reconnexion, -1 si aucune reprise demandée */
+	private final AtomicLong resumeFrom = new AtomicLong(-1);
+	/* commande FILTER en cours de lecture : octets restants de l'en-tête, puis des plages */
+	private int filterHeader = 0;
+	private int filterCount = 0;
+	private int[] filterRead = null;
+	private int filterPos = 0;
+	private int filterValue = 0;
+	/* plages de coureurs demandées, null : toute la course ; version incrémentée à chaque changement */
+	private volatile int[] filter = null;
+	private volatile int filterVersion = 0;
+	/* encodeur restreint au filtre, par sortie (une course partageant le port) */
+	private final Map<Object, Filtered> filtered = new ConcurrentHashMap<>();
+
+	private volatile long bytesQueued = 0;
+	private volatile long bytesSent = 0;
+	private volatile long framesQueued = 0;
+	private volatile long framesDropped = 0;
+	private volatile int lastFrameSize = 0;
+
+
+	public Subscriber(SocketChannel channel, SelectionKey key, int capacity, StreamServer.Endpoint endpoint)
+			throws IOException {
+		this.channel = channel;
+		this.key = key;
+		this.endpoint = endpoint;
+		this.address = String.valueOf(channel.getRemoteAddress());
+		this.out = ByteBuffer.allocateDirect(capacity);
+	}
+
+	/*
+	ajout d'un top au tampon de sortie ; le top est ignoré s'il ne tient pas.
+	Un top plus grand que le tampon est tout de même accepté quand le tampon est vide.
+	* */
+	public boolean offer(ByteBuffer frame) {
+		int len = frame.remaining();
+
+		this.lock.lock();
+		try {
+			if (len > this.out.remaining()) {
+				if (this.out.position() > 0) {
+					this.framesDropped++;
+					// on ignore de quelle course était le top perdu : toutes repartent d'un top complet
+					this.keyframed.clear();
+					return false;
+				}
+				this.out = ByteBuffer.allocateDirect(len);
+			}
+
+			// copie absolue : ni la position du top partagé ni une vue ne sont créées
+			this.out.put(this.out.position(), frame, frame.position(), len);
+			this.out.position(this.out.position() + len);
+			this.bytesQueued += len;
+			this.framesQueued++;
+			this.lastFrameSize = len;
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/*
+	écriture non bloquante de ce qui est en attente ; retourne le nombre d'octets écrits
+	* */
+	public int flush() throws IOException {
+		int n = 0;
+
+		this.lock.lock();
+		try {
+			if (!this.key.isValid()) {
+				throw new IOException("subscriber closed");
+			}
+			if (this.out.position() > 0) {
+				this.out.flip();
+				n = this.channel.write(this.out);
+				this.out.compact();
+				this.bytesSent += n;
+			}
+
+			int ops = SelectionKey.OP_READ;
+			if (this.out.position() > 0) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			this.key.interestOps(ops);
+			return n;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public void close() {
+		this.key.cancel();
+		try {
+			this.channel.close();
+		} catch (IOException ignored) {}
+	}
+
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	public byte getFormat() {
+		return format;
+	}
+
+	public void setFormat(byte format) {
+		this.keyframed.clear();
+		this.format = format;
+	}
+
+	/* en mode delta : le prochain top de la sortie output doit être complet */
+	public boolean needsKeyframe(Object output) {
+		return !this.keyframed.contains(output);
+	}
+
+	public void keyframeSent(Object output) {
+		this.keyframed.add(output);
+	}
+
+	/* début d'une commande RESUME : suivent 8 octets */
+	void startResume() {
+		this.resumeBytes = 8;
+		this.resumeTop = 0;
+	}
+
+	boolean isReadingResume() {
+		return this.resumeBytes > 0;
+	}
+
+	void resumeByte(byte b) {
+		this.resumeTop = (this.resumeTop << 8) | (b & 0xFF);
+		if (--this.resumeBytes == 0) {
+			this.resumeFrom.set(this.resumeTop);
+		}
+	}
+
+	/* reprise demandée (dernier top reçu), -1 si aucune ; la demande est consommée */
+	public long takeResume() {
+		return this.resumeFrom.getAndSet(-1);
+	}
+
+	/* début d'une commande FILTER : suivent le nombre de plages (2 octets) puis les plages */
+	void startFilter() {
+		this.filterHeader = 2;
+		this.filterCount = 0;
+		this.filterRead = null;
+	}
+
+	boolean isReadingFilter() {
+		return this.filterHeader > 0 || this.filterRead != null;
+	}
+
+	void filterByte(byte b) {
+		if (this.filterHeader > 0) {
+			this.filterCount = (this.filterCount << 8) | (b & 0xFF);
+			if (--this.filterHeader == 0) {
+				if (this.filterCount == 0) {
+					this.setFilter(null);
+				} else {
+					this.filterRead = new int[2 * this.filterCount];
+					this.filterPos = 0;
+					this.filterValue = 0;
+				}
+			}
+			return;
+		}
+		this.filterValue = (this.filterValue << 8) | (b & 0xFF);
+		if ((++this.filterPos & 3) == 0) {
+			this.filterRead[(this.filterPos >> 2) - 1] = this.filterValue;
+			this.filterValue = 0;
+			if (this.filterPos == 4 * this.filterRead.length) {
+				this.setFilter(this.filterRead);
+				this.filterRead = null;
+			}
+		}
+	}
+
+	private void setFilter(int[] ranges) {
+		this.filter = ranges;
+		this.filterVersion++;
+		this.keyframed.clear();
+	}
+
+	/* plages de coureurs demandées, null si aucun filtre */
+	public int[] getFilter() {
+		return filter;
+	}
+
+	/*
+	encodeur des seuls coureurs demandés parmi ceux de la sortie output (partition within),
+	reconstruit après chaque changement de filtre ; null sans filtre : l'encodeur partagé convient.
+	Appelé par le thread de la course de output.
+	* */
+	public TickEncoder filteredEncoder(Object output, Partition within, int nbRunners) {
+		int version = this.filterVersion;
+		int[] ranges = this.filter;
+		if (ranges == null) {
+			this.filtered.remove(output);
+			return null;
+		}
+		Filtered f = this.filtered.get(output);
+		if (f == null || f.version != version) {
+			Partition part = Partition.select(nbRunners, within, ranges);
+			f = new Filtered(version, new TickEncoder(part));
+			this.filtered.put(output, f);
+			System.out.println("Subscriber " + this.address + " filtered on " + (ranges.length / 2) + " range(s) : "
+					+ part.size() + " runner(s)");
+		}
+		return f.encoder;
+	}
+
+	public StreamServer.Endpoint getEndpoint() {
+		return endpoint;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	/* octets en attente d'envoi */
+	public long getPendingBytes() {
+		return this.bytesQueued - this.bytesSent;
+	}
+
+	/* retard estimé en nombre de tops */
+	public long getLag() {
+		if (this.lastFrameSize == 0) {
+			return 0;
+		}
+		return (this.getPendingBytes() + this.lastFrameSize - 1) / this.lastFrameSize;
+	}
+
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	public long getFramesQueued() {
+		return framesQueued;
+	}
+
+	public long getFramesDropped() {
+		return framesDropped;
+	}
+
+	private static final class Filtered {
+		final int version;
+		final TickEncoder encoder;
+
+		Filtered(int version, TickEncoder encoder) {
+			this.version = version;
+			this.encoder = encoder;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Subscriber[" + this.address + ", " + (char) this.format + (this.filter == null ? "" : ", filtered") + ", lag=" + this.getLag() + " tops/" + this.getPendingBytes()
+				+ " bytes, dropped=" + this.framesDropped + "]";
+	}
+}
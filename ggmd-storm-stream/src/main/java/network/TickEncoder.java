@@ -0,0 +1,68 @@
+package main.java.network;
+
+import main.java.core.BinaryFrameWriter;
+import main.java.core.FrameWriter;
+import main.java.core.Partition;
+import main.java.core.Tick;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sérialisations du top courant d'une course, faites à la demande et au plus une fois
+ * par format : un top n'est encodé en binaire que si un abonné l'a demandé.
+ * Propre au thread de la course ; un encodeur par partition diffusée, plus un par
+ * abonné filtré (cf. Protocol.FILTER).
+ */
+public class TickEncoder {
+
+	private final FrameWriter json = new FrameWriter();
+	private final BinaryFrameWriter binary = new BinaryFrameWriter();
+	private final BinaryFrameWriter delta = new BinaryFrameWriter();
+	private final Partition partition;
+	private Tick tick = null;
+	private ByteBuffer jsonFrame = null;
+	private ByteBuffer binaryFrame = null;
+	private ByteBuffer deltaFrame = null;
+
+
+	public TickEncoder() {
+		this(null);
+	}
+
+	/* partition : coureurs à encoder, tous si null */
+	public TickEncoder(Partition partition) {
+		this.partition = partition;
+	}
+
+	/* coureurs encodés, tous si null */
+	public Partition getPartition() {
+		return partition;
+	}
+
+	/* nouveau top : les encodages précédents ne sont plus valables */
+	public void reset(Tick tick) {
+		this.tick = tick;
+		this.jsonFrame = null;
+		this.binaryFrame = null;
+		this.deltaFrame = null;
+	}
+
+	public ByteBuffer get(byte format) {
+		if (format == Protocol.DELTA) {
+			if (this.deltaFrame == null) {
+				this.deltaFrame = this.delta.writeDelta(this.tick, this.partition);
+			}
+			return this.deltaFrame;
+		}
+		if (format == Protocol.BINARY) {
+			if (this.binaryFrame == null) {
+				this.binaryFrame = this.binary.write(this.tick, this.partition);
+			}
+			return this.binaryFrame;
+		}
+		if (this.jsonFrame == null) {
+			this.jsonFrame = this.json.write(this.tick, this.partition);
+		}
+		return this.jsonFrame;
+	}
+}
@@ -0,0 +1,74 @@
+package main.java.network;
+
+import main.java.core.Tick;
+
+/**
+ * Derniers tops d'une course, conservés pour les abonnés qui se reconnectent
+ * et demandent à reprendre après le dernier top reçu (cf. Protocol.RESUME).
+ * Seul le cumul de chaque coureur est copié : la cellule s'en déduit.
+ * Propre au thread de la course.
+ */
+public class TickHistory {
+
+	private final int depth;
+	private final long[] tops;
+	private final long[] timestamps;
+	private final int[][] cumuls;
+	private final Tick replay;
+	private int next = 0;
+	private int size = 0;
+
+
+	public TickHistory(int depth, int nbRunners, int nbCellules, int raceId) {
+		this.depth = depth;
+		this.tops = new long[depth];
+		this.timestamps = new long[depth];
+		this.cumuls = new int[depth][nbRunners];
+		this.replay = new Tick(nbRunners, nbCellules);
+		this.replay.setRaceId(raceId);
+	}
+
+	public void record(Tick tick) {
+		this.tops[this.next] = tick.getTop();
+		this.timestamps[this.next] = tick.getTimestamp();
+		System.arraycopy(tick.getCumul(), 0, this.cumuls[this.next], 0, tick.getNbRunners());
+		this.next = (this.next + 1) % this.depth;
+		this.size = Math.min(this.size + 1, this.depth);
+	}
+
+	/* plus ancien top conservé, -1 si aucun */
+	public long getOldestTop() {
+		return (this.size == 0) ? -1 : this.tops[(this.next - this.size + this.depth) % this.depth];
+	}
+
+	/* nombre de tops conservés postérieurs à afterTop */
+	public int countAfter(long afterTop) {
+		int n = 0;
+		for (int k = 0; k < this.size; k++) {
+			if (this.tops[(this.next - 1 - k + this.depth) % this.depth] > afterTop) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/*
+	k-ième des count derniers tops (0 = le plus ancien), reconstitué dans un Tick
+	réutilisé d'un appel à l'autre
+	* */
+	public Tick get(int k, int count) {
+		int slot = (this.next - count + k + this.depth) % this.depth;
+		int[] cumul = this.cumuls[slot];
+		int[] dstCumul = this.replay.getCumul();
+		int[] dstPos = this.replay.getCellules();
+		int nbCellules = this.replay.getNbCellules();
+
+		System.arraycopy(cumul, 0, dstCumul, 0, cumul.length);
+		for (int i = 0; i < cumul.length; i++) {
+			dstPos[i] = cumul[i] % nbCellules;
+		}
+		this.replay.setTop(this.tops[slot]);
+		this.replay.setTimestamp(this.timestamps[slot]);
+		return this.replay;
+	}
+}
@@ -0,0 +1,198 @@
+package stormTP.core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+import org.apache.storm.state.KeyValueState;
+
+/**
+ * État d'un bolt par coureur (dernier top vu et une valeur), en mémoire par blocs de
+ * RunnerColumns.SIZE coureurs et confié à l'état Storm bloc par bloc, sous les clés
+ * prefix + numéro de bloc :
+ *
+ * - commit n'écrit que les blocs modifiés depuis le précédent et supprime ceux devenus vides ;
+ * - les coureurs dont le dernier top a plus de horizon tops de retard sur le top le plus récent
+ *   sont retirés (evict) : la taille de l'état ne dépend que des coureurs encore en course ;
+ * - un top antérieur de plus de horizon tops au plus récent signale une nouvelle course
+ *   (générateur relancé) : tout l'état de la précédente est retiré.
+ *
+ * Propre au thread de l'exécuteur.
+ */
+public class ColumnState {
+
+	public static final long DEFAULT_HORIZON = 1000;
+
+	public interface Visitor {
+		void runner(int id, long top, long value);
+	}
+
+	private final String prefix;
+	private final long horizon;
+	private RunnerColumns[] chunks = new RunnerColumns[0];
+	/* blocs modifiés depuis le dernier commit */
+	private final BitSet dirty = new BitSet();
+	private long maxTop = -1;
+	private int live = 0;
+	private long evicted = 0;
+	private long races = 0;
+
+
+	public ColumnState(String prefix, long horizon) {
+		this.prefix = prefix;
+		this.horizon = horizon;
+	}
+
+	/* dernier top du coureur id, -1 s'il est absent */
+	public long getTop(int id) {
+		RunnerColumns c = this.chunk(id);
+		return (c == null) ? -1 : c.getTop(id);
+	}
+
+	public long getValue(int id) {
+		RunnerColumns c = this.chunk(id);
+		return (c == null) ? 0 : c.getValue(id);
+	}
+
+	/*
+	nouvelle valeur du coureur id au top ; si top commence une nouvelle course, l'état de
+	la précédente est d'abord retiré (chaque coureur passé à removed, qui peut être null)
+	* */
+	public void put(int id, long top, long value, Visitor removed) {
+		if (top + this.horizon < this.maxTop) {
+			this.races++;
+			this.evictBefore(Long.MAX_VALUE, removed);
+			this.maxTop = -1;
+		}
+		this.maxTop = Math.max(this.maxTop, top);
+
+		int k = id / RunnerColumns.SIZE;
+		if (k >= this.chunks.length) {
+			this.chunks = Arrays.copyOf(this.chunks, Math.max(k + 1, 2 * this.chunks.length));
+		}
+		RunnerColumns c = this.chunks[k];
+		if (c == null) {
+			c = new RunnerColumns(k * RunnerColumns.SIZE);
+			this.chunks[k] = c;
+		}
+		if (c.getTop(id) < 0) {
+			this.live++;
+		}
+		c.put(id, top, value);
+		this.dirty.set(k);
+	}
+
+	/* retrait des coureurs sans nouvelle depuis plus de horizon tops ; retourne leur nombre */
+	public int evict(Visitor removed) {
+		return this.evictBefore(this.maxTop - this.horizon, removed);
+	}
+
+	private int evictBefore(long top, Visitor removed) {
+		int n = 0;
+		for (int k = 0; k < this.chunks.length; k++) {
+			RunnerColumns c = this.chunks[k];
+			if (c == null) {
+				continue;
+			}
+			for (int id = c.getBase(); id < c.getBase() + RunnerColumns.SIZE && c.getLive() > 0; id++) {
+				long t = c.getTop(id);
+				if (t >= 0 && t < top) {
+					if (removed != null) {
+						removed.runner(id, t, c.getValue(id));
+					}
+					c.remove(id);
+					this.dirty.set(k);
+					n++;
+				}
+			}
+		}
+		this.live -= n;
+		this.evicted += n;
+		return n;
+	}
+
+	/* coureurs présents, par id croissant */
+	public void forEach(Visitor visitor) {
+		for (RunnerColumns c : this.chunks) {
+			if (c == null) {
+				continue;
+			}
+			for (int id = c.getBase(); id < c.getBase() + RunnerColumns.SIZE; id++) {
+				long t = c.getTop(id);
+				if (t >= 0) {
+					visitor.runner(id, t, c.getValue(id));
+				}
+			}
+		}
+	}
+
+	/* écriture des blocs modifiés (des copies : l'état garde ce qu'on lui confie) ; retourne leur nombre */
+	public int commit(KeyValueState<String, RunnerColumns> state) {
+		int n = 0;
+		for (int k = this.dirty.nextSetBit(0); k >= 0; k = this.dirty.nextSetBit(k + 1)) {
+			RunnerColumns c = this.chunks[k];
+			if (c == null || c.getLive() == 0) {
+				state.delete(this.prefix + k);
+				this.chunks[k] = null;
+			} else {
+				state.put(this.prefix + k, c.copy());
+			}
+			n++;
+		}
+		this.dirty.clear();
+		return n;
+	}
+
+	/* remplacement du contenu par les blocs enregistrés dans state */
+	public void restore(KeyValueState<String, RunnerColumns> state) {
+		this.chunks = new RunnerColumns[0];
+		this.dirty.clear();
+		this.maxTop = -1;
+		this.live = 0;
+		for (Map.Entry<String, RunnerColumns> e : state) {
+			if (!e.getKey().startsWith(this.prefix)) {
+				continue;
+			}
+			RunnerColumns c = e.getValue().copy();
+			int k = c.getBase() / RunnerColumns.SIZE;
+			if (k >= this.chunks.length) {
+				this.chunks = Arrays.copyOf(this.chunks, k + 1);
+			}
+			this.chunks[k] = c;
+			this.live += c.getLive();
+			for (int id = c.getBase(); id < c.getBase() + RunnerColumns.SIZE; id++) {
+				this.maxTop = Math.max(this.maxTop, c.getTop(id));
+			}
+		}
+	}
+
+	private RunnerColumns chunk(int id) {
+		int k = id / RunnerColumns.SIZE;
+		return (k < this.chunks.length) ? this.chunks[k] : null;
+	}
+
+	/* coureurs présents */
+	public int getLive() {
+		return live;
+	}
+
+	public long getMaxTop() {
+		return maxTop;
+	}
+
+	/* coureurs retirés depuis le démarrage */
+	public long getEvicted() {
+		return evicted;
+	}
+
+	/* nouvelles courses détectées */
+	public long getRaces() {
+		return races;
+	}
+
+	@Override
+	public String toString() {
+		return "ColumnState[" + this.prefix + ", live=" + this.live + ", maxTop=" + this.maxTop + ", evicted="
+				+ this.evicted + ", races=" + this.races + "]";
+	}
+}
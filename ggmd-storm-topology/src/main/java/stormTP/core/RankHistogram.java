@@ -0,0 +1,132 @@
+package stormTP.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Histogramme des positions (nombre de cellules parcourues) d'un ensemble de coureurs à un top :
+ * positions distinctes croissantes et nombre de coureurs à chacune. C'est ce qu'une partition
+ * envoie pour le classement global, à la place de ses coureurs : il y a au plus une entrée par
+ * position occupée, et les ex aequo ne coûtent rien.
+ *
+ * Le rang d'une position s'obtient sur l'histogramme fusionné de toutes les partitions :
+ * 1 + coureurs devant (ahead), ex aequo si plus d'un coureur à cette position (tied).
+ */
+public class RankHistogram {
+
+	private final long[] positions;
+	private final int[] counts;
+
+
+	public RankHistogram(long[] positions, int[] counts) {
+		this.positions = positions;
+		this.counts = counts;
+	}
+
+	/* histogramme de valeurs quelconques */
+	public static RankHistogram of(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		long[] positions = new long[sorted.length];
+		int[] counts = new int[sorted.length];
+		int n = 0;
+		for (long v : sorted) {
+			if (n > 0 && positions[n - 1] == v) {
+				counts[n - 1]++;
+			} else {
+				positions[n] = v;
+				counts[n++] = 1;
+			}
+		}
+		return new RankHistogram(Arrays.copyOf(positions, n), Arrays.copyOf(counts, n));
+	}
+
+	/* fusion deux à deux, par tours : O(H log k) pour k histogrammes de H entrées au total */
+	public static RankHistogram merge(List<RankHistogram> parts) {
+		if (parts.isEmpty()) {
+			return new RankHistogram(new long[0], new int[0]);
+		}
+		List<RankHistogram> round = new ArrayList<>(parts);
+		while (round.size() > 1) {
+			List<RankHistogram> next = new ArrayList<>((round.size() + 1) / 2);
+			for (int i = 0; i + 1 < round.size(); i += 2) {
+				next.add(merge(round.get(i), round.get(i + 1)));
+			}
+			if (round.size() % 2 == 1) {
+				next.add(round.get(round.size() - 1));
+			}
+			round = next;
+		}
+		return round.get(0);
+	}
+
+	private static RankHistogram merge(RankHistogram a, RankHistogram b) {
+		long[] positions = new long[a.size() + b.size()];
+		int[] counts = new int[positions.length];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while (i < a.size() || j < b.size()) {
+			if (j == b.size() || (i < a.size() && a.positions[i] < b.positions[j])) {
+				positions[n] = a.positions[i];
+				counts[n++] = a.counts[i++];
+			} else if (i == a.size() || b.positions[j] < a.positions[i]) {
+				positions[n] = b.positions[j];
+				counts[n++] = b.counts[j++];
+			} else {
+				positions[n] = a.positions[i];
+				counts[n++] = a.counts[i++] + b.counts[j++];
+			}
+		}
+		return new RankHistogram(Arrays.copyOf(positions, n), Arrays.copyOf(counts, n));
+	}
+
+	/* indice de position, -1 si aucun coureur ne l'occupe */
+	public int indexOf(long position) {
+		int i = Arrays.binarySearch(this.positions, position);
+		return (i < 0) ? -1 : i;
+	}
+
+	/*
+	pour chaque position de part (contenue dans cet histogramme), nombre de coureurs
+	strictement devant : ahead[i] ; et à la même position : tied[i]
+	* */
+	public void rank(RankHistogram part, int[] ahead, int[] tied) {
+		// above[k] : coureurs aux positions d'indice > k
+		int[] above = new int[this.size()];
+		int sum = 0;
+		for (int k = this.size() - 1; k >= 0; k--) {
+			above[k] = sum;
+			sum += this.counts[k];
+		}
+		for (int i = 0; i < part.size(); i++) {
+			int k = this.indexOf(part.positions[i]);
+			ahead[i] = above[k];
+			tied[i] = this.counts[k];
+		}
+	}
+
+	/* positions distinctes, croissantes */
+	public long[] getPositions() {
+		return positions;
+	}
+
+	public int[] getCounts() {
+		return counts;
+	}
+
+	/* nombre de positions distinctes */
+	public int size() {
+		return positions.length;
+	}
+
+	/* nombre de coureurs */
+	public int getRunners() {
+		int n = 0;
+		for (int c : this.counts) {
+			n += c;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,211 @@
+package stormTP.core;
+
+import java.util.Arrays;
+
+/**
+ * Multi-ensemble ordonné des positions (nombre de cellules parcourues) des coureurs d'un même top,
+ * pour calculer un rang sans trier : arbre binaire de recherche équilibré aléatoirement (treap)
+ * dont chaque nœud porte une position, son nombre d'occurrences et la taille de son sous-arbre.
+ *
+ * Ajout, retrait, nombre de coureurs devant une position et nombre d'ex aequo à une position
+ * sont en O(log n) en moyenne. Les nœuds sont rangés dans des tableaux (0 : nœud vide) et
+ * réutilisés après un retrait : aucune allocation une fois la taille de la course atteinte.
+ */
+public class RankIndex {
+
+	private long[] key;
+	private int[] priority;
+	private int[] left;
+	private int[] right;
+	/* occurrences de la position du nœud */
+	private int[] count;
+	/* occurrences dans le sous-arbre du nœud */
+	private int[] size;
+	private int root = 0;
+	private int used = 0;
+	/* nœuds libérés, chaînés par left */
+	private int free = 0;
+	private int seed = 0x2545F491;
+
+
+	public RankIndex() {
+		this(16);
+	}
+
+	public RankIndex(int capacity) {
+		int n = Math.max(2, capacity + 1);
+		this.key = new long[n];
+		this.priority = new int[n];
+		this.left = new int[n];
+		this.right = new int[n];
+		this.count = new int[n];
+		this.size = new int[n];
+	}
+
+	public void add(long position) {
+		this.root = this.insert(this.root, position);
+	}
+
+	/* retrait d'une occurrence de position ; false si elle est absente */
+	public boolean remove(long position) {
+		int before = this.size();
+		this.root = this.delete(this.root, position);
+		return this.size() < before;
+	}
+
+	/* nombre de positions strictement supérieures : coureurs devant */
+	public int countGreater(long position) {
+		int n = this.root;
+		int greater = 0;
+		while (n != 0) {
+			if (position < this.key[n]) {
+				greater += this.size[this.right[n]] + this.count[n];
+				n = this.left[n];
+			} else if (position > this.key[n]) {
+				n = this.right[n];
+			} else {
+				return greater + this.size[this.right[n]];
+			}
+		}
+		return greater;
+	}
+
+	/* occurrences de position : coureurs ex aequo */
+	public int count(long position) {
+		int n = this.root;
+		while (n != 0) {
+			if (position < this.key[n]) {
+				n = this.left[n];
+			} else if (position > this.key[n]) {
+				n = this.right[n];
+			} else {
+				return this.count[n];
+			}
+		}
+		return 0;
+	}
+
+	public int size() {
+		return this.size[this.root];
+	}
+
+	private int insert(int n, long k) {
+		if (n == 0) {
+			return this.newNode(k);
+		}
+		if (k == this.key[n]) {
+			this.count[n]++;
+			this.size[n]++;
+			return n;
+		}
+		// le fils est calculé avant d'être rangé : l'insertion peut agrandir les tableaux
+		if (k < this.key[n]) {
+			int child = this.insert(this.left[n], k);
+			this.left[n] = child;
+			this.size[n]++;
+			if (this.priority[this.left[n]] > this.priority[n]) {
+				n = this.rotateRight(n);
+			}
+		} else {
+			int child = this.insert(this.right[n], k);
+			this.right[n] = child;
+			this.size[n]++;
+			if (this.priority[this.right[n]] > this.priority[n]) {
+				n = this.rotateLeft(n);
+			}
+		}
+		return n;
+	}
+
+	private int delete(int n, long k) {
+		if (n == 0) {
+			return 0;
+		}
+		if (k < this.key[n]) {
+			this.left[n] = this.delete(this.left[n], k);
+		} else if (k > this.key[n]) {
+			this.right[n] = this.delete(this.right[n], k);
+		} else if (this.count[n] > 1) {
+			this.count[n]--;
+		} else if (this.left[n] == 0 || this.right[n] == 0) {
+			int child = (this.left[n] == 0) ? this.right[n] : this.left[n];
+			this.freeNode(n);
+			return child;
+		} else {
+			// le fils de plus forte priorité remonte, le nœud descend de l'autre côté
+			if (this.priority[this.left[n]] > this.priority[this.right[n]]) {
+				n = this.rotateRight(n);
+				this.right[n] = this.delete(this.right[n], k);
+			} else {
+				n = this.rotateLeft(n);
+				this.left[n] = this.delete(this.left[n], k);
+			}
+		}
+		this.pull(n);
+		return n;
+	}
+
+	private int rotateRight(int n) {
+		int l = this.left[n];
+		this.left[n] = this.right[l];
+		this.right[l] = n;
+		this.pull(n);
+		this.pull(l);
+		return l;
+	}
+
+	private int rotateLeft(int n) {
+		int r = this.right[n];
+		this.right[n] = this.left[r];
+		this.left[r] = n;
+		this.pull(n);
+		this.pull(r);
+		return r;
+	}
+
+	private void pull(int n) {
+		this.size[n] = this.size[this.left[n]] + this.count[n] + this.size[this.right[n]];
+	}
+
+	private int newNode(long k) {
+		int n;
+		if (this.free != 0) {
+			n = this.free;
+			this.free = this.left[n];
+		} else {
+			if (this.used + 1 == this.key.length) {
+				this.grow();
+			}
+			n = ++this.used;
+		}
+		// xorshift : priorités pseudo-aléatoires, l'arbre reste équilibré quel que soit l'ordre des ajouts
+		int s = this.seed;
+		s ^= s << 13;
+		s ^= s >>> 17;
+		s ^= s << 5;
+		this.seed = s;
+
+		this.key[n] = k;
+		this.priority[n] = s;
+		this.left[n] = 0;
+		this.right[n] = 0;
+		this.count[n] = 1;
+		this.size[n] = 1;
+		return n;
+	}
+
+	private void freeNode(int n) {
+		this.left[n] = this.free;
+		this.free = n;
+	}
+
+	private void grow() {
+		int n = this.key.length * 2;
+		this.key = Arrays.copyOf(this.key, n);
+		this.priority = Arrays.copyOf(this.priority, n);
+		this.left = Arrays.copyOf(this.left, n);
+		this.right = Arrays.copyOf(this.right, n);
+		this.count = Arrays.copyOf(this.count, n);
+		this.size = Arrays.copyOf(this.size, n);
+	}
+}
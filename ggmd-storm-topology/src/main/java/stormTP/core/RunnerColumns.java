@@ -0,0 +1,73 @@
+package stormTP.core;
+
+import java.util.Arrays;
+
+/**
+ * Bloc de SIZE coureurs consécutifs de l'état d'un bolt (cf. ColumnState) : pour chaque id,
+ * le dernier top vu (-1 : aucun) et une valeur (position, score...), en colonnes de long
+ * plutôt qu'en chaînes "clé_id" -> "valeur" à relire avec Long.parseLong.
+ * C'est l'unité écrite dans l'état Storm, sérialisée par RunnerColumnsSerializer.
+ */
+public class RunnerColumns {
+
+	public static final int SIZE = 1024;
+
+	private final int base;
+	private final long[] tops;
+	private final long[] values;
+	private int live = 0;
+
+
+	/* bloc vide des coureurs base .. base + SIZE - 1 */
+	public RunnerColumns(int base) {
+		this.base = base;
+		this.tops = new long[SIZE];
+		this.values = new long[SIZE];
+		Arrays.fill(this.tops, -1);
+	}
+
+	public int getBase() {
+		return base;
+	}
+
+	/* dernier top du coureur id, -1 s'il est absent */
+	public long getTop(int id) {
+		return this.tops[id - this.base];
+	}
+
+	public long getValue(int id) {
+		return this.values[id - this.base];
+	}
+
+	public void put(int id, long top, long value) {
+		int i = id - this.base;
+		if (this.tops[i] < 0) {
+			this.live++;
+		}
+		this.tops[i] = top;
+		this.values[i] = value;
+	}
+
+	public void remove(int id) {
+		int i = id - this.base;
+		if (this.tops[i] >= 0) {
+			this.tops[i] = -1;
+			this.values[i] = 0;
+			this.live--;
+		}
+	}
+
+	/* copie indépendante : un bloc confié à l'état Storm ne doit plus être modifié */
+	public RunnerColumns copy() {
+		RunnerColumns c = new RunnerColumns(this.base);
+		System.arraycopy(this.tops, 0, c.tops, 0, SIZE);
+		System.arraycopy(this.values, 0, c.values, 0, SIZE);
+		c.live = this.live;
+		return c;
+	}
+
+	/* nombre de coureurs présents */
+	public int getLive() {
+		return live;
+	}
+}
@@ -0,0 +1,54 @@
+package stormTP.core;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Sérialisation Kryo d'un bloc de l'état (RunnerColumns), seuls les coureurs présents étant écrits :
+ *
+ * columns := varint(base) varint(live) entry*
+ * entry   := varint(id - id précédent) varint(top) varint(valeur)     (id précédent = base - 1 au départ)
+ *
+ * La valeur est en varint zigzag. Un coureur tient en 4 à 6 octets, contre une quarantaine
+ * pour ses deux chaînes "pos_id" et "top_id" et leurs valeurs.
+ */
+public class RunnerColumnsSerializer extends Serializer<RunnerColumns> {
+
+	@Override
+	public void write(Kryo kryo, Output out, RunnerColumns c) {
+		int base = c.getBase();
+		out.writeVarInt(base, true);
+		out.writeVarInt(c.getLive(), true);
+		int last = base - 1;
+		for (int id = base; id < base + RunnerColumns.SIZE; id++) {
+			long top = c.getTop(id);
+			if (top >= 0) {
+				out.writeVarInt(id - last, true);
+				out.writeVarLong(top, true);
+				out.writeVarLong(c.getValue(id), false);
+				last = id;
+			}
+		}
+	}
+
+	@Override
+	public RunnerColumns read(Kryo kryo, Input in, Class<? extends RunnerColumns> type) {
+		int base = in.readVarInt(true);
+		int live = in.readVarInt(true);
+		RunnerColumns c = new RunnerColumns(base);
+		int id = base - 1;
+		for (int k = 0; k < live; k++) {
+			id += in.readVarInt(true);
+			long top = in.readVarLong(true);
+			c.put(id, top, in.readVarLong(false));
+		}
+		return c;
+	}
+
+	@Override
+	public RunnerColumns copy(Kryo kryo, RunnerColumns c) {
+		return c.copy();
+	}
+}
@@ -0,0 +1,30 @@
+package stormTP.core;
+
+import org.apache.storm.Config;
+
+/**
+ * Enregistrement des sérialiseurs Kryo de la topologie, à appeler sur la Config de chaque
+ * topologie avant sa soumission. Seuls les types qui circulent réellement entre workers sont
+ * enregistrés : les histogrammes du classement distribué (long[], int[]), qui sinon passeraient
+ * par le sérialiseur de repli de Storm.
+ *
+ * Les autres champs échangés entre bolts (Integer, Long, String, Double, JSON) sont déjà
+ * connus de Kryo et n'ont pas besoin d'enregistrement.
+ *
+ * Les mêmes enregistrements servent aux fournisseurs d'état persistants (Redis...) qui
+ * sérialisent l'état des bolts avec le Kryo de la topologie (cf. RunnerColumnsSerializer).
+ */
+public final class Serialization {
+
+	private Serialization() {
+	}
+
+	public static Config register(Config config) {
+		// blocs de l'état des bolts, écrits à chaque checkpoint
+		config.registerSerialization(RunnerColumns.class, RunnerColumnsSerializer.class);
+		// histogrammes du classement distribué (PartialRankBolt, MergeRankBolt)
+		config.registerSerialization(long[].class);
+		config.registerSerialization(int[].class);
+		return config;
+	}
+}
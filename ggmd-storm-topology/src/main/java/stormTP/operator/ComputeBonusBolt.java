@@ -3,10 +3,6 @@ package stormTP.operator;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
 import org.apache.storm.state.KeyValueState;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
@@ -16,59 +12,60 @@ import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
 
+import stormTP.core.ColumnState;
+import stormTP.core.RunnerColumns;
+
 /**
- * Stateful bolt that calculates cumulative bonus points every 15 observations
+ * Stateful bolt that calculates cumulative bonus points every 15 observations.
+ * Reads GiveRankBolt.OUTPUT_FIELDS and emits typed fields (OUTPUT_FIELDS), without any JSON work.
+ *
+ * Scores are kept in packed columns (ColumnState) with the top of their last bonus, and written to
+ * the Storm state only at checkpoint time; the scores of a finished race are evicted.
  */
-public class ComputeBonusBolt extends BaseStatefulBolt<KeyValueState<String, String>> {
+public class ComputeBonusBolt extends BaseStatefulBolt<KeyValueState<String, RunnerColumns>> {
 
 	private static final long serialVersionUID = 4262369370788107348L;
 	private static Logger logger = Logger.getLogger("ComputeBonusBoltLogger");
-	private KeyValueState<String, String> kvState;
+	public static final Fields OUTPUT_FIELDS = new Fields("id", "tops", "score");
+	/* a bonus is computed at every top multiple of this interval */
+	public static final int BONUS_INTERVAL = 15;
+	private KeyValueState<String, RunnerColumns> kvState;
 	private OutputCollector collector;
-	private ObjectMapper mapper;
+	/* score of each tortoise and top of its last bonus */
+	private transient ColumnState scores;
+	private transient boolean rebuild;
 
 	@Override
 	public void execute(Tuple t) {
 		try {
-			String jsonStr = t.getValueByField("json").toString();
-			JsonNode inputJson = mapper.readTree(jsonStr);
-
-			int id = inputJson.get("id").asInt();
-			long top = inputJson.get("top").asLong();
-			String rang = inputJson.get("rang").asText();
-			int total = inputJson.get("total").asInt();
-			int maxcel = inputJson.get("maxcel").asInt();
+			if (rebuild) {
+				scores.restore(kvState);
+				rebuild = false;
+			}
+			int id = t.getIntegerByField("id");
+			long top = t.getLongByField("top");
+			String rang = t.getStringByField("rang");
+			int total = t.getIntegerByField("total");
 
 			// Check if we're at a bonus calculation point (every 15 observations)
-			if (top > 0 && top % 15 == 0) {
+			if (top > 0 && top % BONUS_INTERVAL == 0) {
 				// Parse rank number, removing 'ex' suffix if present
 				int rankNum = Integer.parseInt(rang.replace("ex", ""));
 
 				// Calculate bonus: total - rank
 				int bonus = total - rankNum;
 
-				// Get current score from state
-				String scoreStr = kvState.get("score_" + id);
-				int currentScore = (scoreStr != null) ? Integer.parseInt(scoreStr) : 0;
-				currentScore += bonus;
-
-				// Store updated score
-				kvState.put("score_" + id, String.valueOf(currentScore));
+				// Update the score, written to the Storm state at the next checkpoint
+				int currentScore = (int) scores.getValue(id) + bonus;
+				scores.put(id, top, currentScore, null);
 
 				// Format tops field: "t{top-14}-t{top}"
-				long topStart = top - 14;
+				long topStart = top - (BONUS_INTERVAL - 1);
 				String topsRange = "t" + topStart + "-t" + top;
 
-				// Build output JSON
-				ObjectNode output = mapper.createObjectNode();
-				output.put("id", id);
-				output.put("tops", topsRange);
-				output.put("score", currentScore);
-
-				String result = mapper.writeValueAsString(output);
 				logger.info("Bonus for tortoise " + id + " at top " + top + ": bonus=" + bonus + ", total=" + currentScore);
 
-				collector.emit(t, new Values(result));
+				collector.emit(t, new Values(id, topsRange, currentScore));
 				collector.ack(t);
 			} else {
 				// Not a bonus point, just pass through (ack but don't emit)
@@ -83,20 +80,33 @@ public class ComputeBonusBolt extends BaseStatefulBolt<KeyValueState<String, Str
 
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
-		declarer.declare(new Fields("json"));
+		declarer.declare(OUTPUT_FIELDS);
 	}
 
 	@Override
-	public void initState(KeyValueState<String, String> state) {
+	public void initState(KeyValueState<String, RunnerColumns> state) {
 		kvState = state;
-		logger.info("ComputeBonusBolt state initialized");
+		scores.restore(state);
+		logger.info("ComputeBonusBolt state initialized with " + scores.getLive() + " score(s)");
+	}
+
+	@Override
+	public void preCommit(long txid) {
+		scores.evict(null);
+		scores.commit(kvState);
+	}
+
+	@Override
+	public void preRollback() {
+		// the state goes back to the last commit: the scores are read again before the next tuple
+		rebuild = true;
 	}
 
 	@Override
 	@SuppressWarnings("rawtypes")
 	public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
 		this.collector = collector;
-		this.mapper = new ObjectMapper();
+		this.scores = new ColumnState("score_", ColumnState.DEFAULT_HORIZON);
 	}
 
 	@Override
@@ -0,0 +1,186 @@
+package stormTP.operator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.apache.storm.Config;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.base.BaseRichSpout;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Values;
+
+import stormTP.stream.FilterCommand;
+import stormTP.stream.FilterLog;
+import stormTP.stream.StreamBuffer;
+
+/**
+ * Flux de contrôle : écoute un port local et émet chaque commande de filtre reçue
+ * (cf. FilterCommand), à diffuser vers toutes les tâches de MyTortoiseBolt par allGrouping.
+ *
+ * Exemple : echo "add default 3 7" | nc <hôte du spout> <port>
+ *
+ * Chaque ligne reçoit une réponse "OK <commande>" ou "ERR <raison>". Les clients sont servis
+ * l'un après l'autre par un seul thread, qui est donc le seul producteur de la file.
+ *
+ * L'effet cumulé des commandes (cf. FilterLog) est réémis à l'activation puis toutes les
+ * REPLAY_MILLIS : une tâche de bolt redémarrée ou déplacée, repartie du filtre de la
+ * soumission, retrouve le filtre courant. Il est aussi enregistré dans le répertoire local
+ * de Storm, propre à la topologie, et relu par un spout redémarré sur le même nœud.
+ */
+public class ControlSpout extends BaseRichSpout {
+
+	private static final long serialVersionUID = 5120378466301954117L;
+	private static Logger logger = Logger.getLogger("ControlSpoutLogger");
+	/* champ des tuples de contrôle, reconnu par les bolts qui le reçoivent */
+	public static final String COMMAND = "command";
+	public static final long REPLAY_MILLIS = 10_000;
+
+	private SpoutOutputCollector collector;
+	private int port;
+	private transient ServerSocket server;
+	private transient StreamBuffer<String> commands;
+	private transient FilterLog filters;
+	private transient Path saved;
+	private transient long nextReplay;
+	private volatile boolean running = false;
+
+
+	public ControlSpout(int port) {
+		this.port = port;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void open(Map conf, TopologyContext context, SpoutOutputCollector collector) {
+		this.collector = collector;
+		this.commands = new StreamBuffer<String>(1024, StreamBuffer.FullPolicy.BLOCK);
+		this.filters = new FilterLog();
+		Object dir = conf.get(Config.STORM_LOCAL_DIR);
+		this.saved = Paths.get(dir != null ? dir.toString() : System.getProperty("java.io.tmpdir"),
+				"control-" + context.getStormId() + "-" + this.port + ".log");
+		this.load();
+		try {
+			this.server = new ServerSocket(this.port);
+		} catch (IOException e) {
+			logger.severe("Control port " + this.port + " unavailable : " + e);
+			return;
+		}
+		this.running = true;
+		Thread.ofPlatform().daemon().name("control-" + this.port).start(this::listen);
+		logger.info("Control spout listening on port " + this.port);
+	}
+
+	private void listen() {
+		while (running) {
+			try (Socket client = server.accept();
+					BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+					PrintWriter out = new PrintWriter(client.getOutputStream(), true)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.isBlank()) {
+						continue;
+					}
+					try {
+						String command = FilterCommand.parse(line).toString();
+						commands.put(command);
+						out.println("OK " + command);
+					} catch (IllegalArgumentException e) {
+						out.println("ERR " + e.getMessage());
+					}
+				}
+			} catch (IOException e) {
+				if (running) {
+					logger.warning("Control connection : " + e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void nextTuple() {
+		if (commands == null) {
+			return;
+		}
+		String command;
+		boolean changed = false;
+		while ((command = commands.readTuple()) != null) {
+			logger.info("Filter command : " + command);
+			filters.apply(FilterCommand.parse(command));
+			collector.emit(new Values(command));
+			changed = true;
+		}
+		if (changed) {
+			this.save();
+		}
+
+		long now = System.currentTimeMillis();
+		if (now >= nextReplay) {
+			nextReplay = now + REPLAY_MILLIS;
+			for (FilterCommand c : filters.commands()) {
+				logger.fine("Filter replay : " + c);
+				collector.emit(new Values(c.toString()));
+			}
+		}
+	}
+
+	/* filtre courant enregistré par un précédent spout de la même topologie */
+	private void load() {
+		if (!Files.exists(saved)) {
+			return;
+		}
+		try {
+			for (String line : Files.readAllLines(saved)) {
+				filters.apply(FilterCommand.parse(line));
+			}
+			logger.info("Filter state reloaded from " + saved + " : " + filters.commands());
+		} catch (IOException | IllegalArgumentException e) {
+			logger.warning("Filter state " + saved + " ignored : " + e);
+		}
+	}
+
+	private void save() {
+		List<String> lines = new ArrayList<>();
+		for (FilterCommand c : filters.commands()) {
+			lines.add(c.toString());
+		}
+		try {
+			Files.write(saved, lines);
+		} catch (IOException e) {
+			logger.warning("Filter state not saved to " + saved + " : " + e);
+		}
+	}
+
+	@Override
+	public void activate() {
+		// les tâches redémarrées pendant la désactivation reçoivent le filtre courant
+		nextReplay = 0;
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		try {
+			if (server != null) {
+				server.close();
+			}
+		} catch (IOException ignored) {}
+	}
+
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		declarer.declare(new Fields(COMMAND));
+	}
+}
@@ -9,6 +9,7 @@ import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import stormTP.stream.StreamEmiter;
+import stormTP.stream.TupleJson;
 
 /**
  * Exit bolt that sends bonus points data to output port
@@ -28,7 +29,7 @@ public class Exit4Bolt implements IRichBolt {
 	@Override
 	public void execute(Tuple t) {
 		try {
-			String n = t.getValueByField("json").toString();
+			String n = TupleJson.toJson(t);
 			this.semit.send(n);
 			collector.ack(t);
 		} catch (Exception e) {
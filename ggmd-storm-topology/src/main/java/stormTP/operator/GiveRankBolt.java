@@ -1,16 +1,13 @@
 package stormTP.operator;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.storm.Config;
 
 import org.apache.storm.state.KeyValueState;
 import org.apache.storm.task.OutputCollector;
@@ -20,129 +17,288 @@ import org.apache.storm.topology.base.BaseStatefulBolt;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.TupleUtils;
+
+import stormTP.core.ColumnState;
+import stormTP.core.RankIndex;
+import stormTP.core.RunnerColumns;
+import stormTP.stream.TopBarrier;
 
 /**
- * Stateful bolt that ranks tortoises by their position on the track
+ * Stateful bolt that ranks tortoises by their position on the track.
+ * Reads MyTortoiseBolt.OUTPUT_FIELDS and emits typed fields (OUTPUT_FIELDS), without any JSON work.
+ *
+ * Each tortoise is ranked against the tortoises whose last known position is at the same top.
+ * Those positions are kept in memory in one RankIndex per top, so an update and a rank query cost
+ * O(log n) instead of reading and sorting the whole race. The last top and position of each tortoise
+ * are kept in packed columns (ColumnState) and written to the Storm state only at checkpoint time,
+ * for the blocks of tortoises that moved since the previous one; tortoises silent for
+ * ColumnState.DEFAULT_HORIZON tops and the tortoises of a finished race are evicted. The indexes are
+ * rebuilt from the state on start and after a rollback.
+ *
+ * With a barrier (GiveRankBolt(timeoutMillis, reorderTops)), the tuples of a top are held until
+ * all "total" tortoises of that top have arrived, or the first of them has waited timeoutMillis.
+ * The whole leaderboard of the top is then computed once and emitted, one tuple per tortoise, so
+ * early arrivals are not ranked against a partial race. Tops are released in order: a top that
+ * arrives early waits for the previous ones, with at most reorderTops tops held. A tuple for a top
+ * already released is late and ranked on its own, as without a barrier. A new race (detected by
+ * ColumnState or by the barrier) releases the tops still held and restarts the barrier.
+ *
+ * With withChangesOnly(refreshTops), a rank is emitted only when it differs from the last one sent
+ * for that tortoise, and for every tortoise at the tops that are multiples of refreshTops. The
+ * ranks last sent are forgotten on a new race and on a rollback.
  */
-public class GiveRankBolt extends BaseStatefulBolt<KeyValueState<String, String>> {
+public class GiveRankBolt extends BaseStatefulBolt<KeyValueState<String, RunnerColumns>> {
 
 	private static final long serialVersionUID = 4262369370788107346L;
 	private static Logger logger = Logger.getLogger("GiveRankBoltLogger");
-	private KeyValueState<String, String> kvState;
+	public static final Fields OUTPUT_FIELDS = new Fields("id", "top", "nom", "rang", "total", "maxcel");
+	private KeyValueState<String, RunnerColumns> kvState;
 	private OutputCollector collector;
-	private ObjectMapper mapper;
+	/* last known top and position of each tortoise */
+	private transient ColumnState columns;
+	/* positions of the tortoises last seen at each top */
+	private transient Map<Long, RankIndex> byTop;
+	private transient boolean rebuild;
+	/* per-top barrier, disabled when timeoutMillis is 0 */
+	private final long timeoutMillis;
+	private final int reorderTops;
+	private transient TopBarrier<Tuple> barrier;
+	private transient long late;
+	/* ColumnState.getRaces() when the current race started */
+	private transient long races;
+	/* change-only output, disabled when refreshTops is 0 */
+	private int refreshTops = 0;
+	/* last rank sent for each tortoise, by id: rank << 1 | tied, 0 if none */
+	private transient int[] lastSent;
+	private transient long suppressed;
+
+	/**
+	 * Ranks each tortoise as soon as it arrives.
+	 */
+	public GiveRankBolt() {
+		this(0, 0);
+	}
+
+	/**
+	 * Ranks the tortoises of a top together, once all of them have arrived or after timeoutMillis,
+	 * with at most reorderTops tops waiting for an earlier one.
+	 */
+	public GiveRankBolt(long timeoutMillis, int reorderTops) {
+		this.timeoutMillis = timeoutMillis;
+		this.reorderTops = reorderTops;
+	}
+
+	/**
+	 * Emits a rank only when it changed since the last one sent for the tortoise, and every rank
+	 * at the tops that are multiples of refreshTops (e.g. ComputeBonusBolt.BONUS_INTERVAL).
+	 */
+	public GiveRankBolt withChangesOnly(int refreshTops) {
+		this.refreshTops = refreshTops;
+		return this;
+	}
 
 	@Override
 	public void execute(Tuple t) {
+		if (TupleUtils.isTick(t)) {
+			// releases the tops whose timeout expired while no tuple arrived
+			if (barrier != null) {
+				barrier.drain(System.nanoTime(), this::release);
+			}
+			return;
+		}
 		try {
-			String jsonStr = t.getValueByField("json").toString();
-			JsonNode inputJson = mapper.readTree(jsonStr);
-
-			long id = inputJson.get("id").asLong();
-			long top = inputJson.get("top").asLong();
-			long nbCellsParcourus = inputJson.get("nbCellsParcourus").asLong();
-			long total = inputJson.get("total").asLong();
-			long maxcel = inputJson.get("maxcel").asLong();
-
-			// Store position in state
-			kvState.put("pos_" + id, String.valueOf(nbCellsParcourus));
-			kvState.put("top_" + id, String.valueOf(top));
-
-			// Collect all positions for ranking
-			Map<Long, Long> positions = new HashMap<>();
-			for (int i = 0; i < total; i++) {
-				String posStr = kvState.get("pos_" + i);
-				String topStr = kvState.get("top_" + i);
-				if (posStr != null && topStr != null) {
-					long tortoiseTop = Long.parseLong(topStr);
-					// Only rank tortoises at the same observation point
-					if (tortoiseTop == top) {
-						positions.put((long)i, Long.parseLong(posStr));
-					}
-				}
+			int id = t.getIntegerByField("id");
+			long top = t.getLongByField("top");
+			String nom = t.getStringByField("nom");
+			long nbCellsParcourus = t.getLongByField("nbCellsParcourus");
+			int total = t.getIntegerByField("total");
+			int maxcel = t.getIntegerByField("maxcel");
+
+			if (rebuild) {
+				restore();
+			}
+			move(id, top, nbCellsParcourus);
+			if (columns.getRaces() != races
+					|| (barrier != null && barrier.isNewRace(top, total))) {
+				newRace(top);
 			}
 
-			// Sort by position (descending - higher position = better rank)
-			List<Map.Entry<Long, Long>> sortedEntries = new ArrayList<>(positions.entrySet());
-			Collections.sort(sortedEntries, new Comparator<Map.Entry<Long, Long>>() {
-				@Override
-				public int compare(Map.Entry<Long, Long> a, Map.Entry<Long, Long> b) {
-					return Long.compare(b.getValue(), a.getValue()); // Descending
-				}
-			});
-
-			// Assign ranks with tie handling
-			int rank = 1;
-			long prevPosition = -1;
-			Map<Long, String> ranks = new HashMap<>();
-			List<Long> tiedIds = new ArrayList<>();
-
-			for (Map.Entry<Long, Long> entry : sortedEntries) {
-				long tortoiseId = entry.getKey();
-				long position = entry.getValue();
-
-				if (position == prevPosition) {
-					// Tied with previous
-					tiedIds.add(tortoiseId);
-				} else {
-					// Process previous tied group
-					if (!tiedIds.isEmpty()) {
-						String rankStr = tiedIds.size() > 1 ? (rank - 1) + "ex" : String.valueOf(rank - 1);
-						for (Long tiedId : tiedIds) {
-							ranks.put(tiedId, rankStr);
-						}
-						rank += tiedIds.size();
-						tiedIds.clear();
+			if (barrier != null) {
+				if (!barrier.isReleased(top)) {
+					long now = System.nanoTime();
+					Tuple replaced = barrier.add(top, id, total, t, now);
+					if (replaced != null) {
+						// replayed tuple: the latest one is kept
+						collector.ack(replaced);
 					}
-					// Start new group
-					tiedIds.add(tortoiseId);
-					prevPosition = position;
+					barrier.drain(now, this::release);
+					return;
 				}
+				late++;
 			}
 
-			// Process last group
-			if (!tiedIds.isEmpty()) {
-				String rankStr = tiedIds.size() > 1 ? rank + "ex" : String.valueOf(rank);
-				for (Long tiedId : tiedIds) {
-					ranks.put(tiedId, rankStr);
-				}
+			// Rank among the tortoises last seen at the same observation point: 1 + those ahead, "ex" if tied
+			RankIndex index = byTop.get(top);
+			emitRank(t, id, top, nom, index.countGreater(nbCellsParcourus) + 1, index.count(nbCellsParcourus) > 1,
+					total, maxcel);
+			collector.ack(t);
+
+		} catch (Exception e) {
+			System.err.println("Error in GiveRankBolt: " + e.getMessage());
+			e.printStackTrace();
+			collector.fail(t);
+		}
+	}
+
+	/* leaderboard of a released top: 1 + tortoises ahead, "ex" if tied, within this top only */
+	private void release(long top, List<Tuple> items, boolean complete) {
+		int n = items.size();
+		long[] sorted = new long[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = items.get(i).getLongByField("nbCellsParcourus");
+		}
+		long[] byTuple = sorted.clone();
+		Arrays.sort(sorted);
+
+		for (int i = 0; i < n; i++) {
+			Tuple t = items.get(i);
+			long position = byTuple[i];
+			int notAhead = upperBound(sorted, position);
+			int tied = notAhead - lowerBound(sorted, position);
+			emitRank(t, t.getIntegerByField("id"), top, t.getStringByField("nom"), n - notAhead + 1, tied > 1,
+					t.getIntegerByField("total"), t.getIntegerByField("maxcel"));
+			collector.ack(t);
+		}
+		if (!complete) {
+			logger.info("Top " + top + " ranked with " + n + " tortoise(s) out of " + items.get(0).getIntegerByField("total")
+					+ " (" + barrier + ")");
+		}
+	}
+
+	private void emitRank(Tuple t, int id, long top, String nom, int rank, boolean tied, int total, int maxcel) {
+		if (refreshTops > 0) {
+			if (id >= lastSent.length) {
+				lastSent = Arrays.copyOf(lastSent, Math.max(id + 1, 2 * lastSent.length));
+			}
+			int code = (rank << 1) | (tied ? 1 : 0);
+			if (lastSent[id] == code && top % refreshTops != 0) {
+				suppressed++;
+				return;
 			}
+			lastSent[id] = code;
+		}
+		String rang = tied ? rank + "ex" : String.valueOf(rank);
+		logger.fine("Rank for tortoise " + id + ": " + rang);
+		collector.emit(t, new Values(id, top, nom, rang, total, maxcel));
+	}
 
-			// Emit rank for current tortoise
-			String rang = ranks.get(id);
-			if (rang == null) {
-				rang = "1"; // Default if no other data
+	/* first index whose value is >= v */
+	private static int lowerBound(long[] a, long v) {
+		int lo = 0;
+		int hi = a.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < v) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
 			}
+		}
+		return lo;
+	}
 
-			// Build output JSON
-			ObjectNode output = mapper.createObjectNode();
-			output.put("id", id);
-			output.put("top", top);
-			output.put("rang", rang);
-			output.put("total", total);
-			output.put("maxcel", maxcel);
+	/* first index whose value is > v */
+	private static int upperBound(long[] a, long v) {
+		int lo = 0;
+		int hi = a.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] <= v) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
 
-			String result = mapper.writeValueAsString(output);
-			logger.info("Rank for tortoise " + id + ": " + rang);
+	/* the tops held for the previous race are ranked as they are */
+	private void newRace(long top) {
+		races = columns.getRaces();
+		if (barrier != null) {
+			barrier.restart(this::release);
+		}
+		this.forgetSent();
+		logger.info("New race at top " + top + " (" + columns + ")");
+	}
 
-			collector.emit(t, new Values(result));
-			collector.ack(t);
+	/* with withChangesOnly, the next rank of every tortoise is sent */
+	private void forgetSent() {
+		if (refreshTops > 0) {
+			lastSent = new int[0];
+		}
+	}
 
-		} catch (Exception e) {
-			System.err.println("Error in GiveRankBolt: " + e.getMessage());
-			e.printStackTrace();
-			collector.fail(t);
+	/* the tortoise leaves the index of its previous top for the index of top */
+	private void move(int id, long top, long position) {
+		long previousTop = columns.getTop(id);
+		long previousPosition = columns.getValue(id);
+		long races = columns.getRaces();
+		columns.put(id, top, position, this::unindex);
+		if (previousTop >= 0 && columns.getRaces() == races) {
+			unindex(id, previousTop, previousPosition);
 		}
+		byTop.computeIfAbsent(top, k -> new RankIndex()).add(position);
+	}
+
+	private void unindex(int id, long top, long position) {
+		RankIndex index = byTop.get(top);
+		if (index != null) {
+			index.remove(position);
+			if (index.size() == 0) {
+				byTop.remove(top);
+			}
+		}
+	}
+
+	/* indexes rebuilt from the committed state */
+	private void restore() {
+		columns.restore(kvState);
+		byTop = new HashMap<>();
+		columns.forEach((id, top, position) -> byTop.computeIfAbsent(top, k -> new RankIndex()).add(position));
+		rebuild = false;
+		logger.info("GiveRankBolt restored " + columns.getLive() + " tortoises over " + byTop.size() + " top(s)");
+	}
+
+	@Override
+	public void preCommit(long txid) {
+		int evicted = columns.evict(this::unindex);
+		int blocks = columns.commit(kvState);
+		logger.fine("Checkpoint " + txid + ": " + blocks + " block(s) written, " + evicted + " tortoise(s) evicted");
+	}
+
+	@Override
+	public void preRollback() {
+		// the state goes back to the last commit: the indexes are rebuilt from it before the next tuple
+		rebuild = true;
+		if (barrier != null) {
+			// the held tuples are not acked: the spout replays them
+			barrier = new TopBarrier<>(TimeUnit.MILLISECONDS.toNanos(timeoutMillis), reorderTops);
+		}
+		// the replayed tuples may be ranked again as before: their ranks must be sent again
+		this.forgetSent();
 	}
 
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
-		declarer.declare(new Fields("json"));
+		declarer.declare(OUTPUT_FIELDS);
 	}
 
 	@Override
-	public void initState(KeyValueState<String, String> state) {
+	public void initState(KeyValueState<String, RunnerColumns> state) {
 		kvState = state;
+		restore();
 		logger.info("GiveRankBolt state initialized");
 	}
 
@@ -150,7 +306,19 @@ public class GiveRankBolt extends BaseStatefulBolt<KeyValueState<String, String>
 	@SuppressWarnings("rawtypes")
 	public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
 		this.collector = collector;
-		this.mapper = new ObjectMapper();
+		this.columns = new ColumnState("rank_", ColumnState.DEFAULT_HORIZON);
+		this.byTop = new HashMap<>();
+		context.registerGauge("rank-state-tortoises", () -> columns.getLive());
+		if (refreshTops > 0) {
+			this.lastSent = new int[0];
+			context.registerGauge("rank-suppressed", () -> suppressed);
+		}
+		if (timeoutMillis > 0) {
+			this.barrier = new TopBarrier<>(TimeUnit.MILLISECONDS.toNanos(timeoutMillis), reorderTops);
+			context.registerGauge("rank-pending-tops", () -> barrier.getPending());
+			context.registerGauge("rank-partial-tops", () -> barrier.getTimedOut() + barrier.getForced());
+			context.registerGauge("rank-late-tuples", () -> late);
+		}
 	}
 
 	@Override
@@ -159,6 +327,12 @@ public class GiveRankBolt extends BaseStatefulBolt<KeyValueState<String, String>
 
 	@Override
 	public Map<String, Object> getComponentConfiguration() {
-		return null;
+		if (timeoutMillis <= 0) {
+			return null;
+		}
+		// tick tuples release the timed out tops when the stream stalls
+		Map<String, Object> conf = new HashMap<>();
+		conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis)));
+		return conf;
 	}
 }
@@ -9,25 +9,95 @@ import org.apache.storm.topology.base.BaseRichSpout;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Values;
-import org.apache.storm.utils.Utils;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import stormTP.stream.FeedMessage;
+import stormTP.stream.FrameDecoder;
+import stormTP.stream.MessageIds;
+import stormTP.stream.MulticastReceiver;
+import stormTP.stream.PendingTable;
+import stormTP.stream.PendingTop;
+import stormTP.stream.RaceFrame;
+import stormTP.stream.StreamBuffer;
 
 /**
  * @author lumineau
  *
+ * Un thread lecteur dédié lit le flux et remplit une file bornée ;
+ * nextTuple émet jusqu'à un lot de tuples par appel sans jamais bloquer.
+ *
+ * En mode fiable, chaque top est émis avec un identifiant (course, top, partition)
+ * et conservé jusqu'à son acquittement ; il est réémis en cas d'échec.
+ *
+ * Le thread lecteur se reconnecte au générateur (attente exponentielle avec part aléatoire)
+ * et demande à reprendre après le dernier top lu (sans effet si le générateur ne conserve
+ * aucun top : option history=).
+ *
+ * Par défaut chaque tuple contient un top entier ("json") ; avec withRunnerTuples, le top est
+ * décodé une seule fois par le spout et émis en un tuple typé par coureur (RUNNER_FIELDS).
+ * Les formats binaires et le multicast sont toujours émis ainsi : un top décodé n'est pas
+ * réécrit en JSON pour être analysé à nouveau en aval.
+ *
+ * Avec withRunnerFilter, le générateur ne sérialise pour cette connexion que les coureurs
+ * demandés : les tops lus, décodés et émis ne contiennent plus qu'eux.
  */
 public class InputStreamSpout extends BaseRichSpout {
 
 	private static final long serialVersionUID = -299357684149329360L;
 	private static Logger logger = Logger.getLogger("InputSpoutLogger");
+	private static final int CONNECT_TIMEOUT = 5000;
+	/* champs des tuples émis coureur par coureur */
+	public static final Fields RUNNER_FIELDS = new Fields("id", "top", "tour", "cellule", "total", "maxcel");
 	private SpoutOutputCollector collector;
 	private String host;
 	private int port;
 	private Socket socket;
 	private BufferedReader reader;
+	/* octet de poignée de main, 0 pour le flux JSON par défaut */
+	private byte format = 0;
+	private FrameDecoder decoder;
+	private String multicastGroup = null;
+	private String multicastInterface = null;
+	private MulticastReceiver multicast;
+	private int partitions = 1;
+	private int batchSize = 100;
+	private int queueCapacity = 10000;
+	private StreamBuffer.FullPolicy fullPolicy = StreamBuffer.FullPolicy.BLOCK;
+	private transient StreamBuffer<FeedMessage> buffer;
+	private transient ArrayList<FeedMessage> batch;
+	private Thread readerThread;
+	private volatile boolean running = false;
+	private int partition = 0;
+	/* plages {from, to, ..} envoyées au générateur, null : toute la course */
+	private int[] runnerRanges = null;
+	private boolean runnerTuples = false;
+	private transient ObjectMapper mapper;
+	private boolean reliable = false;
+	private int maxPending = 1000;
+	private int maxReplays = 3;
+	private PendingTable pending;
+	private long replayed = 0;
+	private long abandoned = 0;
+	private long duplicates = 0;
+	private long minBackoff = 100;
+	private long maxBackoff = 30000;
+	/* état du thread lecteur */
+	private long lastTop = -1;
+	private volatile long reconnects = 0;
+	private volatile long gaps = 0;
+	private volatile long gapTops = 0;
 	
 	/**
 	 * 
@@ -37,6 +107,132 @@ public class InputStreamSpout extends BaseRichSpout {
 		this.port = port;
 
 	}
+
+	/**
+	 * Demande au générateur le flux binaire préfixé par longueur plutôt que les lignes JSON.
+	 * Implique withRunnerTuples : les bolts en aval lisent RUNNER_FIELDS.
+	 */
+	public InputStreamSpout withBinaryFormat() {
+		this.format = FrameDecoder.HANDSHAKE_BINARY;
+		this.runnerTuples = true;
+		return this;
+	}
+
+	/**
+	 * Flux binaire delta : tops complets périodiques et, entre deux, les seuls coureurs qui ont bougé.
+	 * L'état complet est reconstruit par le décodeur, chaque top émis contient tous les coureurs.
+	 * Implique withRunnerTuples.
+	 */
+	public InputStreamSpout withDeltaFormat() {
+		this.format = FrameDecoder.HANDSHAKE_DELTA;
+		this.runnerTuples = true;
+		return this;
+	}
+
+	/**
+	 * Réception du flux publié en multicast sur group:port (option multicast= du générateur)
+	 * au lieu d'une connexion TCP. Chaque tâche du spout reçoit tous les tops.
+	 * Implique withRunnerTuples.
+	 */
+	public InputStreamSpout withMulticast(String group) {
+		this.multicastGroup = group;
+		this.runnerTuples = true;
+		return this;
+	}
+
+	/**
+	 * Lecture d'un générateur lancé avec partitions=k : la tâche i du spout lit la partition i
+	 * sur port + i. Avec un parallélisme de k, chaque coureur est lu par une seule tâche.
+	 */
+	public InputStreamSpout withPartitions(int k) {
+		this.partitions = k;
+		return this;
+	}
+
+	/**
+	 * Interface de réception multicast (boucle locale par défaut).
+	 */
+	public InputStreamSpout withMulticastInterface(String iface) {
+		this.multicastInterface = iface;
+		return this;
+	}
+	
+	
+	/**
+	 * Mode fiable : au plus maxPending tops émis et non acquittés (le spout n'émet plus au-delà),
+	 * chaque top en échec est réémis jusqu'à maxReplays fois puis abandonné.
+	 */
+	public InputStreamSpout withReliability(int maxPending, int maxReplays) {
+		this.reliable = true;
+		this.maxPending = maxPending;
+		this.maxReplays = maxReplays;
+		return this;
+	}
+
+	/**
+	 * Attente avant une reconnexion : minMillis, doublée à chaque échec jusqu'à maxMillis.
+	 */
+	public InputStreamSpout withBackoff(long minMillis, long maxMillis) {
+		this.minBackoff = minMillis;
+		this.maxBackoff = maxMillis;
+		return this;
+	}
+
+	/**
+	 * Un tuple par coureur (RUNNER_FIELDS) au lieu d'un tuple "json" par top : les bolts en aval
+	 * n'analysent plus le top entier et peuvent être répartis par fieldsGrouping sur "id".
+	 * En mode fiable, un top est acquitté quand tous ses tuples le sont et réémis en entier sinon.
+	 */
+	public InputStreamSpout withRunnerTuples() {
+		this.runnerTuples = true;
+		return this;
+	}
+
+	/**
+	 * Ne demande au générateur que les coureurs ids (tous si aucun) ; ids contigus regroupés en plages.
+	 * Les coureurs absents du filtre ne sont plus émis : à réserver aux topologies dont les bolts
+	 * ne suivent qu'eux (cf. MyTortoiseBolt.getWatched). Sans effet en multicast.
+	 */
+	public InputStreamSpout withRunnerFilter(int... ids) {
+		int[] ranges = toRanges(ids);
+		// le nombre de plages tient sur 16 bits
+		this.runnerRanges = (ranges.length == 0 || ranges.length / 2 > 0xFFFF) ? null : ranges;
+		return this;
+	}
+
+	/* {from0, to0, from1, to1, ..} bornes incluses, croissantes et disjointes */
+	private static int[] toRanges(int[] ids) {
+		int[] sorted = ids.clone();
+		Arrays.sort(sorted);
+		int[] ranges = new int[2 * sorted.length];
+		int n = 0;
+		for (int id : sorted) {
+			if (n > 0 && id <= ranges[n - 1] + 1) {
+				ranges[n - 1] = Math.max(ranges[n - 1], id);
+			} else {
+				ranges[n++] = id;
+				ranges[n++] = id;
+			}
+		}
+		return Arrays.copyOf(ranges, n);
+	}
+
+	/**
+	 * Nombre maximal de tops émis par appel à nextTuple (un tuple par top, ou par coureur avec withRunnerTuples).
+	 */
+	public InputStreamSpout withBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * Taille de la file entre le thread lecteur et le spout, et comportement quand elle est pleine.
+	 */
+	public InputStreamSpout withQueue(int capacity, StreamBuffer.FullPolicy policy) {
+		this.queueCapacity = capacity;
+		this.fullPolicy = policy;
+		return this;
+	}
 	
 	
 	/* (non-Javadoc)
@@ -46,22 +242,82 @@ public class InputStreamSpout extends BaseRichSpout {
 	@Override
 	public void nextTuple() {
 
-		try {
+		if (buffer == null) {
+			return;
+		}
 
-			if (reader.ready()) {
-				String json = reader.readLine();
-				if (json != null) {
-					collector.emit(new Values(json));
-					logger.info("EMIT OK");
+		// vidage d'un lot ; si la file est vide, Storm applique sa stratégie d'attente
+		int n = 0;
+		if (reliable) {
+			// les tops en échec d'abord, puis de nouveaux tops dans la limite des tops en vol
+			while (n < batchSize && pending.hasFailed()) {
+				long id = pending.pollFailed();
+				Object value = pending.get(id);
+				if (value instanceof PendingTop) {
+					// nouvelle tentative : les acquittements de la précédente seront ignorés
+					PendingTop retry = new PendingTop(id, ((PendingTop) value).getFrame());
+					pending.replace(id, retry);
+					this.emitRunners(retry.getFrame(), retry);
+					replayed++;
+					n++;
+				} else if (value != null) {
+					collector.emit(new Values(value), id);
+					replayed++;
+					n++;
 				}
 			}
+			buffer.drainTo(batch, Math.min(batchSize - n, maxPending - pending.size()));
+			for (FeedMessage m : batch) {
+				if (runnerTuples) {
+					if (m.getFrame().getCount() == 0) {
+						// aucun coureur : rien à émettre ni à acquitter
+						continue;
+					}
+					PendingTop p = new PendingTop(m.getId(), m.getFrame());
+					if (pending.put(m.getId(), p)) {
+						this.emitRunners(m.getFrame(), p);
+					} else {
+						// même top déjà en vol (course rejouée) : émis sans suivi
+						duplicates++;
+						this.emitRunners(m.getFrame(), null);
+					}
+				} else if (m.getId() == MessageIds.NONE) {
+					// top sans coureur : rien à rejouer
+					collector.emit(new Values(m.getJson()));
+				} else if (pending.put(m.getId(), m.getJson())) {
+					collector.emit(new Values(m.getJson()), m.getId());
+				} else {
+					// même top déjà en vol (course rejouée) : émis sans suivi
+					duplicates++;
+					collector.emit(new Values(m.getJson()));
+				}
+			}
+		} else {
+			buffer.drainTo(batch, batchSize);
+			for (FeedMessage m : batch) {
+				if (runnerTuples) {
+					this.emitRunners(m.getFrame(), null);
+				} else {
+					collector.emit(new Values(m.getJson()));
+				}
+			}
+		}
+		n += batch.size();
+		batch.clear();
+		if (n > 0) {
+			logger.fine("EMIT OK (" + n + ")");
+		}
+	}
 
-			// Nécessaire pour éviter que Storm bloque la fonction
-			Utils.sleep(10);
-
-		} catch (Exception e) {
-			e.printStackTrace();
-			Utils.sleep(1000);
+	/* un tuple par coureur du top, tous sous le même identifiant de message (null : sans suivi) */
+	private void emitRunners(RaceFrame f, PendingTop msgId) {
+		for (int i = 0; i < f.getCount(); i++) {
+			Values v = new Values(f.getId(i), f.getTop(), f.getTour(i), f.getCellule(i), f.getTotal(), f.getMaxcel());
+			if (msgId == null) {
+				collector.emit(v);
+			} else {
+				collector.emit(v, msgId);
+			}
 		}
 	}
 
@@ -74,14 +330,194 @@ public class InputStreamSpout extends BaseRichSpout {
 	public void open(Map conf, TopologyContext context, SpoutOutputCollector collector) {
 		this.collector = collector;
 
-		try {
-			socket = new Socket(host, port);
+		int port = this.port;
+		if (partitions > 1) {
+			int task = context.getThisTaskIndex();
+			if (task >= partitions) {
+				// aucune partition pour cette tâche : elle n'émettra rien
+				logger.warning("Spout task " + task + " has no partition (" + partitions + " partitions)");
+				return;
+			}
+			port += task;
+			partition = task;
+		}
+
+		if (runnerTuples) {
+			mapper = new ObjectMapper();
+		}
+		buffer = new StreamBuffer<FeedMessage>(queueCapacity, fullPolicy);
+		batch = new ArrayList<FeedMessage>(batchSize);
+		context.registerGauge("spout-queue-depth", buffer::getDepth);
+		context.registerGauge("spout-queue-peak", buffer::getPeak);
+		context.registerGauge("spout-queue-dropped", buffer::getDropped);
+		context.registerGauge("spout-queue-blocked", buffer::getBlocked);
+		context.registerGauge("spout-reconnects", () -> reconnects);
+		context.registerGauge("spout-gaps", () -> gaps);
+		context.registerGauge("spout-gap-tops", () -> gapTops);
+		if (reliable) {
+			pending = new PendingTable(maxPending);
+			context.registerGauge("spout-pending", pending::size);
+			context.registerGauge("spout-replayed", () -> replayed);
+			context.registerGauge("spout-abandoned", () -> abandoned);
+		}
+
+		// la connexion est établie (et rétablie) par le thread lecteur : open n'échoue pas si le générateur est absent
+		running = true;
+		int inputPort = port;
+		readerThread = Thread.ofPlatform().daemon().name("spout-reader-" + context.getThisTaskId())
+				.start(() -> this.readStream(inputPort));
+	}
+
+	/*
+	thread lecteur : lecture bloquante du flux et remplissage de la file ;
+	reconnexion avec attente exponentielle et aléatoire après une erreur ou une fin de flux
+	* */
+	private void readStream(int port) {
+		int attempt = 0;
+
+		while (running) {
+			try {
+				this.connect(port);
+				FeedMessage m;
+				while (running && (m = this.readNext()) != null) {
+					attempt = 0;
+					this.track(m.getId());
+					buffer.put(m);
+				}
+				if (running) {
+					logger.info("End of stream : " + buffer);
+				}
+			} catch (IOException e) {
+				if (running) {
+					logger.warning("Stream reader : " + e);
+				}
+			} finally {
+				this.disconnect();
+			}
+
+			if (running) {
+				long delay = backoff(attempt++);
+				logger.info("Reconnecting to " + host + ":" + port + " in " + delay + " ms");
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					return;
+				}
+				reconnects++;
+			}
+		}
+	}
+
+	/*
+	attente avant la tentative n : moitié fixe, moitié aléatoire, doublée à chaque échec jusqu'au maximum
+	* */
+	private long backoff(int attempt) {
+		long delay = Math.min(maxBackoff, minBackoff << Math.min(attempt, 20));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	private void connect(int port) throws IOException {
+		if (multicastGroup != null) {
+			multicast = new MulticastReceiver(multicastGroup, port, multicastInterface);
+			multicast.setBlocking(true);
+			System.out.println("Spout joined multicast group " + multicastGroup + ":" + port);
+			return;
+		}
+
+		socket = new Socket();
+		socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		if (format != 0) {
+			out.writeByte(format);
+		}
+		if (runnerRanges != null) {
+			// avant la reprise : les tops renvoyés sont eux aussi filtrés
+			out.writeByte(FrameDecoder.HANDSHAKE_FILTER);
+			out.writeShort(runnerRanges.length / 2);
+			for (int r : runnerRanges) {
+				out.writeInt(r);
+			}
+		}
+		if (lastTop >= 0) {
+			// reprise après le dernier top lu : le générateur renvoie ceux qu'il a conservés
+			out.writeByte(FrameDecoder.HANDSHAKE_RESUME);
+			out.writeLong(lastTop);
+		}
+		out.flush();
+
+		if (format != 0) {
+			decoder = new FrameDecoder(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+		} else {
 			reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-			System.out.println("Spout connected to " + host + ":" + port);
-		} catch (Exception e) {
-			throw new RuntimeException("Cannot connect to socket", e);
 		}
+		System.out.println("Spout connected to " + host + ":" + port
+				+ (runnerRanges != null ? " (" + runnerRanges.length / 2 + " runner range(s))" : "")
+				+ (lastTop >= 0 ? " (resuming after top " + lastTop + ")" : ""));
+	}
+
+	private void disconnect() {
+		if (multicast != null) {
+			logger.info(multicast.toString());
+			multicast.close();
+			multicast = null;
+		}
+		try {
+			if (socket != null) {
+				socket.close();
+			}
+		} catch (IOException ignored) {}
+		socket = null;
+		decoder = null;
+		reader = null;
+	}
+
+	/*
+	suivi des tops lus (course seule sur son port) : trous dans la séquence et
+	dernier top pour la reprise ; un top qui recule signale un générateur redémarré
+	* */
+	private void track(long id) {
+		if (id == MessageIds.NONE || MessageIds.raceId(id) >= 0) {
+			return;
+		}
+		long top = MessageIds.top(id);
+		if (lastTop >= 0) {
+			if (top > lastTop + 1) {
+				gaps++;
+				gapTops += top - lastTop - 1;
+			} else if (top <= lastTop) {
+				logger.info("Race restarted at top " + top + " (last top read " + lastTop + ")");
+			}
+		}
+		lastTop = top;
+	}
 
+	/*
+	top suivant avec son identifiant, au format JSON ou décodé pour l'émission par coureur
+	(toujours décodé pour les formats binaires) ;
+	null en fin de flux
+	* */
+	private FeedMessage readNext() throws IOException {
+		RaceFrame frame;
+		if (multicast != null) {
+			frame = multicast.poll();
+		} else if (decoder != null) {
+			frame = decoder.next();
+		} else {
+			String json = reader.readLine();
+			if (json == null) {
+				return null;
+			}
+			if (runnerTuples) {
+				return new FeedMessage(MessageIds.ofJson(json, partition), RaceFrame.fromJson(mapper.readTree(json)));
+			}
+			return new FeedMessage(MessageIds.ofJson(json, partition), json);
+		}
+		if (frame == null) {
+			return null;
+		}
+		long id = MessageIds.of(frame.getRaceId(), frame.getTop(), partition);
+		// la trame du décodeur est réutilisée au top suivant, pendant que celle-ci attend dans la file
+		return new FeedMessage(id, frame.copy());
 	}
 
 	/* (non-Javadoc)
@@ -89,6 +525,19 @@ public class InputStreamSpout extends BaseRichSpout {
 	 */
 	@Override
 	public void close() {
+		running = false;
+		if (readerThread != null) {
+			readerThread.interrupt();
+		}
+		this.disconnect();
+		if (buffer != null) {
+			logger.info(buffer.toString());
+		}
+		logger.info("Reconnects=" + reconnects + " gaps=" + gaps + " (" + gapTops + " tops)");
+		if (pending != null) {
+			logger.info("Reliable spout : pending=" + pending.size() + " replayed=" + replayed
+					+ " abandoned=" + abandoned + " duplicates=" + duplicates);
+		}
 		logger.info("StreamSimSpout " + InputStreamSpout.serialVersionUID + " is being closed.");
 	}
 
@@ -115,7 +564,18 @@ public class InputStreamSpout extends BaseRichSpout {
 	 */
 	@Override
 	public void ack(Object msgId) {
-		logger.info("*****  ACK  :   " + msgId + " *******");
+		if (pending == null) {
+			return;
+		}
+		if (msgId instanceof PendingTop) {
+			PendingTop p = (PendingTop) msgId;
+			// acquittement d'une tentative remplacée depuis : ignoré
+			if (pending.get(p.getId()) == p && p.ack()) {
+				pending.remove(p.getId());
+			}
+			return;
+		}
+		pending.remove((Long) msgId);
 	}
 
 	/* (non-Javadoc)
@@ -124,8 +584,29 @@ public class InputStreamSpout extends BaseRichSpout {
 	@SuppressWarnings("rawtypes")
 	@Override
 	public void fail(Object msgId) {
-		logger.info("***** FAIL  :   " + msgId + " *******");
-	
+		if (pending == null) {
+			return;
+		}
+		long id;
+		if (msgId instanceof PendingTop) {
+			PendingTop p = (PendingTop) msgId;
+			// un seul échec compte par tentative, les autres coureurs du top seront réémis avec lui
+			if (pending.get(p.getId()) != p || !p.fail()) {
+				return;
+			}
+			id = p.getId();
+		} else {
+			id = (Long) msgId;
+		}
+		int attempts = pending.fail(id);
+		if (attempts > maxReplays) {
+			// la réémission déjà programmée trouvera le top retiré et l'ignorera
+			pending.remove(id);
+			abandoned++;
+			logger.warning("***** FAIL  :   " + MessageIds.toString(id) + " abandoned after " + attempts + " attempts *******");
+		} else {
+			logger.info("***** FAIL  :   " + MessageIds.toString(id) + " replayed (" + attempts + ") *******");
+		}
 	}
 
 	/* (non-Javadoc)
@@ -133,7 +614,7 @@ public class InputStreamSpout extends BaseRichSpout {
 	 */
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
-		declarer.declare( new Fields("json"));
+		declarer.declare(runnerTuples ? RUNNER_FIELDS : new Fields("json"));
 		
 	}
 
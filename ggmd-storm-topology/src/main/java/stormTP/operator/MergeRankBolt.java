@@ -0,0 +1,138 @@
+package stormTP.operator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.base.BaseRichBolt;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.Values;
+
+import stormTP.core.RankHistogram;
+
+/**
+ * Second phase of the distributed ranking: merges the position histograms sent by every
+ * PartialRankBolt task for a top, and answers each task on a direct stream (OFFSETS_STREAM)
+ * with the number of runners ahead of and tied with each position of its own histogram.
+ *
+ * Only histograms cross the network, never runners. Grouped by "top", several merge tasks
+ * share the tops of the race. A top is merged once every partition owning runners of the race
+ * (PartialRankBolt.partitionOf over ids 0..total-1) has sent its histogram.
+ */
+public class MergeRankBolt extends BaseRichBolt {
+
+	private static final long serialVersionUID = -3795136049318830415L;
+	private static Logger logger = Logger.getLogger("MergeRankBoltLogger");
+	public static final String OFFSETS_STREAM = "offsets";
+	public static final Fields OFFSETS_FIELDS = new Fields("top", "ahead", "tied");
+	/* tops waiting for the histogram of a partition; older ones are failed */
+	private static final int MAX_PENDING = 64;
+
+	private OutputCollector collector;
+	private transient TreeMap<Long, Tuple[]> pending;
+	/* partitions owning at least one runner, for a race of "total" runners */
+	private transient Map<Integer, BitSet> owners;
+
+	@Override
+	public void execute(Tuple t) {
+		try {
+			long top = t.getLongByField("top");
+			int partition = t.getIntegerByField("partition");
+			int partitions = t.getIntegerByField("partitions");
+			BitSet expected = this.owners(t.getIntegerByField("total"), partitions);
+
+			Tuple[] parts = pending.get(top);
+			if (parts == null) {
+				parts = new Tuple[partitions];
+				pending.put(top, parts);
+				while (pending.size() > MAX_PENDING) {
+					Map.Entry<Long, Tuple[]> oldest = pending.pollFirstEntry();
+					logger.warning("Top " + oldest.getKey() + " dropped before all its partitions were received");
+					for (Tuple p : oldest.getValue()) {
+						if (p != null) {
+							collector.fail(p);
+						}
+					}
+				}
+			}
+			if (parts[partition] != null) {
+				// replayed histogram: the latest one is kept
+				collector.ack(parts[partition]);
+			}
+			parts[partition] = t;
+
+			for (int p = 0; p < parts.length; p++) {
+				if (parts[p] == null && expected.get(p)) {
+					return;
+				}
+			}
+			pending.remove(top);
+			List<Tuple> received = new ArrayList<>(parts.length);
+			for (Tuple p : parts) {
+				if (p != null) {
+					received.add(p);
+				}
+			}
+			this.merge(top, received);
+		} catch (Exception e) {
+			System.err.println("Error in MergeRankBolt: " + e.getMessage());
+			e.printStackTrace();
+			collector.fail(t);
+		}
+	}
+
+	/* partitions owning runners among ids 0..total-1 */
+	private BitSet owners(int total, int partitions) {
+		BitSet b = owners.get(total);
+		if (b == null) {
+			b = new BitSet(partitions);
+			for (int id = 0; id < total && b.cardinality() < partitions; id++) {
+				b.set(PartialRankBolt.partitionOf(id, partitions));
+			}
+			owners.put(total, b);
+		}
+		return b;
+	}
+
+	private void merge(long top, List<Tuple> parts) {
+		List<RankHistogram> histograms = new ArrayList<>(parts.size());
+		for (Tuple p : parts) {
+			histograms.add(new RankHistogram((long[]) p.getValueByField("positions"), (int[]) p.getValueByField("counts")));
+		}
+		RankHistogram global = RankHistogram.merge(histograms);
+
+		for (int i = 0; i < parts.size(); i++) {
+			RankHistogram part = histograms.get(i);
+			int[] ahead = new int[part.size()];
+			int[] tied = new int[part.size()];
+			global.rank(part, ahead, tied);
+			collector.emitDirect(parts.get(i).getSourceTask(), OFFSETS_STREAM, parts, new Values(top, ahead, tied));
+		}
+		for (Tuple p : parts) {
+			collector.ack(p);
+		}
+		logger.fine("Top " + top + " ranked: " + global.getRunners() + " runners, " + global.size() + " positions");
+	}
+
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		declarer.declareStream(OFFSETS_STREAM, true, OFFSETS_FIELDS);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+		this.collector = collector;
+		this.pending = new TreeMap<>();
+		this.owners = new HashMap<>();
+		context.registerGauge("merge-pending-tops", () -> pending.size());
+	}
+}
@@ -1,12 +1,14 @@
 package stormTP.operator;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.IRichBolt;
@@ -14,17 +16,37 @@ import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.Utils;
+import stormTP.stream.FilterCommand;
+import stormTP.stream.RunnerScanner;
 
 /**
- * Filter a single tortoise by ID and enrich it with custom name and cumulative cells traveled
+ * Filter tortoises by ID and enrich them with custom name and cumulative cells traveled.
+ * Emits typed fields (OUTPUT_FIELDS); JSON is only produced by the exit bolts.
+ *
+ * A single bolt can serve many subscribers: each subscribe(streamId, ids...) declares an output
+ * stream that receives the watched runners of that subscriber, all found in one parse of the top.
+ * new MyTortoiseBolt(id) watches one runner on the default stream.
+ *
+ * The watched runners can be changed at runtime: connect the bolt to a ControlSpout with allGrouping,
+ * every task then applies each FilterCommand between two tuples. The spout periodically replays the
+ * current filters, so a restarted task catches up; a replay that changes nothing is ignored.
  */
 public class MyTortoiseBolt implements IRichBolt {
 
 	private static final long serialVersionUID = 4262369370788107344L;
 	private static Logger logger = Logger.getLogger("MyTortoiseBoltLogger");
+	public static final Fields OUTPUT_FIELDS = new Fields("id", "top", "nom", "nbCellsParcourus", "total", "maxcel");
 	private OutputCollector collector;
-	private int tortoiseId;
-	private ObjectMapper mapper;
+	/* watched ids of each output stream, in declaration order */
+	private LinkedHashMap<String, int[]> subscriptions = new LinkedHashMap<>();
+	private transient RunnerScanner scanner;
+	/* output streams of each watched id */
+	private transient Map<Integer, String[]> routes;
+	/* exposed as metrics, read by the metrics thread */
+	private transient volatile int watchedCount;
+	private transient volatile String filterSet;
+	private transient volatile long filterVersion;
 
 	// Tortoise names for each ID
 	private static final String[] TORTOISE_NAMES = {
@@ -32,91 +54,71 @@ public class MyTortoiseBolt implements IRichBolt {
 		"Frank", "Grace", "Henry", "Iris", "Jack"
 	};
 
+	/**
+	 * Name given to the tortoise id in the emitted tuples.
+	 */
+	public static String nameOf(int id) {
+		return TORTOISE_NAMES[id % TORTOISE_NAMES.length];
+	}
+
 	public MyTortoiseBolt(int tortoiseId) {
-		this.tortoiseId = tortoiseId;
-		this.mapper = new ObjectMapper();
+		this.addSubscription(Utils.DEFAULT_STREAM_ID, tortoiseId);
+	}
+
+	public MyTortoiseBolt() {
+	}
+
+	/**
+	 * Declares the output stream streamId, receiving the runners ids (a runner may be watched by several streams).
+	 */
+	public MyTortoiseBolt subscribe(String streamId, int... ids) {
+		this.addSubscription(streamId, ids);
+		return this;
+	}
+
+	/* not overridable: also called from the constructor */
+	private void addSubscription(String streamId, int... ids) {
+		int[] previous = subscriptions.get(streamId);
+		if (previous != null) {
+			int[] merged = new int[previous.length + ids.length];
+			System.arraycopy(previous, 0, merged, 0, previous.length);
+			System.arraycopy(ids, 0, merged, previous.length, ids.length);
+			ids = merged;
+		}
+		subscriptions.put(streamId, ids.clone());
+	}
+
+	/**
+	 * Ids watched by at least one subscription, sorted: the runners a spout has to read for this bolt.
+	 */
+	public int[] getWatched() {
+		return subscriptions.values().stream().flatMapToInt(Arrays::stream).distinct().sorted().toArray();
 	}
 
 	@Override
 	public void execute(Tuple t) {
 		try {
-			String jsonStr = t.getValueByField("json").toString();
-			JsonNode inputJson = mapper.readTree(jsonStr);
-
-			// Check if this is a wrapped message with "timestamp" and "runners" array
-			if (inputJson.has("runners")) {
-				// New format: {"timestamp": ..., "runners": [...]}
-				JsonNode runners = inputJson.get("runners");
-
-				for (JsonNode runner : runners) {
-					long id = runner.get("id").asLong();
-
-					// Filter by tortoise ID
-					if (id == tortoiseId) {
-						long top = runner.get("top").asLong();
-						long tour = runner.get("tour").asLong();
-						long cellule = runner.get("cellule").asLong();
-						long total = runner.get("total").asLong();
-						long maxcel = runner.get("maxcel").asLong();
-
-						// Calculate cumulative cells traveled
-						long nbCellsParcourus = cellule + (tour * maxcel);
-
-						// Get tortoise name
-						String nom = TORTOISE_NAMES[(int)(id % TORTOISE_NAMES.length)];
-
-						// Build output JSON
-						ObjectNode output = mapper.createObjectNode();
-						output.put("id", id);
-						output.put("top", top);
-						output.put("nom", nom);
-						output.put("nbCellsParcourus", nbCellsParcourus);
-						output.put("total", total);
-						output.put("maxcel", maxcel);
-
-						String result = mapper.writeValueAsString(output);
-						logger.info("Tortoise " + id + " => " + result + " treated!");
-
-						collector.emit(t, new Values(result));
-					}
-				}
+			if (t.contains(ControlSpout.COMMAND)) {
+				this.control(t.getStringByField(ControlSpout.COMMAND));
 				collector.ack(t);
-			} else {
-				// Old format: direct runner object
-				long id = inputJson.get("id").asLong();
-
-				// Filter by tortoise ID
-				if (id == tortoiseId) {
-					long top = inputJson.get("top").asLong();
-					long tour = inputJson.get("tour").asLong();
-					long cellule = inputJson.get("cellule").asLong();
-					long total = inputJson.get("total").asLong();
-					long maxcel = inputJson.get("maxcel").asLong();
-
-					// Calculate cumulative cells traveled
-					long nbCellsParcourus = cellule + (tour * maxcel);
-
-					// Get tortoise name
-					String nom = TORTOISE_NAMES[(int)(id % TORTOISE_NAMES.length)];
-
-					// Build output JSON
-					ObjectNode output = mapper.createObjectNode();
-					output.put("id", id);
-					output.put("top", top);
-					output.put("nom", nom);
-					output.put("nbCellsParcourus", nbCellsParcourus);
-					output.put("total", total);
-					output.put("maxcel", maxcel);
-
-					String result = mapper.writeValueAsString(output);
-					logger.info("Tortoise " + id + " => " + result + " treated!");
-
-					collector.emit(t, new Values(result));
-					collector.ack(t);
-				} else {
-					collector.ack(t);
+				return;
+			}
+
+			if (t.contains("id")) {
+				// Typed single-runner tuple (InputStreamSpout.withRunnerTuples)
+				if (scanner.isWatched(t.getIntegerByField("id"))) {
+					this.emit(t, t.getIntegerByField("id"), t.getLongByField("top"),
+							t.getIntegerByField("tour"), t.getIntegerByField("cellule"),
+							t.getIntegerByField("total"), t.getIntegerByField("maxcel"));
 				}
+				collector.ack(t);
+				return;
 			}
+
+			// Streaming scan: other runners are skipped, parsing stops once every watched runner is found
+			String jsonStr = t.getValueByField("json").toString();
+			scanner.scan(jsonStr, (id, top, tour, cellule, total, maxcel) -> this.emit(t, id, top, tour, cellule, total, maxcel));
+			collector.ack(t);
 		} catch (Exception e) {
 			System.err.println("Error in MyTortoiseBolt: " + e.getMessage());
 			e.printStackTrace();
@@ -124,9 +126,72 @@ public class MyTortoiseBolt implements IRichBolt {
 		}
 	}
 
+	/*
+	 * Filter change: the scanner and routes are rebuilt and replaced before the next tuple is executed
+	 */
+	private void control(String command) {
+		FilterCommand c = FilterCommand.parse(command);
+		int[] current = subscriptions.get(c.getStream());
+		if (current == null) {
+			logger.warning("Filter command for unknown stream " + c.getStream() + " ignored : " + command);
+			return;
+		}
+		int[] next = c.apply(current);
+		if (Arrays.equals(Arrays.stream(current).distinct().sorted().toArray(),
+				Arrays.stream(next).distinct().sorted().toArray())) {
+			// replay of a command already applied
+			logger.fine("Filter command (" + command + ") leaves " + c.getStream() + " unchanged");
+			return;
+		}
+		subscriptions.put(c.getStream(), next);
+		this.applyFilters();
+		filterVersion++;
+		logger.info("Filter command applied (" + command + "), now watching " + filterSet);
+	}
+
+	private void applyFilters() {
+		BitSet watched = new BitSet();
+		Map<Integer, List<String>> streams = new HashMap<>();
+		StringBuilder set = new StringBuilder();
+		for (Map.Entry<String, int[]> s : subscriptions.entrySet()) {
+			for (int id : s.getValue()) {
+				watched.set(id);
+				List<String> l = streams.computeIfAbsent(id, k -> new ArrayList<>());
+				if (!l.contains(s.getKey())) {
+					l.add(s.getKey());
+				}
+			}
+			set.append(set.length() > 0 ? " " : "").append(s.getKey()).append('=').append(Arrays.toString(s.getValue()));
+		}
+		Map<Integer, String[]> r = new HashMap<>();
+		for (Map.Entry<Integer, List<String>> e : streams.entrySet()) {
+			r.put(e.getKey(), e.getValue().toArray(new String[0]));
+		}
+		this.routes = r;
+		this.scanner = new RunnerScanner(watched);
+		this.watchedCount = watched.cardinality();
+		this.filterSet = set.toString();
+	}
+
+	private void emit(Tuple t, int id, long top, int tour, int cellule, int total, int maxcel) {
+		// Calculate cumulative cells traveled
+		long nbCellsParcourus = cellule + ((long) tour * maxcel);
+
+		// Get tortoise name
+		String nom = nameOf(id);
+
+		logger.fine("Tortoise " + id + " => top " + top + ", " + nbCellsParcourus + " cells treated!");
+		Values v = new Values(id, top, nom, nbCellsParcourus, total, maxcel);
+		for (String stream : routes.get(id)) {
+			collector.emit(stream, t, v);
+		}
+	}
+
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
-		declarer.declare(new Fields("json"));
+		for (String stream : subscriptions.keySet()) {
+			declarer.declareStream(stream, OUTPUT_FIELDS);
+		}
 	}
 
 	@Override
@@ -142,5 +207,10 @@ public class MyTortoiseBolt implements IRichBolt {
 	@SuppressWarnings("rawtypes")
 	public void prepare(Map arg0, TopologyContext context, OutputCollector collector) {
 		this.collector = collector;
+		this.applyFilters();
+		context.registerGauge("tortoise-watched", () -> watchedCount);
+		context.registerGauge("tortoise-filter-version", () -> filterVersion);
+		context.registerGauge("tortoise-filters", () -> filterSet);
+		logger.info("MyTortoiseBolt watching " + filterSet);
 	}
 }
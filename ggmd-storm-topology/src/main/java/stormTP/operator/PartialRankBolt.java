@@ -0,0 +1,259 @@
+package stormTP.operator;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.base.BaseRichBolt;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.TupleUtils;
+
+import stormTP.core.RankHistogram;
+import stormTP.stream.TopBarrier;
+
+/**
+ * First phase of the distributed ranking: each task holds the runners of its partition
+ * (fieldsGrouping on "id") for a top, then sends only the histogram of their positions
+ * (HISTOGRAM_STREAM) to MergeRankBolt. The merge answers on a direct stream with, for each
+ * position of the histogram, the number of runners ahead of it and tied with it in the whole
+ * race; the task then emits the rank of each of its runners (GiveRankBolt.OUTPUT_FIELDS).
+ *
+ * A top is sent when all the runners of the partition have arrived, or after timeoutMillis.
+ * The partition of each runner is computed as Storm's fieldsGrouping does, so the upstream
+ * component must be grouped on an Integer "id" field and send every runner of the race.
+ * A partition owning no runner of the race sends nothing: the merge does not wait for it.
+ * The tops skipped by a partition (none of its runners arrived in time) are sent empty.
+ * A new race (tops starting over, or another number of runners) restarts the barrier: the
+ * tops still held are sent incomplete.
+ *
+ * Reads either MyTortoiseBolt.OUTPUT_FIELDS or InputStreamSpout.RUNNER_FIELDS ("tour",
+ * "cellule" and "maxcel" give the cells travelled).
+ */
+public class PartialRankBolt extends BaseRichBolt {
+
+	private static final long serialVersionUID = 6163170531573541817L;
+	private static Logger logger = Logger.getLogger("PartialRankBoltLogger");
+	public static final String HISTOGRAM_STREAM = "histogram";
+	public static final Fields HISTOGRAM_FIELDS = new Fields("top", "partition", "partitions", "total", "positions",
+			"counts");
+	/* tops sent to the merge and waiting for its answer; older ones are forgotten (their tuples time out) */
+	private static final int MAX_WAITING = 64;
+	private static final int REORDER_TOPS = 8;
+
+	private final long timeoutMillis;
+	private final int[] watched;
+	private OutputCollector collector;
+	private transient int partition;
+	private transient int partitions;
+	private transient BitSet emitted;
+	private transient TopBarrier<Tuple> barrier;
+	/* runners of the partition expected for a race of "total" runners */
+	private transient Map<Integer, Integer> expected;
+	private transient TreeMap<Long, Local> waiting;
+	private transient long late;
+	/* last top sent to the merge, -1 if none */
+	private transient long lastSent;
+
+	/**
+	 * Ranks every runner of the race, or only the watched ones when ids are given.
+	 */
+	public PartialRankBolt(long timeoutMillis, int... watched) {
+		this.timeoutMillis = timeoutMillis;
+		this.watched = watched.clone();
+	}
+
+	@Override
+	public void execute(Tuple t) {
+		if (TupleUtils.isTick(t)) {
+			barrier.drain(System.nanoTime(), this::release);
+			return;
+		}
+		try {
+			if (t.getSourceStreamId().equals(MergeRankBolt.OFFSETS_STREAM)) {
+				this.rank(t);
+				return;
+			}
+
+			long top = t.getLongByField("top");
+			int total = t.getIntegerByField("total");
+			if (barrier.isNewRace(top, this.expected(total))) {
+				// the tops held of the previous race are sent incomplete, the new race starts from its first top
+				barrier.restart(this::release);
+				lastSent = -1;
+				logger.info("New race at top " + top + " in partition " + partition + " (" + barrier + ")");
+			}
+			if (barrier.isReleased(top)) {
+				// the histogram of this top is already sent: the runner can no longer be counted
+				late++;
+				logger.fine("Late runner " + t.getIntegerByField("id") + " for top " + top);
+				collector.ack(t);
+				return;
+			}
+			long now = System.nanoTime();
+			Tuple replaced = barrier.add(top, t.getIntegerByField("id"), this.expected(total), t, now);
+			if (replaced != null) {
+				collector.ack(replaced);
+			}
+			barrier.drain(now, this::release);
+		} catch (Exception e) {
+			System.err.println("Error in PartialRankBolt: " + e.getMessage());
+			e.printStackTrace();
+			collector.fail(t);
+		}
+	}
+
+	/* runners of this partition among ids 0..total-1 */
+	private int expected(int total) {
+		Integer n = expected.get(total);
+		if (n == null) {
+			int count = 0;
+			for (int id = 0; id < total; id++) {
+				if (partitionOf(id, partitions) == partition) {
+					count++;
+				}
+			}
+			n = count;
+			expected.put(total, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Partition (task index) of the runner id, with the hash of Storm's fieldsGrouping on "id".
+	 */
+	public static int partitionOf(int id, int partitions) {
+		return TupleUtils.chooseTaskIndex(Collections.singletonList(id), partitions);
+	}
+
+	private static long position(Tuple t) {
+		if (t.contains("nbCellsParcourus")) {
+			return t.getLongByField("nbCellsParcourus");
+		}
+		return t.getIntegerByField("cellule") + (long) t.getIntegerByField("tour") * t.getIntegerByField("maxcel");
+	}
+
+	/* first phase done for this top: the histogram goes to the merge, the runners wait for its answer */
+	private void release(long top, List<Tuple> items, boolean complete) {
+		long[] positions = new long[items.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = position(items.get(i));
+		}
+		RankHistogram histogram = RankHistogram.of(positions);
+		waiting.put(top, new Local(items, positions, histogram));
+		while (waiting.size() > MAX_WAITING) {
+			logger.warning("No ranking received for top " + waiting.pollFirstEntry().getKey());
+		}
+
+		int total = items.get(0).getIntegerByField("total");
+		if (lastSent >= 0) {
+			// none of the runners of the skipped tops arrived in time: the merge must not wait for them
+			for (long skipped = Math.max(lastSent + 1, top - MAX_WAITING); skipped < top; skipped++) {
+				collector.emit(HISTOGRAM_STREAM, new Values(skipped, partition, partitions, total, new long[0], new int[0]));
+			}
+		}
+		lastSent = Math.max(lastSent, top);
+
+		// the runners' tuple trees go on through the histogram and the merge answer
+		collector.emit(HISTOGRAM_STREAM, items, new Values(top, partition, partitions, total,
+				histogram.getPositions(), histogram.getCounts()));
+		for (Tuple t : items) {
+			collector.ack(t);
+		}
+		if (!complete) {
+			logger.info("Top " + top + " sent with " + items.size() + " runner(s) of partition " + partition
+					+ " (" + barrier + ")");
+		}
+	}
+
+	/* second phase: global counts for each position of the histogram sent for this top */
+	private void rank(Tuple t) {
+		long top = t.getLongByField("top");
+		int[] ahead = (int[]) t.getValueByField("ahead");
+		int[] tied = (int[]) t.getValueByField("tied");
+		Local local = waiting.remove(top);
+		if (local == null) {
+			// empty histogram sent for a skipped top, or top forgotten
+			collector.ack(t);
+			return;
+		}
+		if (ahead.length != local.histogram.size()) {
+			// answer for the same top of a previous race
+			logger.warning("Ranking of top " + top + " does not match its histogram in partition " + partition);
+			collector.ack(t);
+			return;
+		}
+
+		for (int i = 0; i < local.items.size(); i++) {
+			Tuple r = local.items.get(i);
+			int id = r.getIntegerByField("id");
+			if (emitted != null && !emitted.get(id)) {
+				continue;
+			}
+			int k = local.histogram.indexOf(local.positions[i]);
+			String rang = (ahead[k] + 1) + (tied[k] > 1 ? "ex" : "");
+			String nom = r.contains("nom") ? r.getStringByField("nom") : MyTortoiseBolt.nameOf(id);
+			collector.emit(t, new Values(id, top, nom, rang, r.getIntegerByField("total"),
+					r.getIntegerByField("maxcel")));
+		}
+		collector.ack(t);
+	}
+
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		declarer.declare(GiveRankBolt.OUTPUT_FIELDS);
+		declarer.declareStream(HISTOGRAM_STREAM, HISTOGRAM_FIELDS);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+		this.collector = collector;
+		this.partition = context.getThisTaskIndex();
+		this.partitions = context.getComponentTasks(context.getThisComponentId()).size();
+		if (watched.length > 0) {
+			this.emitted = new BitSet();
+			for (int id : watched) {
+				this.emitted.set(id);
+			}
+		}
+		this.barrier = new TopBarrier<>(TimeUnit.MILLISECONDS.toNanos(timeoutMillis), REORDER_TOPS);
+		this.expected = new HashMap<>();
+		this.waiting = new TreeMap<>();
+		this.lastSent = -1;
+		context.registerGauge("rank-pending-tops", () -> barrier.getPending());
+		context.registerGauge("rank-partial-tops", () -> barrier.getTimedOut() + barrier.getForced());
+		context.registerGauge("rank-late-tuples", () -> late);
+		logger.info("PartialRankBolt partition " + partition + "/" + partitions);
+	}
+
+	@Override
+	public Map<String, Object> getComponentConfiguration() {
+		// tick tuples release the timed out tops when the stream stalls
+		Map<String, Object> conf = new HashMap<>();
+		conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis)));
+		return conf;
+	}
+
+	private static final class Local {
+		final List<Tuple> items;
+		final long[] positions;
+		final RankHistogram histogram;
+
+		Local(List<Tuple> items, long[] positions, RankHistogram histogram) {
+			this.items = items;
+			this.positions = positions;
+			this.histogram = histogram;
+		}
+	}
+}
@@ -60,7 +60,7 @@ public class RankEvolutionBolt extends BaseWindowedBolt {
             }
 
             // Récupération des infos pour la sortie
-            int top = endTuple.getIntegerByField("top");
+            long top = endTuple.getLongByField("top");
             String nom = endTuple.getStringByField("nom");
             
             // Formatage de la date
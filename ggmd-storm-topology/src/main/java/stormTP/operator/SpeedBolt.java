@@ -3,10 +3,6 @@ package stormTP.operator;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -22,18 +18,18 @@ import java.text.DecimalFormat;
  * Windowed stateless bolt that calculates average speed over a sliding window
  * Window: 10 tuples with slide of 5 tuples
  * Note: Window configuration is handled by the topology builder
+ * Reads MyTortoiseBolt.OUTPUT_FIELDS and emits typed fields (OUTPUT_FIELDS), without any JSON work.
  */
 public class SpeedBolt extends BaseWindowedBolt {
 
 	private static final long serialVersionUID = 4262369370788107350L;
 	private static Logger logger = Logger.getLogger("SpeedBoltLogger");
+	public static final Fields OUTPUT_FIELDS = new Fields("id", "nom", "tops", "vitesse");
 	private OutputCollector collector;
-	private ObjectMapper mapper;
 
 	@Override
 	public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
 		this.collector = collector;
-		this.mapper = new ObjectMapper();
 	}
 
 	@Override
@@ -43,22 +39,19 @@ public class SpeedBolt extends BaseWindowedBolt {
 				return;
 			}
 
-			// Parse first and last tuples to get range info
-			int minCells = Integer.MAX_VALUE;
-			int maxCells = Integer.MIN_VALUE;
+			// Scan the window to get range info
+			long minCells = Long.MAX_VALUE;
+			long maxCells = Long.MIN_VALUE;
 			int id = -1;
 			String nom = "";
 			long firstTop = -1;
 			long lastTop = -1;
 
 			for (Tuple tuple : inputWindow.get()) {
-				String jsonStr = tuple.getValueByField("json").toString();
-				JsonNode inputJson = mapper.readTree(jsonStr);
-
-				id = inputJson.get("id").asInt();
-				nom = inputJson.get("nom").asText();
-				long top = inputJson.get("top").asLong();
-				int nbCells = inputJson.get("nbCellsParcourus").asInt();
+				id = tuple.getIntegerByField("id");
+				nom = tuple.getStringByField("nom");
+				long top = tuple.getLongByField("top");
+				long nbCells = tuple.getLongByField("nbCellsParcourus");
 
 				// Track first and last tops
 				if (firstTop == -1) {
@@ -83,18 +76,10 @@ public class SpeedBolt extends BaseWindowedBolt {
 			DecimalFormat df = new DecimalFormat("0.00");
 			String speedStr = df.format(speed);
 
-			// Build output JSON
-			ObjectNode output = mapper.createObjectNode();
-			output.put("id", id);
-			output.put("nom", nom);
-			output.put("tops", "t" + firstTop + "-t" + lastTop);
-			output.put("vitesse", Double.parseDouble(speedStr));
-
-			String result = mapper.writeValueAsString(output);
 			logger.info("Speed for tortoise " + id + " (" + nom + "): " + speedStr + " cells/top");
 
 			// Emit with all tuples in window for proper acknowledgement
-			collector.emit(inputWindow.get(), new Values(result));
+			collector.emit(inputWindow.get(), new Values(id, nom, "t" + firstTop + "-t" + lastTop, Double.parseDouble(speedStr)));
 
 		} catch (Exception e) {
 			System.err.println("Error in SpeedBolt: " + e.getMessage());
@@ -104,6 +89,6 @@ public class SpeedBolt extends BaseWindowedBolt {
 
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
-		declarer.declare(new Fields("json"));
+		declarer.declare(OUTPUT_FIELDS);
 	}
 }
@@ -0,0 +1,37 @@
+package stormTP.stream;
+
+/**
+ * Un top lu sur le flux, prêt à être émis : son identifiant de message et sa forme JSON,
+ * ou le top décodé quand le spout émet un tuple par coureur.
+ */
+public final class FeedMessage {
+
+	private final long id;
+	private final String json;
+	private final RaceFrame frame;
+
+
+	public FeedMessage(long id, String json) {
+		this.id = id;
+		this.json = json;
+		this.frame = null;
+	}
+
+	public FeedMessage(long id, RaceFrame frame) {
+		this.id = id;
+		this.json = null;
+		this.frame = frame;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getJson() {
+		return json;
+	}
+
+	public RaceFrame getFrame() {
+		return frame;
+	}
+}
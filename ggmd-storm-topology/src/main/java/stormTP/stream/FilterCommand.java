@@ -0,0 +1,108 @@
+package stormTP.stream;
+
+import java.util.Arrays;
+
+/**
+ * Modification des coureurs suivis par un flux de sortie de MyTortoiseBolt,
+ * reçue sur le port de contrôle (une commande par ligne) :
+ *
+ * set    <flux> <id>...   remplace les coureurs suivis par le flux
+ * add    <flux> <id>...   ajoute des coureurs
+ * remove <flux> <id>...   retire des coureurs
+ * clear  <flux>           ne suit plus aucun coureur
+ *
+ * Le flux par défaut s'appelle "default". Les flux sont déclarés à la soumission de la
+ * topologie : une commande ne peut pas en créer de nouveau.
+ */
+public final class FilterCommand {
+
+	public enum Op {
+		SET, ADD, REMOVE, CLEAR
+	}
+
+	private final Op op;
+	private final String stream;
+	private final int[] ids;
+
+
+	private FilterCommand(Op op, String stream, int[] ids) {
+		this.op = op;
+		this.stream = stream;
+		this.ids = ids;
+	}
+
+	public static FilterCommand of(Op op, String stream, int... ids) {
+		return new FilterCommand(op, stream, ids.clone());
+	}
+
+	/* IllegalArgumentException si la ligne n'est pas une commande valide */
+	public static FilterCommand parse(String line) {
+		String[] words = line.trim().split("\\s+");
+		if (words.length < 2) {
+			throw new IllegalArgumentException("expected : set|add|remove|clear <stream> <id>...");
+		}
+		Op op;
+		try {
+			op = Op.valueOf(words[0].toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("unknown command : " + words[0]);
+		}
+		int[] ids = new int[words.length - 2];
+		for (int i = 0; i < ids.length; i++) {
+			try {
+				ids[i] = Integer.parseInt(words[i + 2]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("bad runner id : " + words[i + 2]);
+			}
+			if (ids[i] < 0) {
+				throw new IllegalArgumentException("bad runner id : " + ids[i]);
+			}
+		}
+		if (op != Op.CLEAR && ids.length == 0) {
+			throw new IllegalArgumentException(words[0] + " expects at least one runner id");
+		}
+		return new FilterCommand(op, words[1], ids);
+	}
+
+	/* ids suivis par le flux après la commande */
+	public int[] apply(int[] current) {
+		switch (this.op) {
+		case SET:
+			return this.ids.clone();
+		case CLEAR:
+			return new int[0];
+		case ADD:
+			return Arrays.stream(concat(current, this.ids)).distinct().toArray();
+		default:
+			return Arrays.stream(current).filter(id -> Arrays.stream(this.ids).noneMatch(r -> r == id)).toArray();
+		}
+	}
+
+	private static int[] concat(int[] a, int[] b) {
+		int[] c = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+
+	public Op getOp() {
+		return op;
+	}
+
+	public String getStream() {
+		return stream;
+	}
+
+	public int[] getIds() {
+		return ids;
+	}
+
+	/* forme normalisée, relue par les bolts */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(this.op.name().toLowerCase()).append(' ').append(this.stream);
+		for (int id : this.ids) {
+			sb.append(' ').append(id);
+		}
+		return sb.toString();
+	}
+}
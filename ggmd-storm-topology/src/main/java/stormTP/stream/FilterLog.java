@@ -0,0 +1,91 @@
+package stormTP.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Effet cumulé des commandes de filtre reçues (cf. FilterCommand), flux par flux :
+ * soit la liste complète des coureurs suivis (après set ou clear), soit les coureurs
+ * ajoutés et retirés par rapport au filtre de la soumission.
+ *
+ * commands() le redonne en au plus deux commandes par flux. Les rejouer sur un filtre
+ * qui les a déjà reçues ne le change pas (x -> (x \ retirés) ∪ ajoutés est idempotente) :
+ * une tâche redémarrée retrouve le filtre courant, les autres ne bougent pas.
+ */
+public class FilterLog {
+
+	private final Map<String, Entry> streams = new LinkedHashMap<>();
+
+
+	public void apply(FilterCommand c) {
+		Entry e = this.streams.computeIfAbsent(c.getStream(), k -> new Entry());
+		List<Integer> ids = Arrays.stream(c.getIds()).boxed().toList();
+		switch (c.getOp()) {
+		case SET:
+			e.absolute = new TreeSet<>(ids);
+			break;
+		case CLEAR:
+			e.absolute = new TreeSet<>();
+			break;
+		case ADD:
+			if (e.absolute != null) {
+				e.absolute.addAll(ids);
+			} else {
+				e.added.addAll(ids);
+				e.removed.removeAll(ids);
+			}
+			break;
+		default:
+			if (e.absolute != null) {
+				e.absolute.removeAll(ids);
+			} else {
+				e.removed.addAll(ids);
+				e.added.removeAll(ids);
+			}
+		}
+		if (e.absolute != null) {
+			e.added.clear();
+			e.removed.clear();
+		}
+	}
+
+	/* commandes ramenant un filtre de la soumission (ou déjà à jour) au filtre courant */
+	public List<FilterCommand> commands() {
+		List<FilterCommand> l = new ArrayList<>();
+		for (Map.Entry<String, Entry> s : this.streams.entrySet()) {
+			Entry e = s.getValue();
+			if (e.absolute != null) {
+				l.add(e.absolute.isEmpty()
+						? FilterCommand.of(FilterCommand.Op.CLEAR, s.getKey())
+						: FilterCommand.of(FilterCommand.Op.SET, s.getKey(), toArray(e.absolute)));
+				continue;
+			}
+			if (!e.removed.isEmpty()) {
+				l.add(FilterCommand.of(FilterCommand.Op.REMOVE, s.getKey(), toArray(e.removed)));
+			}
+			if (!e.added.isEmpty()) {
+				l.add(FilterCommand.of(FilterCommand.Op.ADD, s.getKey(), toArray(e.added)));
+			}
+		}
+		return l;
+	}
+
+	public boolean isEmpty() {
+		return this.commands().isEmpty();
+	}
+
+	private static int[] toArray(TreeSet<Integer> ids) {
+		return ids.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static final class Entry {
+		/* coureurs suivis après un set ou un clear, null sinon */
+		TreeSet<Integer> absolute = null;
+		final TreeSet<Integer> added = new TreeSet<>();
+		final TreeSet<Integer> removed = new TreeSet<>();
+	}
+}
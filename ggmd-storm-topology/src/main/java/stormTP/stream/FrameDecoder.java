@@ -0,0 +1,242 @@
+package stormTP.stream;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lecture du flux binaire du générateur (cf. main.java.core.BinaryFrameWriter) :
+ *
+ * frame   := MAGIC type(1) longueur(int32) payload
+ * payload := timestamp(int64) raceId(int32) top(int64) total(int32) maxcel(int32) count(int32) record*
+ * record  := varint(id - id précédent) varint(tour) varint(cellule)
+ *
+ * Un top delta (mode 'D') ne contient que les coureurs qui ont bougé, sans total ni maxcel :
+ * payload := timestamp(int64) raceId(int32) top(int64) count(int32) record*
+ * Il est appliqué à l'état complet reconstruit depuis le dernier top complet de la même course
+ * (raceId) : plusieurs courses peuvent partager un port ou un groupe multicast.
+ *
+ * Les lignes JSON reçues avant que le serveur ait pris en compte la poignée de main sont ignorées.
+ * Sans flux d'entrée, le décodeur s'applique aussi à des tops déjà réassemblés (cf. MulticastReceiver).
+ */
+public class FrameDecoder {
+
+	public static final byte MAGIC = (byte) 0xB5;
+	public static final byte FULL = 0;
+	public static final byte DELTA = 1;
+	public static final int HEADER_SIZE = 6;
+
+	/* octet de poignée de main demandant le format binaire */
+	public static final byte HANDSHAKE_BINARY = 'B';
+	/* octet de poignée de main demandant le format binaire delta */
+	public static final byte HANDSHAKE_DELTA = 'D';
+	/* commande de reprise, suivie du dernier top reçu (int64) */
+	public static final byte HANDSHAKE_RESUME = 'R';
+	/* filtre des coureurs : nombre de plages (int16) puis from(int32) to(int32) par plage */
+	public static final byte HANDSHAKE_FILTER = 'F';
+
+	private final DataInputStream in;
+	/* état complet de chaque course, depuis son dernier top complet */
+	private final Map<Integer, RaceFrame> frames = new HashMap<>();
+	private byte[] payload = new byte[0];
+	private int pos = 0;
+	private long skippedLines = 0;
+	private long keyframes = 0;
+	private long deltas = 0;
+
+
+	public FrameDecoder(InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	public FrameDecoder() {
+		this.in = null;
+	}
+
+	/*
+	lecture bloquante du top suivant ; la trame retournée est réutilisée au prochain top de sa course.
+	Retourne null en fin de flux.
+	* */
+	public RaceFrame next() throws IOException {
+		while (true) {
+			int b;
+			while ((b = this.in.read()) == '{') {
+				this.skipLine();
+			}
+			if (b < 0) {
+				return null;
+			}
+			if ((byte) b != MAGIC) {
+				throw new IOException("bad frame magic : " + b);
+			}
+
+			byte type = this.in.readByte();
+			int len = this.in.readInt();
+			if (type != FULL && type != DELTA) {
+				throw new IOException("unknown frame type : " + type);
+			}
+			if (this.payload.length < len) {
+				this.payload = new byte[len];
+			}
+			this.in.readFully(this.payload, 0, len);
+
+			RaceFrame frame = this.apply(type, this.payload, 0, len);
+			if (frame != null) {
+				return frame;
+			}
+		}
+	}
+
+	/*
+	décodage d'un top complet (en-tête compris) contenu dans a[0..len[ ;
+	null pour un delta reçu avant tout top complet de sa course
+	* */
+	public RaceFrame decode(byte[] a, int len) throws IOException {
+		if (len < HEADER_SIZE || a[0] != MAGIC) {
+			throw new IOException("bad frame header");
+		}
+		if (getInt(a, 2) != len - HEADER_SIZE) {
+			throw new IOException("bad frame length : " + getInt(a, 2) + " for " + (len - HEADER_SIZE) + " bytes");
+		}
+		return this.apply(a[1], a, HEADER_SIZE, len - HEADER_SIZE);
+	}
+
+	/*
+	un top a été perdu (de course inconnue) : les deltas suivants de chaque course sont ignorés
+	jusqu'à son prochain top complet
+	* */
+	public void resync() {
+		this.frames.clear();
+	}
+
+	/* au moins une course a reçu un top complet depuis le dernier resync */
+	public boolean isSynced() {
+		return !this.frames.isEmpty();
+	}
+
+	public long getSkippedLines() {
+		return skippedLines;
+	}
+
+	public long getKeyframes() {
+		return keyframes;
+	}
+
+	public long getDeltas() {
+		return deltas;
+	}
+
+	private RaceFrame apply(byte type, byte[] a, int off, int len) throws IOException {
+		if (type == FULL) {
+			RaceFrame frame = this.decodeFull(a, off, len);
+			this.keyframes++;
+			return frame;
+		}
+		if (type != DELTA) {
+			throw new IOException("unknown frame type : " + type);
+		}
+		// un delta n'a de sens qu'après un top complet de la même course
+		RaceFrame frame = this.frames.get(getInt(a, off + 8));
+		if (frame == null) {
+			return null;
+		}
+		this.decodeDelta(frame, a, off, len);
+		this.deltas++;
+		return frame;
+	}
+
+	private void decodeDelta(RaceFrame frame, byte[] a, int off, int len) throws IOException {
+		long timestamp = getLong(a, off);
+		int raceId = getInt(a, off + 8);
+		long top = getLong(a, off + 12);
+		int count = getInt(a, off + 20);
+		frame.advance(timestamp, raceId, top, count);
+
+		this.pos = off + 24;
+		int end = off + len;
+		int id = -1;
+		int index = 0;
+		for (int i = 0; i < count; i++) {
+			id += this.varint(a, end);
+			int tour = this.varint(a, end);
+			int cellule = this.varint(a, end);
+			// les id sont croissants : la recherche reprend là où elle s'est arrêtée
+			index = frame.indexOf(id, index);
+			if (index < 0) {
+				this.frames.remove(raceId);
+				throw new IOException("delta for unknown runner " + id);
+			}
+			frame.set(index, id, tour, cellule);
+		}
+		this.checkEnd(off + len);
+	}
+
+	private RaceFrame decodeFull(byte[] a, int off, int len) throws IOException {
+		long timestamp = getLong(a, off);
+		int raceId = getInt(a, off + 8);
+		long top = getLong(a, off + 12);
+		int total = getInt(a, off + 20);
+		int maxcel = getInt(a, off + 24);
+		int count = getInt(a, off + 28);
+		RaceFrame frame = this.frames.computeIfAbsent(raceId, k -> new RaceFrame());
+		frame.reset(timestamp, raceId, top, total, maxcel, count);
+
+		this.pos = off + 32;
+		int end = off + len;
+		int id = -1;
+		for (int i = 0; i < count; i++) {
+			id += this.varint(a, end);
+			int tour = this.varint(a, end);
+			int cellule = this.varint(a, end);
+			frame.set(i, id, tour, cellule);
+		}
+		this.checkEnd(off + len);
+		return frame;
+	}
+
+	private void checkEnd(int end) throws IOException {
+		if (this.pos != end) {
+			this.frames.clear();
+			throw new IOException("corrupted frame : read up to " + this.pos + " instead of " + end);
+		}
+	}
+
+	/* varint non signé, 7 bits par octet ; un top tronqué ne fait pas lire au-delà de end */
+	private int varint(byte[] a, int end) throws IOException {
+		int v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (this.pos >= end) {
+				this.frames.clear();
+				throw new IOException("truncated frame : " + end + " bytes");
+			}
+			b = a[this.pos++];
+			v |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return v;
+	}
+
+	private void skipLine() throws IOException {
+		int b;
+		while ((b = this.in.read()) >= 0 && b != '\n') {
+			// ligne JSON ignorée
+		}
+		if (b < 0) {
+			throw new EOFException();
+		}
+		this.skippedLines++;
+	}
+
+	private static int getInt(byte[] a, int p) {
+		return ((a[p] & 0xFF) << 24) | ((a[p + 1] & 0xFF) << 16) | ((a[p + 2] & 0xFF) << 8) | (a[p + 3] & 0xFF);
+	}
+
+	private static long getLong(byte[] a, int p) {
+		return ((long) getInt(a, p) << 32) | (getInt(a, p + 4) & 0xFFFFFFFFL);
+	}
+}
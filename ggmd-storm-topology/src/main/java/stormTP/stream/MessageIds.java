@@ -0,0 +1,86 @@
+package stormTP.stream;
+
+/**
+ * Identifiants de message du spout, calculés à partir du top lu :
+ *
+ * id := race(16 bits) partition(8 bits) top(40 bits)
+ *
+ * Une course sans raceId (-1) est codée 0xFFFF. Un même top d'une même partition
+ * a donc toujours le même identifiant, y compris quand il est rejoué.
+ * Un top JSON sans coureur ne porte pas de top : il n'a pas d'identifiant (NONE).
+ *
+ * Limites : raceId de 0 à 65534, partition de 0 à 255, top de 0 à 2^40 - 1 (au-delà, le top
+ * reprend à 0 sans déborder sur la partition). NONE (tous les bits à 1) coïncide avec le top
+ * 2^40 - 1 de la partition 255 d'une course sans raceId, qui n'est jamais atteint.
+ */
+public final class MessageIds {
+
+	private static final int TOP_BITS = 40;
+	private static final int PARTITION_BITS = 8;
+	private static final long TOP_MASK = (1L << TOP_BITS) - 1;
+	/* pas d'identifiant : top à émettre sans suivi */
+	public static final long NONE = -1L;
+	private static final String RACE_ID = "\"raceId\":";
+	private static final String TOP = "\"top\":";
+
+	private MessageIds() {
+	}
+
+	public static long of(int raceId, long top, int partition) {
+		return ((long) (raceId & 0xFFFF) << (TOP_BITS + PARTITION_BITS))
+				| ((long) (partition & 0xFF) << TOP_BITS)
+				| (top & TOP_MASK);
+	}
+
+	/*
+	identifiant d'un top JSON du générateur : lecture de "raceId" (s'il est présent)
+	et du premier "top", sans analyser le reste de la ligne ; NONE si aucun coureur ne donne le top
+	* */
+	public static long ofJson(String json, int partition) {
+		long top = readNumber(json, json.indexOf(TOP), TOP);
+		if (top < 0) {
+			// "runners":[] : tous les tops vides auraient le même identifiant
+			return NONE;
+		}
+		// raceId précède "runners" : inutile de chercher au-delà
+		int runners = json.indexOf("\"runners\"");
+		long raceId = (runners < 0) ? -1 : readNumber(json, json.lastIndexOf(RACE_ID, runners), RACE_ID);
+		return of(raceId < 0 ? -1 : (int) raceId, top, partition);
+	}
+
+	public static int raceId(long id) {
+		int race = (int) (id >>> (TOP_BITS + PARTITION_BITS));
+		return race == 0xFFFF ? -1 : race;
+	}
+
+	public static int partition(long id) {
+		return (int) ((id >>> TOP_BITS) & 0xFF);
+	}
+
+	public static long top(long id) {
+		return id & TOP_MASK;
+	}
+
+	public static String toString(long id) {
+		return "race=" + raceId(id) + ",partition=" + partition(id) + ",top=" + top(id);
+	}
+
+	/* entier positif qui suit la clé trouvée en p, -1 si la clé est absente */
+	private static long readNumber(String s, int p, String key) {
+		if (p < 0) {
+			return -1;
+		}
+		p += key.length();
+		long v = 0;
+		boolean digits = false;
+		for (; p < s.length(); p++) {
+			char c = s.charAt(p);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			v = v * 10 + (c - '0');
+			digits = true;
+		}
+		return digits ? v : -1;
+	}
+}
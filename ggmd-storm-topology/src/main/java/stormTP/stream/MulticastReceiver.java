@@ -0,0 +1,194 @@
+package stormTP.stream;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+
+/**
+ * Réception des tops publiés en multicast par le générateur (cf. main.java.network.MulticastPublisher) :
+ *
+ * datagram := MAGIC flags(1) chunk(int16) chunks(int16) seq(int64) morceau du top
+ *
+ * Les morceaux d'un top sont réassemblés dans l'ordre des numéros de séquence.
+ * Un trou dans la séquence fait abandonner le top en cours et, en mode delta,
+ * ignorer les deltas jusqu'au prochain top complet. Un numéro très en arrière du numéro
+ * attendu (ou 0) signale un générateur relancé : la séquence et le décodeur repartent de zéro.
+ *
+ * Le port est ouvert avec SO_REUSEADDR : plusieurs spouts d'un même nœud reçoivent chacun le flux.
+ */
+public class MulticastReceiver {
+
+	public static final byte MAGIC = (byte) 0xB6;
+	public static final int HEADER_SIZE = 1 + 1 + 2 + 2 + 8;
+	/* retard maximal (en datagrammes) d'un datagramme arrivé après ses suivants ; au-delà, nouveau flux */
+	public static final long LATE_WINDOW = 1024;
+
+	private final DatagramChannel channel;
+	private final MembershipKey membership;
+	private final ByteBuffer datagram = ByteBuffer.allocate(64 * 1024);
+	private final FrameDecoder decoder = new FrameDecoder();
+	private byte[] frame = new byte[64 * 1024];
+	private int frameLen = 0;
+	/* morceau attendu du top en cours, -1 : attente du début d'un top */
+	private int nextChunk = -1;
+	private long expectedSeq = -1;
+
+	private long datagrams = 0;
+	private long frames = 0;
+	private long lost = 0;
+	private long gaps = 0;
+	private long late = 0;
+	private long restarts = 0;
+
+
+	/*
+	iface : nom de l'interface de réception, null pour la boucle locale
+	* */
+	public MulticastReceiver(String group, int port, String iface) throws IOException {
+		InetAddress groupAddress = InetAddress.getByName(group);
+		NetworkInterface netIf = (iface == null)
+				? NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress())
+				: NetworkInterface.getByName(iface);
+		if (netIf == null) {
+			throw new IllegalArgumentException("unknown network interface : " + iface);
+		}
+
+		this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		this.channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		this.channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+		this.channel.bind(new InetSocketAddress(port));
+		this.channel.configureBlocking(false);
+		this.membership = this.channel.join(groupAddress, netIf);
+	}
+
+	/* réception bloquante (thread lecteur dédié) ou non (par défaut) */
+	public void setBlocking(boolean blocking) throws IOException {
+		this.channel.configureBlocking(blocking);
+	}
+
+	/*
+	le prochain top complet reçu ; en mode non bloquant, null si aucun n'est encore disponible.
+	La trame retournée est réutilisée au prochain appel.
+	* */
+	public RaceFrame poll() throws IOException {
+		while (true) {
+			this.datagram.clear();
+			if (this.channel.receive(this.datagram) == null) {
+				return null;
+			}
+			this.datagram.flip();
+			this.datagrams++;
+
+			RaceFrame f = this.accept(this.datagram);
+			if (f != null) {
+				return f;
+			}
+		}
+	}
+
+	private RaceFrame accept(ByteBuffer d) throws IOException {
+		if (d.remaining() < HEADER_SIZE || d.get() != MAGIC) {
+			return null;
+		}
+		d.get();                // flags
+		int chunk = d.getShort() & 0xFFFF;
+		int chunks = d.getShort() & 0xFFFF;
+		long seq = d.getLong();
+
+		if (this.expectedSeq >= 0 && seq < this.expectedSeq
+				&& ((seq == 0 && this.expectedSeq > 1) || this.expectedSeq - seq > LATE_WINDOW)) {
+			// générateur relancé : ce qui reste du flux précédent est abandonné
+			this.restarts++;
+			this.nextChunk = -1;
+			this.decoder.resync();
+			this.expectedSeq = -1;
+		}
+		if (this.expectedSeq >= 0) {
+			if (seq < this.expectedSeq) {
+				// datagramme dupliqué ou arrivé après son suivant : déjà compté comme perdu
+				this.late++;
+				return null;
+			}
+			if (seq > this.expectedSeq) {
+				this.gaps++;
+				this.lost += seq - this.expectedSeq;
+				this.nextChunk = -1;
+				this.decoder.resync();
+			}
+		}
+		this.expectedSeq = seq + 1;
+
+		if (chunk == 0) {
+			this.frameLen = 0;
+			this.nextChunk = 0;
+		}
+		if (chunk != this.nextChunk) {
+			// milieu d'un top dont le début a été perdu
+			return null;
+		}
+
+		int n = d.remaining();
+		if (this.frameLen + n > this.frame.length) {
+			byte[] bigger = new byte[Math.max(this.frame.length * 2, this.frameLen + n)];
+			System.arraycopy(this.frame, 0, bigger, 0, this.frameLen);
+			this.frame = bigger;
+		}
+		d.get(this.frame, this.frameLen, n);
+		this.frameLen += n;
+		this.nextChunk++;
+
+		if (this.nextChunk < chunks) {
+			return null;
+		}
+		this.nextChunk = -1;
+		this.frames++;
+		return this.decoder.decode(this.frame, this.frameLen);
+	}
+
+	public void close() {
+		this.membership.drop();
+		try {
+			this.channel.close();
+		} catch (IOException ignored) {}
+	}
+
+	public long getDatagrams() {
+		return datagrams;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	/* datagrammes manquants dans la séquence */
+	public long getLost() {
+		return lost;
+	}
+
+	/* nombre de trous constatés */
+	public long getGaps() {
+		return gaps;
+	}
+
+	public long getLate() {
+		return late;
+	}
+
+	/* nouveaux flux détectés (générateur relancé) */
+	public long getRestarts() {
+		return restarts;
+	}
+
+	@Override
+	public String toString() {
+		return "MulticastReceiver[datagrams=" + this.datagrams + ", frames=" + this.frames + ", gaps=" + this.gaps
+				+ ", lost=" + this.lost + ", late=" + this.late + ", restarts=" + this.restarts + ", keyframes=" + this.decoder.getKeyframes()
+				+ ", deltas=" + this.decoder.getDeltas() + "]";
+	}
+}
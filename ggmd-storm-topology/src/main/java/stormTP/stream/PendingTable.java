@@ -0,0 +1,185 @@
+package stormTP.stream;
+
+/**
+ * Tuples émis et pas encore acquittés, indexés par leur identifiant de message (long).
+ * Table à adressage ouvert sur des long primitifs : acquitter ne crée ni ne
+ * libère d'objet Long. Les identifiants en échec sont rangés dans une file
+ * circulaire, également primitive, en attente de réémission.
+ *
+ * Utilisée par le seul thread du spout (nextTuple, ack et fail), sans synchronisation.
+ */
+public class PendingTable {
+
+	private long[] keys;
+	private Object[] values;
+	private int[] attempts;
+	private int mask;
+	private int size = 0;
+
+	private long[] failed;
+	private int failedHead = 0;
+	private int failedCount = 0;
+
+
+	public PendingTable(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(4, expected * 2) - 1) << 1;
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.attempts = new int[capacity];
+		this.mask = capacity - 1;
+		this.failed = new long[Math.max(4, expected)];
+	}
+
+	/*
+	ajout d'un tuple émis ; false si l'identifiant est déjà en attente
+	* */
+	public boolean put(long key, Object value) {
+		if ((this.size + 1) * 2 > this.keys.length) {
+			this.resize(this.keys.length * 2);
+		}
+		int i = slot(key) & this.mask;
+		while (this.values[i] != null) {
+			if (this.keys[i] == key) {
+				return false;
+			}
+			i = (i + 1) & this.mask;
+		}
+		this.keys[i] = key;
+		this.values[i] = value;
+		this.attempts[i] = 0;
+		this.size++;
+		return true;
+	}
+
+	public Object get(long key) {
+		int i = this.indexOf(key);
+		return (i < 0) ? null : this.values[i];
+	}
+
+	/*
+	nouvelle valeur pour un identifiant en attente, sans remettre à zéro ses échecs ;
+	false s'il n'était pas en attente
+	* */
+	public boolean replace(long key, Object value) {
+		int i = this.indexOf(key);
+		if (i < 0) {
+			return false;
+		}
+		this.values[i] = value;
+		return true;
+	}
+
+	/*
+	retrait d'un tuple acquitté (ou abandonné) ; null s'il n'était pas en attente
+	* */
+	public Object remove(long key) {
+		int i = this.indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		Object value = this.values[i];
+
+		// décalage arrière : les clés suivantes de la même grappe reprennent la place libérée
+		int hole = i;
+		int j = i;
+		while (true) {
+			j = (j + 1) & this.mask;
+			if (this.values[j] == null) {
+				break;
+			}
+			int home = slot(this.keys[j]) & this.mask;
+			if (((j - home) & this.mask) >= ((j - hole) & this.mask)) {
+				this.keys[hole] = this.keys[j];
+				this.values[hole] = this.values[j];
+				this.attempts[hole] = this.attempts[j];
+				hole = j;
+			}
+		}
+		this.values[hole] = null;
+		this.size--;
+		return value;
+	}
+
+	/*
+	un tuple a échoué : nombre d'échecs de ce tuple, -1 s'il n'était pas en attente.
+	Le tuple est rangé dans la file de réémission.
+	* */
+	public int fail(long key) {
+		int i = this.indexOf(key);
+		if (i < 0) {
+			return -1;
+		}
+		if (this.failedCount == this.failed.length) {
+			long[] bigger = new long[this.failed.length * 2];
+			for (int k = 0; k < this.failedCount; k++) {
+				bigger[k] = this.failed[(this.failedHead + k) % this.failed.length];
+			}
+			this.failed = bigger;
+			this.failedHead = 0;
+		}
+		this.failed[(this.failedHead + this.failedCount) % this.failed.length] = key;
+		this.failedCount++;
+		return ++this.attempts[i];
+	}
+
+	public boolean hasFailed() {
+		return this.failedCount > 0;
+	}
+
+	/* identifiant suivant à réémettre ; à n'appeler que si hasFailed() */
+	public long pollFailed() {
+		long key = this.failed[this.failedHead];
+		this.failedHead = (this.failedHead + 1) % this.failed.length;
+		this.failedCount--;
+		return key;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	private int indexOf(long key) {
+		int i = slot(key) & this.mask;
+		while (this.values[i] != null) {
+			if (this.keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		int[] oldAttempts = this.attempts;
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.attempts = new int[capacity];
+		this.mask = capacity - 1;
+
+		for (int k = 0; k < oldKeys.length; k++) {
+			if (oldValues[k] != null) {
+				int i = slot(oldKeys[k]) & this.mask;
+				while (this.values[i] != null) {
+					i = (i + 1) & this.mask;
+				}
+				this.keys[i] = oldKeys[k];
+				this.values[i] = oldValues[k];
+				this.attempts[i] = oldAttempts[k];
+			}
+		}
+	}
+
+	/* mélange des bits de la clé (finaliseur de Murmur3) : les top consécutifs se dispersent */
+	private static int slot(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
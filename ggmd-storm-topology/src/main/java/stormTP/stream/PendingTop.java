@@ -0,0 +1,50 @@
+package stormTP.stream;
+
+/**
+ * Top émis en mode fiable sous forme d'un tuple par coureur : tous ses tuples portent cet
+ * objet comme identifiant de message, et le top n'est acquitté qu'avec le dernier d'entre eux.
+ *
+ * Une réémission crée un nouvel objet : les acquittements et échecs tardifs de la tentative
+ * précédente ne correspondent plus à celui de la table des tops en attente et sont ignorés.
+ */
+public final class PendingTop {
+
+	private final long id;
+	private final RaceFrame frame;
+	private int remaining;
+	private boolean failed = false;
+
+
+	public PendingTop(long id, RaceFrame frame) {
+		this.id = id;
+		this.frame = frame;
+		this.remaining = frame.getCount();
+	}
+
+	/* un tuple du top est acquitté ; true quand c'était le dernier */
+	public boolean ack() {
+		return --this.remaining == 0;
+	}
+
+	/* un tuple du top a échoué ; true au premier échec de cette tentative seulement */
+	public boolean fail() {
+		if (this.failed) {
+			return false;
+		}
+		this.failed = true;
+		return true;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public RaceFrame getFrame() {
+		return frame;
+	}
+
+	@Override
+	public String toString() {
+		return MessageIds.toString(this.id);
+	}
+}
@@ -0,0 +1,133 @@
+package stormTP.stream;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Un top de la course décodé depuis le flux binaire du générateur.
+ * Les tableaux sont réutilisés d'un top à l'autre par FrameDecoder.
+ */
+public class RaceFrame implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private long timestamp = 0;
+	private int raceId = -1;
+	private long top = 0;
+	private int total = 0;
+	private int maxcel = 0;
+	private int count = 0;
+	private int changed = 0;
+	private int[] ids = new int[0];
+	private int[] tours = new int[0];
+	private int[] cellules = new int[0];
+
+
+	void reset(long timestamp, int raceId, long top, int total, int maxcel, int count) {
+		this.timestamp = timestamp;
+		this.raceId = raceId;
+		this.top = top;
+		this.total = total;
+		this.maxcel = maxcel;
+		this.count = count;
+		this.changed = count;
+		if (this.ids.length < count) {
+			this.ids = new int[count];
+			this.tours = new int[count];
+			this.cellules = new int[count];
+		}
+	}
+
+	/*
+	lecture d'un top au format JSON du générateur ; total et maxcel sont ceux du premier coureur
+	* */
+	public static RaceFrame fromJson(JsonNode root) {
+		RaceFrame f = new RaceFrame();
+		JsonNode runners = root.path("runners");
+		JsonNode first = runners.path(0);
+		f.reset(root.path("timestamp").asLong(), root.path("raceId").asInt(-1), first.path("top").asLong(),
+				first.path("total").asInt(), first.path("maxcel").asInt(), runners.size());
+		int i = 0;
+		for (JsonNode r : runners) {
+			f.set(i++, r.path("id").asInt(), r.path("tour").asInt(), r.path("cellule").asInt());
+		}
+		return f;
+	}
+
+	/* copie indépendante du décodeur, qui réutilise ses tableaux au top suivant */
+	public RaceFrame copy() {
+		RaceFrame f = new RaceFrame();
+		f.reset(this.timestamp, this.raceId, this.top, this.total, this.maxcel, this.count);
+		f.changed = this.changed;
+		System.arraycopy(this.ids, 0, f.ids, 0, this.count);
+		System.arraycopy(this.tours, 0, f.tours, 0, this.count);
+		System.arraycopy(this.cellules, 0, f.cellules, 0, this.count);
+		return f;
+	}
+
+	/* top delta : seuls les coureurs qui ont bougé seront mis à jour */
+	void advance(long timestamp, int raceId, long top, int changed) {
+		this.timestamp = timestamp;
+		this.raceId = raceId;
+		this.top = top;
+		this.changed = changed;
+	}
+
+	/* position du coureur id, recherchée à partir de from (id croissants) ; -1 si absent */
+	int indexOf(int id, int from) {
+		int i = from;
+		while (i < this.count && this.ids[i] < id) {
+			i++;
+		}
+		return i < this.count && this.ids[i] == id ? i : -1;
+	}
+
+	void set(int i, int id, int tour, int cellule) {
+		this.ids[i] = id;
+		this.tours[i] = tour;
+		this.cellules[i] = cellule;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getRaceId() {
+		return raceId;
+	}
+
+	public long getTop() {
+		return top;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getMaxcel() {
+		return maxcel;
+	}
+
+	/* nombre de coureurs présents dans ce top */
+	public int getCount() {
+		return count;
+	}
+
+	/* nombre de coureurs transmis par le dernier top (tous pour un top complet) */
+	public int getChanged() {
+		return changed;
+	}
+
+	public int getId(int i) {
+		return ids[i];
+	}
+
+	public int getTour(int i) {
+		return tours[i];
+	}
+
+	public int getCellule(int i) {
+		return cellules[i];
+	}
+}
@@ -0,0 +1,166 @@
+package stormTP.stream;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Recherche de quelques coureurs dans un top JSON sans construire l'arbre du document :
+ * lecture jeton par jeton, les coureurs non suivis sont sautés dès que leur id est lu
+ * (le générateur écrit l'id en premier) et la lecture s'arrête quand tous les coureurs
+ * suivis ont été trouvés.
+ *
+ * Accepte un top complet {"timestamp":..,"runners":[{..},..]} ou un coureur seul {"id":..,..}.
+ *
+ * Les id suivis sont rangés dans un BitSet : le test d'appartenance de chaque coureur lu
+ * est en temps constant, quel que soit le nombre de coureurs suivis.
+ */
+public class RunnerScanner {
+
+	public interface Visitor {
+		void runner(int id, long top, int tour, int cellule, int total, int maxcel);
+	}
+
+	private final JsonFactory factory = new JsonFactory();
+	private final BitSet watched;
+	/* coureurs suivis déjà trouvés dans le top en cours */
+	private final BitSet found = new BitSet();
+	private final int count;
+	private int remaining;
+
+	private int id;
+	private long top;
+	private int tour;
+	private int cellule;
+	private int total;
+	private int maxcel;
+
+
+	public RunnerScanner(int... watched) {
+		this(toBitSet(watched));
+	}
+
+	public RunnerScanner(BitSet watched) {
+		this.watched = (BitSet) watched.clone();
+		this.count = this.watched.cardinality();
+	}
+
+	private static BitSet toBitSet(int[] ids) {
+		BitSet b = new BitSet();
+		for (int id : ids) {
+			b.set(id);
+		}
+		return b;
+	}
+
+	/*
+	appelle visitor pour chaque coureur suivi présent dans json ; retourne leur nombre
+	* */
+	public int scan(String json, Visitor visitor) throws IOException {
+		this.found.clear();
+		this.remaining = this.count;
+
+		try (JsonParser p = this.factory.createParser(json)) {
+			if (p.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("expected a JSON object");
+			}
+			this.clear();
+			boolean single = false;
+			JsonToken t;
+			while ((t = p.nextToken()) == JsonToken.FIELD_NAME) {
+				String name = p.currentName();
+				p.nextToken();
+				if (name.equals("runners")) {
+					this.scanRunners(p, visitor);
+					if (this.remaining == 0) {
+						break;
+					}
+				} else if (this.field(name, p)) {
+					single = true;
+				} else {
+					p.skipChildren();
+				}
+			}
+			if (single && t == JsonToken.END_OBJECT) {
+				this.visit(visitor);
+			}
+		}
+		return this.count - this.remaining;
+	}
+
+	private void scanRunners(JsonParser p, Visitor visitor) throws IOException {
+		if (p.currentToken() != JsonToken.START_ARRAY) {
+			p.skipChildren();
+			return;
+		}
+		while (this.remaining > 0 && p.nextToken() == JsonToken.START_OBJECT) {
+			this.clear();
+			while (p.nextToken() == JsonToken.FIELD_NAME) {
+				String name = p.currentName();
+				p.nextToken();
+				if (!this.field(name, p)) {
+					p.skipChildren();
+				} else if (name.equals("id") && !this.isWatched(this.id)) {
+					// coureur non suivi : le reste de l'objet est sauté
+					while (p.nextToken() != JsonToken.END_OBJECT) {
+						p.skipChildren();
+					}
+					break;
+				}
+			}
+			if (p.currentToken() == JsonToken.END_OBJECT) {
+				this.visit(visitor);
+			}
+		}
+	}
+
+	/* champ d'un coureur ; false s'il n'est pas utilisé */
+	private boolean field(String name, JsonParser p) throws IOException {
+		switch (name) {
+		case "id":
+			this.id = p.getValueAsInt(-1);
+			return true;
+		case "top":
+			this.top = p.getValueAsLong(-1);
+			return true;
+		case "tour":
+			this.tour = p.getValueAsInt(-1);
+			return true;
+		case "cellule":
+			this.cellule = p.getValueAsInt(-1);
+			return true;
+		case "total":
+			this.total = p.getValueAsInt(-1);
+			return true;
+		case "maxcel":
+			this.maxcel = p.getValueAsInt(-1);
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void visit(Visitor visitor) {
+		if (this.isWatched(this.id) && !this.found.get(this.id)) {
+			this.found.set(this.id);
+			this.remaining--;
+			visitor.runner(this.id, this.top, this.tour, this.cellule, this.total, this.maxcel);
+		}
+	}
+
+	public boolean isWatched(int id) {
+		return id >= 0 && this.watched.get(id);
+	}
+
+	private void clear() {
+		this.id = -1;
+		this.top = -1;
+		this.tour = -1;
+		this.cellule = -1;
+		this.total = -1;
+		this.maxcel = -1;
+	}
+}
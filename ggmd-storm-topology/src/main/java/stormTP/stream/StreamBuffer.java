@@ -1,73 +1,216 @@
 package stormTP.stream;
 
-import java.io.Serializable;
-import java.io.IOException;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.Socket;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Classe permettant aux spout d'écouter un flux UDP
+ * File circulaire bornée entre un seul producteur (le thread qui lit le flux) et un seul
+ * consommateur (le spout qui émet les tuples), sans verrou ni allocation par élément.
+ *
+ * head et tail comptent les éléments lus et écrits depuis le début : chaque côté n'écrit
+ * que son propre compteur (publication ordonnée, lazySet) et garde une copie locale de
+ * l'autre, relue seulement quand la file lui paraît vide ou pleine.
+ *
+ * Quand la file est pleine, le producteur attend (BLOCK, le générateur finit par écarter
+ * les tops de cet abonné), écarte le plus ancien élément non lu (DROP_OLDEST) ou le
+ * nouvel élément (DROP_NEWEST). En DROP_OLDEST les deux côtés avancent head : le
+ * consommateur le fait alors par compareAndSet, élément par élément.
+ *
+ * Un emplacement lu ou écarté est remis à null : la file ne retient pas les éléments
+ * déjà sortis. En DROP_OLDEST, le consommateur le fait par compareAndSet, le producteur
+ * ayant pu y écrire l'élément suivant aussitôt head avancé.
+ *
+ * La file n'est pas sérialisable : elle est créée dans open() par le spout qui l'utilise.
  */
+public class StreamBuffer<T> {
 
-public class StreamBuffer implements Serializable{
+	public enum FullPolicy {
+		BLOCK, DROP_OLDEST, DROP_NEWEST
+	}
+
+	/* attente du producteur entre deux essais quand la file est pleine */
+	private static final long FULL_WAIT_NANOS = 100_000;
+	private static final VarHandle RING = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	private final Object[] ring;
+	private final int mask;
+	private final FullPolicy policy;
+	/* prochain élément à lire */
+	private final AtomicLong head = new AtomicLong();
+	/* prochain emplacement à écrire */
+	private final AtomicLong tail = new AtomicLong();
+	/* copie de head côté producteur, de tail côté consommateur */
+	private long headCache = 0;
+	private long tailCache = 0;
+
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong blocked = new AtomicLong();
+	private volatile int peak = 0;
+
+
+	/*
+	capacity est arrondie à la puissance de 2 supérieure
+	* */
+	public StreamBuffer(int capacity, FullPolicy policy) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.ring = new Object[size];
+		this.mask = size - 1;
+		this.policy = policy;
+	}
 
-	private static final long serialVersionUID = 1L;
-	private Queue<String> fifo = null;
-	private int port = -1;
-	String host = "";
+	/*
+	ajout par le producteur selon la politique de la file ; false si l'élément a été
+	écarté (DROP_NEWEST) ou si le thread a été interrompu pendant l'attente (BLOCK)
+	* */
+	public boolean put(T item) {
+		if (this.offer(item)) {
+			return true;
+		}
 
-	
-	public StreamBuffer(String host,int port){
-		    this.host = host;
-			this.port = port;
-			this.fifo = new ConcurrentLinkedQueue<String>();
+		switch (this.policy) {
+		case DROP_NEWEST:
+			this.dropped.incrementAndGet();
+			return false;
+
+		case DROP_OLDEST:
+			while (!this.offer(item)) {
+				// le consommateur a pu lire le plus ancien entre-temps : rien à écarter dans ce cas
+				long h = this.head.get();
+				if (this.tail.get() - h >= this.ring.length && this.head.compareAndSet(h, h + 1)) {
+					// l'emplacement écarté n'est plus lisible par le consommateur
+					RING.setRelease(this.ring, (int) h & this.mask, (Object) null);
+					this.dropped.incrementAndGet();
+				}
+			}
+			return true;
+
+		default:
+			this.blocked.incrementAndGet();
+			while (!this.offer(item)) {
+				if (Thread.currentThread().isInterrupted()) {
+					return false;
+				}
+				LockSupport.parkNanos(FULL_WAIT_NANOS);
+			}
+			return true;
+		}
 	}
-	
-	
-	public void listenStream()
-    {
 
-		try (Socket socket = new Socket(host, port)) {
-			System.out.println("Connected to server.");
+	/* ajout sans attente par le producteur, false si la file est pleine */
+	public boolean offer(T item) {
+		long t = this.tail.get();
+		if (t - this.headCache >= this.ring.length) {
+			this.headCache = this.head.get();
+			if (t - this.headCache >= this.ring.length) {
+				return false;
+			}
+		}
+		RING.setRelease(this.ring, (int) t & this.mask, (Object) item);
+		this.tail.lazySet(t + 1);
 
-			BufferedReader in = new BufferedReader(
-					new InputStreamReader(socket.getInputStream()));
+		// headCache peut dater : l'occupation est mesurée sur head
+		int depth = (int) (t + 1 - this.head.get());
+		if (depth > this.peak) {
+			this.peak = depth;
+		}
+		return true;
+	}
 
-			// Thread qui écoute le flux du serveur
-			new Thread(() -> {
-				try {
-					String data = null;
-					while ((data = in.readLine()) != null) {
-						System.out.println( "->" +  data + "\n");
-						this.fifo.add( data );
-					}
-				} catch (IOException ignored) {}
-			}).start();
+	/* élément suivant pour le consommateur, null si la file est vide */
+	@SuppressWarnings("unchecked")
+	public T readTuple() {
+		while (true) {
+			long h = this.head.get();
+			if (h >= this.tailCache) {
+				this.tailCache = this.tail.get();
+				if (h >= this.tailCache) {
+					return null;
+				}
+			}
+			int slot = (int) h & this.mask;
+			T item = (T) this.ring[slot];
+			if (this.policy != FullPolicy.DROP_OLDEST) {
+				this.ring[slot] = null;
+				this.head.lazySet(h + 1);
+				return item;
+			}
+			// le producteur a pu écarter cet élément pendant la lecture : on recommence
+			if (this.head.compareAndSet(h, h + 1)) {
+				// sauf si le producteur y a déjà écrit l'élément suivant
+				RING.compareAndSet(this.ring, slot, (Object) item, (Object) null);
+				return item;
+			}
+		}
+	}
 
-			socket.close();
+	/*
+	transfert d'au plus max éléments vers to, dans l'ordre ; retourne leur nombre.
+	Hors DROP_OLDEST, head n'est publié qu'une fois pour tout le lot.
+	* */
+	@SuppressWarnings("unchecked")
+	public int drainTo(Collection<? super T> to, int max) {
+		if (this.policy == FullPolicy.DROP_OLDEST) {
+			int n = 0;
+			T item;
+			while (n < max && (item = this.readTuple()) != null) {
+				to.add(item);
+				n++;
+			}
+			return n;
+		}
 
+		long h = this.head.get();
+		// tailCache ne suffit pas à remplir le lot : relecture de tail
+		if (this.tailCache - h < max) {
+			this.tailCache = this.tail.get();
+		}
+		int n = (int) Math.min(max, this.tailCache - h);
+		if (n <= 0) {
+			return 0;
+		}
+		for (int i = 0; i < n; i++) {
+			int slot = (int) (h + i) & this.mask;
+			to.add((T) this.ring[slot]);
+			this.ring[slot] = null;
+		}
+		this.head.lazySet(h + n);
+		return n;
+	}
 
-			// Le programme reste ouvert tant que la connexion est active
-			Thread.sleep(Long.MAX_VALUE);
+	/* occupation courante, lisible depuis n'importe quel thread */
+	public int getDepth() {
+		return (int) Math.max(0, this.tail.get() - this.head.get());
+	}
 
+	/* occupation maximale observée par le producteur */
+	public int getPeak() {
+		return peak;
+	}
 
+	public int getCapacity() {
+		return this.ring.length;
+	}
 
-		} catch (Exception e) {
-			e.printStackTrace();
-		}finally{
+	public FullPolicy getPolicy() {
+		return policy;
+	}
 
-			System.out.println("ListenSocket closed");
-		}
+	/* éléments écartés, file pleine (DROP_OLDEST, DROP_NEWEST) */
+	public long getDropped() {
+		return this.dropped.get();
+	}
 
+	/* nombre de fois où le producteur a dû attendre, file pleine (BLOCK) */
+	public long getBlocked() {
+		return this.blocked.get();
 	}
-	
-	
-	 public String readTuple() throws Exception {
-	      return this.fifo.poll();
-		   
-	  }
 
+	@Override
+	public String toString() {
+		return "StreamBuffer[depth=" + this.getDepth() + "/" + this.ring.length + ", peak=" + this.peak + ", "
+				+ this.policy + ", dropped=" + this.getDropped() + ", blocked=" + this.getBlocked() + "]";
+	}
 }
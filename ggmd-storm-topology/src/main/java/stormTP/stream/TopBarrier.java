@@ -0,0 +1,168 @@
+package stormTP.stream;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Regroupement par top des éléments reçus coureur par coureur, libérés un top à la fois
+ * et dans l'ordre des tops :
+ *
+ * - un top est libéré quand tous ses coureurs (expected) sont arrivés, ou quand son premier
+ *   élément attend depuis plus de timeout (top incomplet) ;
+ * - les tops arrivés dans le désordre attendent les précédents, au plus maxTops tops en
+ *   attente : au-delà, le plus ancien est libéré incomplet ;
+ * - un élément d'un top déjà libéré est en retard (isReleased) et reste à la charge de l'appelant ;
+ * - sauf s'il commence une nouvelle course (isNewRace) : restart libère alors les tops en
+ *   attente et la barrière repart de zéro. Une course relancée se reconnaît à un nombre de
+ *   coureurs différent, ou à des éléments en retard sur plus de maxTops tops successifs sans
+ *   aucun élément à l'heure entre eux ; des tuples rejoués restent sur les mêmes tops.
+ *
+ * Un coureur reçu deux fois pour un même top (tuple rejoué) remplace l'élément précédent.
+ * Propre au thread de l'exécuteur.
+ */
+public class TopBarrier<T> {
+
+	public interface Release<T> {
+		void top(long top, List<T> items, boolean complete);
+	}
+
+	private final long timeoutNanos;
+	private final int maxTops;
+	private final TreeMap<Long, Pending<T>> pending = new TreeMap<>();
+	/* plus grand top libéré, -1 si aucun */
+	private long released = -1;
+	/* coureurs attendus au dernier top reçu, -1 si aucun */
+	private int expected = -1;
+	/* plus petit top en retard reçu depuis le dernier élément à l'heure, -1 si aucun */
+	private long lateFrom = -1;
+
+	private long complete = 0;
+	private long timedOut = 0;
+	private long forced = 0;
+	private long restarts = 0;
+
+
+	public TopBarrier(long timeoutNanos, int maxTops) {
+		this.timeoutNanos = timeoutNanos;
+		this.maxTops = Math.max(1, maxTops);
+	}
+
+	public boolean isReleased(long top) {
+		return top <= this.released;
+	}
+
+	/*
+	un élément du top, attendu avec expected coureurs, commence-t-il une nouvelle course ?
+	À appeler pour chaque élément, avant isReleased et add
+	* */
+	public boolean isNewRace(long top, int expected) {
+		if (this.expected >= 0 && expected != this.expected) {
+			return true;
+		}
+		if (top > this.released) {
+			return false;
+		}
+		if (this.lateFrom < 0 || top < this.lateFrom) {
+			this.lateFrom = top;
+		}
+		return top - this.lateFrom >= this.maxTops;
+	}
+
+	/*
+	nouvelle course : les tops en attente de la précédente sont libérés incomplets, dans l'ordre,
+	et aucun top n'est plus considéré comme libéré
+	* */
+	public void restart(Release<T> release) {
+		while (!this.pending.isEmpty()) {
+			Map.Entry<Long, Pending<T>> first = this.pending.pollFirstEntry();
+			this.forced++;
+			release.top(first.getKey(), new ArrayList<>(first.getValue().items.values()), false);
+		}
+		this.released = -1;
+		this.expected = -1;
+		this.lateFrom = -1;
+		this.restarts++;
+	}
+
+	/*
+	ajout de l'élément du coureur id au top ; retourne l'élément qu'il remplace, null sinon
+	* */
+	public T add(long top, int id, int expected, T item, long now) {
+		Pending<T> p = this.pending.get(top);
+		if (p == null) {
+			p = new Pending<>(expected, now);
+			this.pending.put(top, p);
+		}
+		this.expected = expected;
+		this.lateFrom = -1;
+		return p.items.put(id, item);
+	}
+
+	/*
+	libération, dans l'ordre, des tops prêts à l'instant now
+	* */
+	public void drain(long now, Release<T> release) {
+		while (!this.pending.isEmpty()) {
+			Map.Entry<Long, Pending<T>> first = this.pending.firstEntry();
+			Pending<T> p = first.getValue();
+			boolean full = p.items.size() >= p.expected;
+			if (full) {
+				this.complete++;
+			} else if (now - p.since >= this.timeoutNanos) {
+				this.timedOut++;
+			} else if (this.pending.size() > this.maxTops) {
+				this.forced++;
+			} else {
+				return;
+			}
+			this.pending.pollFirstEntry();
+			this.released = Math.max(this.released, first.getKey());
+			release.top(first.getKey(), new ArrayList<>(p.items.values()), full);
+		}
+	}
+
+	/* tops en attente */
+	public int getPending() {
+		return this.pending.size();
+	}
+
+	/* tops libérés complets */
+	public long getComplete() {
+		return complete;
+	}
+
+	/* tops libérés incomplets, délai dépassé */
+	public long getTimedOut() {
+		return timedOut;
+	}
+
+	/* tops libérés incomplets, trop de tops en attente ou nouvelle course */
+	public long getForced() {
+		return forced;
+	}
+
+	/* nouvelles courses */
+	public long getRestarts() {
+		return restarts;
+	}
+
+	@Override
+	public String toString() {
+		return "TopBarrier[pending=" + this.pending.size() + ", complete=" + this.complete + ", timedOut="
+				+ this.timedOut + ", forced=" + this.forced + ", restarts=" + this.restarts + "]";
+	}
+
+	private static final class Pending<T> {
+		final int expected;
+		final long since;
+		final Map<Integer, T> items = new HashMap<>();
+
+		Pending(int expected, long since) {
+			this.expected = expected;
+			this.since = since;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package stormTP.stream;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.apache.storm.tuple.Tuple;
+
+/**
+ * Mise en JSON d'un tuple typé par les bolts de sortie : un objet dont les clés sont
+ * les champs du tuple, dans l'ordre de leur déclaration. Les bolts intermédiaires
+ * s'échangent des champs primitifs, le JSON n'est produit qu'ici.
+ *
+ * Un tuple qui n'a qu'un champ "json" est renvoyé tel quel.
+ */
+public final class TupleJson {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private TupleJson() {
+	}
+
+	public static String toJson(Tuple t) throws JsonProcessingException {
+		List<String> fields = t.getFields().toList();
+		if (fields.size() == 1 && fields.get(0).equals("json")) {
+			return t.getValue(0).toString();
+		}
+
+		ObjectNode output = MAPPER.createObjectNode();
+		for (int i = 0; i < fields.size(); i++) {
+			Object v = t.getValue(i);
+			String name = fields.get(i);
+			if (v instanceof Integer) {
+				output.put(name, (Integer) v);
+			} else if (v instanceof Long) {
+				output.put(name, (Long) v);
+			} else if (v instanceof Double) {
+				output.put(name, (Double) v);
+			} else if (v == null) {
+				output.putNull(name);
+			} else {
+				output.put(name, v.toString());
+			}
+		}
+		return MAPPER.writeValueAsString(output);
+	}
+}
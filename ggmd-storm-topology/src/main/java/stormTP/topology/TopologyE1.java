@@ -4,6 +4,7 @@ package stormTP.topology;
 import org.apache.storm.Config;
 import org.apache.storm.StormSubmitter;
 import org.apache.storm.topology.TopologyBuilder;
+import stormTP.core.Serialization;
 import stormTP.operator.InputStreamSpout;
 import stormTP.operator.ConsumeTimeBolt;
 import stormTP.operator.ExitInLogBolt;
@@ -32,6 +33,8 @@ public class TopologyE1 {
          * Configuration of metadata of the topology
          */
         Config config = new Config();
+        /*Sérialiseurs Kryo compacts pour les tuples échangés entre workers*/
+        Serialization.register(config);
         config.setDebug(true);
         config.setNumWorkers(4);
 		
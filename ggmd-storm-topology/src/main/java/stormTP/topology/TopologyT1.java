@@ -3,6 +3,7 @@ package stormTP.topology;
 import org.apache.storm.Config;
 import org.apache.storm.StormSubmitter;
 import org.apache.storm.topology.TopologyBuilder;
+import stormTP.core.Serialization;
 import stormTP.operator.ExitBolt;
 import stormTP.operator.InputStreamSpout;
 import stormTP.operator.NothingBolt;
@@ -19,13 +20,15 @@ public class TopologyT1 {
 		int nbExecutors = 1;
 		int portINPUT = Integer.parseInt(args[0]);
 		int portOUTPUT = Integer.parseInt(args[1]);
+		/*Nombre de partitions du générateur (partitions=k), une tâche du spout par partition*/
+		int nbPartitions = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
     	
 		/*Création du spout*/
-    	InputStreamSpout spout = new InputStreamSpout("client", portINPUT);
+    	InputStreamSpout spout = new InputStreamSpout("client", portINPUT).withPartitions(nbPartitions);
     	/*Création de la topologie*/
     	TopologyBuilder builder = new TopologyBuilder();
         /*Affectation à la topologie du spout*/
-        builder.setSpout("masterStream", spout);
+        builder.setSpout("masterStream", spout, nbPartitions);
         /*Affectation à la topologie du bolt qui ne fait rien, il prendra en input le spout localStream*/
         builder.setBolt("nofilter", new NothingBolt(), nbExecutors).shuffleGrouping("masterStream");
         /*Affectation à la topologie du bolt qui émet le flux de sortie, il prendra en input le bolt nofilter*/
@@ -33,6 +36,8 @@ public class TopologyT1 {
        
         /*Création d'une configuration*/
         Config config = new Config();
+        /*Sérialiseurs Kryo compacts pour les tuples échangés entre workers*/
+        Serialization.register(config);
         /*La topologie est soumise à STORM*/
         StormSubmitter.submitTopology("topoT1", config, builder.createTopology());
 	}
@@ -2,7 +2,11 @@ package stormTP.topology;
 
 import org.apache.storm.Config;
 import org.apache.storm.StormSubmitter;
+import org.apache.storm.topology.BoltDeclarer;
 import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.tuple.Fields;
+import stormTP.core.Serialization;
+import stormTP.operator.ControlSpout;
 import stormTP.operator.Exit2Bolt;
 import stormTP.operator.InputStreamSpout;
 import stormTP.operator.MyTortoiseBolt;
@@ -16,9 +20,28 @@ public class TopologyT2 {
 		int nbExecutors = 1;
 		int portINPUT = Integer.parseInt(args[0]);
 		int portOUTPUT = Integer.parseInt(args[1]);
+		// Optional "runners" : one typed tuple per runner, tortoise bolts grouped by id
+		// Optional control port: runtime changes of the watched runners, e.g. echo "set default 5" | nc <host> <port>
+		boolean runnerTuples = false;
+		int portCONTROL = -1;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("runners")) {
+				runnerTuples = true;
+			} else {
+				portCONTROL = Integer.parseInt(args[i]);
+			}
+		}
 
 		// Create spout
 		InputStreamSpout spout = new InputStreamSpout("client", portINPUT);
+		MyTortoiseBolt tortoiseBolt = new MyTortoiseBolt(3);
+		if (portCONTROL < 0) {
+			// Watched runners fixed at submission: the generator only serializes those for this spout
+			spout.withRunnerFilter(tortoiseBolt.getWatched());
+		}
+		if (runnerTuples) {
+			spout.withRunnerTuples();
+		}
 
 		// Create topology
 		TopologyBuilder builder = new TopologyBuilder();
@@ -27,8 +50,17 @@ public class TopologyT2 {
 		builder.setSpout("masterStream", spout);
 
 		// Add MyTortoiseBolt to filter tortoise with ID 3
-		builder.setBolt("tortoise", new MyTortoiseBolt(3), nbExecutors)
-			.shuffleGrouping("masterStream");
+		BoltDeclarer tortoise = builder.setBolt("tortoise", tortoiseBolt, nbExecutors);
+		if (runnerTuples) {
+			tortoise.fieldsGrouping("masterStream", new Fields("id"));
+		} else {
+			tortoise.shuffleGrouping("masterStream");
+		}
+		if (portCONTROL > 0) {
+			// Filter commands are broadcast to every tortoise task
+			builder.setSpout("control", new ControlSpout(portCONTROL));
+			tortoise.allGrouping("control");
+		}
 
 		// Add exit bolt to output filtered data
 		builder.setBolt("exit", new Exit2Bolt(portOUTPUT), nbExecutors)
@@ -36,6 +68,8 @@ public class TopologyT2 {
 
 		// Create configuration and submit topology
 		Config config = new Config();
+		// Compact Kryo serializers for tuples crossing workers
+		Serialization.register(config);
 		StormSubmitter.submitTopology("topoT2", config, builder.createTopology());
 	}
 }
@@ -2,12 +2,17 @@ package stormTP.topology;
 
 import org.apache.storm.Config;
 import org.apache.storm.StormSubmitter;
+import org.apache.storm.topology.BoltDeclarer;
 import org.apache.storm.topology.TopologyBuilder;
 import org.apache.storm.tuple.Fields;
+import stormTP.core.Serialization;
+import stormTP.operator.ControlSpout;
 import stormTP.operator.Exit3Bolt;
 import stormTP.operator.GiveRankBolt;
 import stormTP.operator.InputStreamSpout;
+import stormTP.operator.MergeRankBolt;
 import stormTP.operator.MyTortoiseBolt;
+import stormTP.operator.PartialRankBolt;
 
 /**
  * Topology T3: Calculate and rank all tortoises by their position on track
@@ -18,30 +23,72 @@ public class TopologyT3 {
 		int nbExecutors = 1;
 		int portINPUT = Integer.parseInt(args[0]);
 		int portOUTPUT = Integer.parseInt(args[1]);
+		// Optional control port: runtime changes of the watched runners, e.g. echo "set default 5" | nc <host> <port>
+		// Optional "rank=<N>": the whole race is ranked by N partial rank tasks and a merge of their histograms;
+		// the ranked runners are then fixed at submission, so it cannot be combined with a control port
+		int portCONTROL = -1;
+		int rankTasks = 0;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].startsWith("rank=")) {
+				rankTasks = Integer.parseInt(args[i].substring(5));
+			} else {
+				portCONTROL = Integer.parseInt(args[i]);
+			}
+		}
+		if (rankTasks > 0 && portCONTROL > 0) {
+			throw new IllegalArgumentException("rank=" + rankTasks + " does not support a control port ("
+					+ portCONTROL + "): the watched runners are fixed at submission");
+		}
 
 		// Create spout
 		InputStreamSpout spout = new InputStreamSpout("client", portINPUT);
+		MyTortoiseBolt tortoiseBolt = new MyTortoiseBolt(3);
 
 		// Create topology
 		TopologyBuilder builder = new TopologyBuilder();
 
-		// Add spout to topology
-		builder.setSpout("masterStream", spout);
+		if (rankTasks > 0) {
+			// Every runner is ranked, one typed tuple per runner; only tortoise 3 reaches the exit
+			spout.withRunnerTuples();
+			builder.setSpout("masterStream", spout);
+			builder.setBolt("partialRank", new PartialRankBolt(1000, tortoiseBolt.getWatched()), rankTasks)
+				.fieldsGrouping("masterStream", new Fields("id"))
+				.directGrouping("mergeRank", MergeRankBolt.OFFSETS_STREAM);
+			builder.setBolt("mergeRank", new MergeRankBolt(), nbExecutors)
+				.fieldsGrouping("partialRank", PartialRankBolt.HISTOGRAM_STREAM, new Fields("top"));
+			builder.setBolt("exit", new Exit3Bolt(portOUTPUT), nbExecutors)
+				.shuffleGrouping("partialRank");
+		} else {
+			if (portCONTROL < 0) {
+				// Watched runners fixed at submission: the generator only serializes those for this spout
+				spout.withRunnerFilter(tortoiseBolt.getWatched());
+			}
 
-		// Add MyTortoiseBolt to filter tortoise ID 3 and enrich data
-		builder.setBolt("tortoise", new MyTortoiseBolt(3), nbExecutors)
-			.shuffleGrouping("masterStream");
+			// Add spout to topology
+			builder.setSpout("masterStream", spout);
 
-		// Add GiveRankBolt with fieldsGrouping on "top" to ensure state consistency
-		builder.setBolt("rank", new GiveRankBolt(), nbExecutors)
-			.fieldsGrouping("tortoise", new Fields("json"));
+			// Add MyTortoiseBolt to filter tortoise ID 3 and enrich data
+			BoltDeclarer tortoise = builder.setBolt("tortoise", tortoiseBolt, nbExecutors)
+				.shuffleGrouping("masterStream");
+			if (portCONTROL > 0) {
+				// Filter commands are broadcast to every tortoise task
+				builder.setSpout("control", new ControlSpout(portCONTROL));
+				tortoise.allGrouping("control");
+			}
 
-		// Add exit bolt to output ranked data
-		builder.setBolt("exit", new Exit3Bolt(portOUTPUT), nbExecutors)
-			.shuffleGrouping("rank");
+			// Add GiveRankBolt with fieldsGrouping on "id" to ensure state consistency
+			builder.setBolt("rank", new GiveRankBolt(), nbExecutors)
+				.fieldsGrouping("tortoise", new Fields("id"));
+
+			// Add exit bolt to output ranked data
+			builder.setBolt("exit", new Exit3Bolt(portOUTPUT), nbExecutors)
+				.shuffleGrouping("rank");
+		}
 
 		// Create configuration and submit topology
 		Config config = new Config();
+		// Compact Kryo serializers for tuples crossing workers
+		Serialization.register(config);
 		StormSubmitter.submitTopology("topoT3", config, builder.createTopology());
 	}
 }
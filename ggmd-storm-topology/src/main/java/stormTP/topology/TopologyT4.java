@@ -2,8 +2,11 @@ package stormTP.topology;
 
 import org.apache.storm.Config;
 import org.apache.storm.StormSubmitter;
+import org.apache.storm.topology.BoltDeclarer;
 import org.apache.storm.topology.TopologyBuilder;
 import org.apache.storm.tuple.Fields;
+import stormTP.core.Serialization;
+import stormTP.operator.ControlSpout;
 import stormTP.operator.ComputeBonusBolt;
 import stormTP.operator.Exit4Bolt;
 import stormTP.operator.GiveRankBolt;
@@ -19,9 +22,16 @@ public class TopologyT4 {
 		int nbExecutors = 1;
 		int portINPUT = Integer.parseInt(args[0]);
 		int portOUTPUT = Integer.parseInt(args[1]);
+		// Optional control port: runtime changes of the watched runners, e.g. echo "set default 5" | nc <host> <port>
+		int portCONTROL = (args.length > 2) ? Integer.parseInt(args[2]) : -1;
 
 		// Create spout
 		InputStreamSpout spout = new InputStreamSpout("client", portINPUT);
+		MyTortoiseBolt tortoiseBolt = new MyTortoiseBolt(3);
+		if (portCONTROL < 0) {
+			// Watched runners fixed at submission: the generator only serializes those for this spout
+			spout.withRunnerFilter(tortoiseBolt.getWatched());
+		}
 
 		// Create topology
 		TopologyBuilder builder = new TopologyBuilder();
@@ -30,16 +40,22 @@ public class TopologyT4 {
 		builder.setSpout("masterStream", spout);
 
 		// Add MyTortoiseBolt to filter tortoise with ID 3
-		builder.setBolt("tortoise", new MyTortoiseBolt(3), nbExecutors)
+		BoltDeclarer tortoise = builder.setBolt("tortoise", tortoiseBolt, nbExecutors)
 			.shuffleGrouping("masterStream");
+		if (portCONTROL > 0) {
+			// Filter commands are broadcast to every tortoise task
+			builder.setSpout("control", new ControlSpout(portCONTROL));
+			tortoise.allGrouping("control");
+		}
 
-		// Add GiveRankBolt with fieldsGrouping on "json" for state consistency
-		builder.setBolt("rank", new GiveRankBolt(), nbExecutors)
-			.fieldsGrouping("tortoise", new Fields("json"));
+		// Add GiveRankBolt with fieldsGrouping on "id" for state consistency
+		// Unchanged ranks are not sent, except at the bonus tops where ComputeBonusBolt reads every rank
+		builder.setBolt("rank", new GiveRankBolt().withChangesOnly(ComputeBonusBolt.BONUS_INTERVAL), nbExecutors)
+			.fieldsGrouping("tortoise", new Fields("id"));
 
-		// Add ComputeBonusBolt with fieldsGrouping on "json" for state consistency
+		// Add ComputeBonusBolt with fieldsGrouping on "id" for state consistency
 		builder.setBolt("bonus", new ComputeBonusBolt(), nbExecutors)
-			.fieldsGrouping("rank", new Fields("json"));
+			.fieldsGrouping("rank", new Fields("id"));
 
 		// Add exit bolt to output bonus data
 		builder.setBolt("exit", new Exit4Bolt(portOUTPUT), nbExecutors)
@@ -47,6 +63,8 @@ public class TopologyT4 {
 
 		// Create configuration and submit topology
 		Config config = new Config();
+		// Compact Kryo serializers for tuples crossing workers
+		Serialization.register(config);
 		StormSubmitter.submitTopology("topoT4", config, builder.createTopology());
 	}
 }
@@ -2,9 +2,12 @@ package stormTP.topology;
 
 import org.apache.storm.Config;
 import org.apache.storm.StormSubmitter;
+import org.apache.storm.topology.BoltDeclarer;
 import org.apache.storm.topology.TopologyBuilder;
 import org.apache.storm.topology.base.BaseWindowedBolt.Count;
 
+import stormTP.core.Serialization;
+import stormTP.operator.ControlSpout;
 import stormTP.operator.Exit5Bolt;
 import stormTP.operator.InputStreamSpout;
 import stormTP.operator.MyTortoiseBolt;
@@ -20,9 +23,16 @@ public class TopologyT5 {
 		int nbExecutors = 1;
 		int portINPUT = Integer.parseInt(args[0]);
 		int portOUTPUT = Integer.parseInt(args[1]);
+		// Optional control port: runtime changes of the watched runners, e.g. echo "set default 5" | nc <host> <port>
+		int portCONTROL = (args.length > 2) ? Integer.parseInt(args[2]) : -1;
 
 		// Create spout
 		InputStreamSpout spout = new InputStreamSpout("client", portINPUT);
+		MyTortoiseBolt tortoiseBolt = new MyTortoiseBolt(3);
+		if (portCONTROL < 0) {
+			// Watched runners fixed at submission: the generator only serializes those for this spout
+			spout.withRunnerFilter(tortoiseBolt.getWatched());
+		}
 
 		// Create topology
 		TopologyBuilder builder = new TopologyBuilder();
@@ -31,8 +41,13 @@ public class TopologyT5 {
 		builder.setSpout("masterStream", spout);
 
 		// Add MyTortoiseBolt to filter tortoise with ID 3
-		builder.setBolt("tortoise", new MyTortoiseBolt(3), nbExecutors)
+		BoltDeclarer tortoise = builder.setBolt("tortoise", tortoiseBolt, nbExecutors)
 			.shuffleGrouping("masterStream");
+		if (portCONTROL > 0) {
+			// Filter commands are broadcast to every tortoise task
+			builder.setSpout("control", new ControlSpout(portCONTROL));
+			tortoise.allGrouping("control");
+		}
 
 		// Add SpeedBolt with windowing: 10-tuple window, sliding every 5 tuples
 		builder.setBolt("speed", new SpeedBolt()
@@ -45,6 +60,8 @@ public class TopologyT5 {
 
 		// Create configuration and submit topology
 		Config config = new Config();
+		// Compact Kryo serializers for tuples crossing workers
+		Serialization.register(config);
 		StormSubmitter.submitTopology("topoT5", config, builder.createTopology());
 	}
 }
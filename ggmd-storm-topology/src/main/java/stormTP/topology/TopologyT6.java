@@ -6,8 +6,10 @@ import org.apache.storm.topology.TopologyBuilder;
 import org.apache.storm.topology.base.BaseWindowedBolt.Duration; // Import direct de Duration
 import org.apache.storm.tuple.Fields;
 
+import stormTP.core.Serialization;
 import stormTP.operator.InputStreamSpout;
 import stormTP.operator.GiveRankBolt;
+import stormTP.operator.MyTortoiseBolt;
 import stormTP.operator.RankEvolutionBolt;
 import stormTP.operator.Exit6Bolt;
 
@@ -20,18 +22,24 @@ public class TopologyT6 {
         int portOUTPUT = (args.length > 1) ? Integer.parseInt(args[1]) : 9002;
 
         TopologyBuilder builder = new TopologyBuilder();
+        int idToMonitor = 2;
 
         // 1. Source
-        builder.setSpout("masterStream", new InputStreamSpout("127.0.0.1", portINPUT));
+        InputStreamSpout spout = new InputStreamSpout("127.0.0.1", portINPUT);
+        MyTortoiseBolt tortoiseBolt = new MyTortoiseBolt(idToMonitor);
+        // Le générateur ne sérialise que la tortue suivie pour ce spout
+        spout.withRunnerFilter(tortoiseBolt.getWatched());
+        builder.setSpout("masterStream", spout);
+
+        // 2. Champs typés (id, top, nom, nbCellsParcourus...) lus par GiveRankBolt, comme en T4
+        builder.setBolt("tortoise", tortoiseBolt, 1)
+               .shuffleGrouping("masterStream");
 
-        // 2. Calcul des Rangs
-        // Hypothèse : GiveRankBolt émet ("id", "top", "nom", "points", "rang"...)
+        // 3. Calcul des Rangs : GiveRankBolt émet ("id", "top", "nom", "rang", "total", "maxcel")
         builder.setBolt("rank", new GiveRankBolt(), 1)
-               .shuffleGrouping("masterStream");
-        
-        // 3. Evolution (Fenêtre de 10s, glissante toutes les 2s)
-        int idToMonitor = 2; 
+               .fieldsGrouping("tortoise", new Fields("id"));
         
+        // 4. Evolution (Fenêtre de 10s, glissante toutes les 2s)
         builder.setBolt("evolution", 
                 new RankEvolutionBolt(idToMonitor)
                     // CORRECTION ICI : Utiliser .withWindow(Longueur, Intervalle)
@@ -40,11 +48,13 @@ public class TopologyT6 {
                // CORRECTION ICI : fieldsGrouping obligatoire pour la cohérence temporelle par objet
                .fieldsGrouping("rank", new Fields("id")); 
 
-        // 4. Sortie
+        // 5. Sortie
         builder.setBolt("exit", new Exit6Bolt(portOUTPUT), 1)
                .shuffleGrouping("evolution");
 
         Config config = new Config();
+        /*Sérialiseurs Kryo compacts pour les tuples échangés entre workers*/
+        Serialization.register(config);
         
         // Si vous testez en local via IDE, utilisez LocalCluster au lieu de StormSubmitter
         // Sinon pour le cluster :
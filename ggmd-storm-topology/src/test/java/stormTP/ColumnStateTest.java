@@ -0,0 +1,191 @@
+package stormTP;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.storm.state.InMemoryKeyValueState;
+import org.apache.storm.state.KeyValueState;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.core.ColumnState;
+import stormTP.core.RunnerColumns;
+
+/**
+ * Unit test for ColumnState: put, evict, commit and restore around the block boundaries.
+ */
+public class ColumnStateTest
+    extends TestCase
+{
+    private static final int SIZE = RunnerColumns.SIZE;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ColumnStateTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( ColumnStateTest.class );
+    }
+
+    /**
+     * Coureurs de part et d'autre des limites de blocs, relus tels quels
+     */
+    public void testPut()
+    {
+        ColumnState state = new ColumnState("pos", 100);
+        int[] ids = { 0, SIZE - 1, SIZE, 2 * SIZE - 1, 2 * SIZE, 5 * SIZE + 3 };
+        for (int i = 0; i < ids.length; i++) {
+            state.put(ids[i], 10 + i, -i, null);
+        }
+        assertEquals(ids.length, state.getLive());
+        assertEquals(10 + ids.length - 1, state.getMaxTop());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(10 + i, state.getTop(ids[i]));
+            assertEquals(-i, state.getValue(ids[i]));
+        }
+        assertEquals(-1, state.getTop(1));
+        assertEquals(-1, state.getTop(SIZE + 1));
+        assertEquals(-1, state.getTop(100 * SIZE));
+        assertEquals(0, state.getValue(100 * SIZE));
+
+        // mise à jour sans nouveau coureur
+        state.put(SIZE, 20, 7, null);
+        assertEquals(ids.length, state.getLive());
+        assertEquals(List.of("0:10:0", "1023:11:-1", "1024:20:7", "2047:13:-3", "2048:14:-4", "5123:15:-5"),
+                runners(state));
+    }
+
+    /**
+     * Retrait des coureurs en retard de plus de horizon tops, dans plusieurs blocs
+     */
+    public void testEvict()
+    {
+        ColumnState state = new ColumnState("pos", 10);
+        state.put(SIZE - 1, 0, 1, null);
+        state.put(SIZE, 5, 2, null);
+        state.put(SIZE + 1, 12, 3, null);
+        state.put(3 * SIZE, 9, 4, null);
+        state.put(2, 20, 5, null);
+
+        List<String> removed = new ArrayList<>();
+        assertEquals(3, state.evict((id, top, value) -> removed.add(id + ":" + top + ":" + value)));
+        assertEquals(List.of("1023:0:1", "1024:5:2", "3072:9:4"), removed);
+        assertEquals(2, state.getLive());
+        assertEquals(3, state.getEvicted());
+        assertEquals(List.of("2:20:5", "1025:12:3"), runners(state));
+
+        assertEquals(0, state.evict(null));
+    }
+
+    /**
+     * commit n'écrit que les blocs modifiés, des copies, et supprime les blocs vidés
+     */
+    public void testCommit()
+    {
+        KeyValueState<String, RunnerColumns> kv = new InMemoryKeyValueState<>();
+        ColumnState state = new ColumnState("pos", 10);
+        state.put(SIZE - 1, 0, 1, null);
+        state.put(SIZE, 0, 2, null);
+        state.put(2 * SIZE + 5, 0, 3, null);
+        assertEquals(3, state.commit(kv));
+        assertNotNull(kv.get("pos0"));
+        assertNotNull(kv.get("pos1"));
+        assertNotNull(kv.get("pos2"));
+        assertEquals(0, state.commit(kv));
+
+        // un seul bloc modifié, l'état garde la copie confiée au commit précédent
+        RunnerColumns before = kv.get("pos1");
+        state.put(SIZE, 1, 9, null);
+        assertEquals(2, before.getValue(SIZE));
+        assertEquals(1, state.commit(kv));
+        assertEquals(9, kv.get("pos1").getValue(SIZE));
+
+        // bloc 1 vidé par evict : sa clé est supprimée
+        state.put(SIZE - 1, 20, 1, null);
+        state.put(2 * SIZE + 5, 20, 3, null);
+        assertEquals(1, state.evict(null));
+        assertEquals(3, state.commit(kv));
+        assertNull(kv.get("pos1"));
+        assertEquals(20, kv.get("pos0").getTop(SIZE - 1));
+        assertEquals(20, kv.get("pos2").getTop(2 * SIZE + 5));
+
+        // le bloc retiré est recréé au besoin
+        state.put(SIZE + 2, 21, 4, null);
+        assertEquals(1, state.commit(kv));
+        assertEquals(4, kv.get("pos1").getValue(SIZE + 2));
+    }
+
+    /**
+     * restore relit les blocs du préfixe seulement, et l'état restauré continue comme l'original
+     */
+    public void testRestore()
+    {
+        KeyValueState<String, RunnerColumns> kv = new InMemoryKeyValueState<>();
+        ColumnState state = new ColumnState("pos", 10);
+        ColumnState other = new ColumnState("score", 10);
+        state.put(0, 3, 1, null);
+        state.put(SIZE - 1, 4, 2, null);
+        state.put(4 * SIZE, 7, 3, null);
+        other.put(SIZE, 100, 9, null);
+        state.commit(kv);
+        other.commit(kv);
+
+        ColumnState restored = new ColumnState("pos", 10);
+        restored.put(SIZE, 1, 1, null);
+        restored.restore(kv);
+        assertEquals(runners(state), runners(restored));
+        assertEquals(3, restored.getLive());
+        assertEquals(7, restored.getMaxTop());
+        assertEquals(-1, restored.getTop(SIZE));
+
+        // rien à écrire après restore, puis mêmes effets que sur l'original
+        assertEquals(0, restored.commit(kv));
+        restored.put(SIZE, 15, 5, null);
+        assertEquals(2, restored.evict(null));
+        assertEquals(List.of("1024:15:5", "4096:7:3"), runners(restored));
+
+        // un bloc restauré est une copie de celui de l'état
+        assertEquals(3, kv.get("pos0").getTop(0));
+    }
+
+    /**
+     * Un top antérieur de plus de horizon au plus récent commence une nouvelle course
+     */
+    public void testNewRace()
+    {
+        ColumnState state = new ColumnState("pos", 100);
+        state.put(5, 5000, 1, null);
+        state.put(SIZE + 5, 4990, 2, null);
+        state.put(6, 4900, 3, null);
+        assertEquals(0, state.getRaces());
+
+        List<String> removed = new ArrayList<>();
+        state.put(SIZE + 5, 0, 4, (id, top, value) -> removed.add(id + ":" + top + ":" + value));
+        assertEquals(1, state.getRaces());
+        assertEquals(List.of("5:5000:1", "6:4900:3", "1029:4990:2"), removed);
+        assertEquals(List.of("1029:0:4"), runners(state));
+        assertEquals(1, state.getLive());
+        assertEquals(0, state.getMaxTop());
+    }
+
+    /*
+    coureurs présents, "id:top:valeur" par id croissant
+    * */
+    static List<String> runners(ColumnState state)
+    {
+        List<String> runners = new ArrayList<>();
+        state.forEach((id, top, value) -> runners.add(id + ":" + top + ":" + value));
+        return runners;
+    }
+}
@@ -0,0 +1,359 @@
+package stormTP;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import main.java.core.BinaryFrameWriter;
+import main.java.core.Partition;
+import main.java.core.Tick;
+import stormTP.stream.FrameDecoder;
+import stormTP.stream.RaceFrame;
+
+/**
+ * Unit test for FrameDecoder, fed with the frames of the generator's BinaryFrameWriter.
+ */
+public class FrameDecoderTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public FrameDecoderTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( FrameDecoderTest.class );
+    }
+
+    /**
+     * Plusieurs tops complets à la suite, précédés d'une ligne JSON, puis la fin du flux
+     */
+    public void testFullFrames() throws IOException
+    {
+        Tick tick = tick(5, 7, 3);
+        BinaryFrameWriter writer = new BinaryFrameWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("{\"timestamp\":1,\"runners\":[]}\n".getBytes(StandardCharsets.UTF_8));
+        for (int top = 0; top < 3; top++) {
+            advance(tick, top, top);
+            append(out, writer.write(tick));
+        }
+
+        FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(out.toByteArray()));
+        for (int top = 0; top < 3; top++) {
+            advance(tick, top, top);
+            assertSame(tick, decoder.next(), null);
+        }
+        assertNull(decoder.next());
+        assertEquals(1, decoder.getSkippedLines());
+        assertEquals(3, decoder.getKeyframes());
+    }
+
+    /**
+     * Varints sur plusieurs octets : écarts d'id, tours et cellules au-delà de 127
+     */
+    public void testMultiByteVarints() throws IOException
+    {
+        int nbRunners = 70000;
+        int nbCellules = 3;
+        Tick tick = new Tick(nbRunners, nbCellules);
+        int[] ids = { 0, 1, 200, 16384, 69999 };
+        int[] cumul = { 0, 127 * nbCellules, 128 * nbCellules + 2, 2000000000, Integer.MAX_VALUE };
+        for (int k = 0; k < ids.length; k++) {
+            tick.getCumul()[ids[k]] = cumul[k];
+            tick.getCellules()[ids[k]] = (k == 4) ? Integer.MAX_VALUE : 128 << (7 * k);
+        }
+        tick.setTop(1L << 40);
+        Partition part = new Partition(0, 1, ids);
+
+        ByteBuffer frame = new BinaryFrameWriter().write(tick, part);
+        RaceFrame f = new FrameDecoder(new ByteArrayInputStream(toBytes(frame))).next();
+
+        assertEquals(ids.length, f.getCount());
+        assertEquals(nbRunners, f.getTotal());
+        assertEquals(1L << 40, f.getTop());
+        for (int k = 0; k < ids.length; k++) {
+            assertEquals(ids[k], f.getId(k));
+            assertEquals(tick.getTour(ids[k]), f.getTour(k));
+            assertEquals(tick.getCellules()[ids[k]], f.getCellule(k));
+        }
+    }
+
+    /**
+     * Un flux coupé au milieu d'un top : EOFException quel que soit l'octet de la coupure
+     */
+    public void testTruncatedStream() throws IOException
+    {
+        Tick tick = tick(4, 10, 2);
+        advance(tick, 0, 1);
+        byte[] frame = toBytes(new BinaryFrameWriter().write(tick));
+
+        for (int cut = 1; cut < frame.length; cut++) {
+            FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(Arrays.copyOf(frame, cut)));
+            try {
+                decoder.next();
+                fail("frame cut at " + cut + " of " + frame.length + " bytes");
+            } catch (EOFException expected) {
+            }
+        }
+
+        // une ligne JSON sans fin de ligne est aussi un flux tronqué
+        byte[] line = "{\"timestamp\":1".getBytes(StandardCharsets.UTF_8);
+        try {
+            new FrameDecoder(new ByteArrayInputStream(line)).next();
+            fail("unterminated JSON line");
+        } catch (EOFException expected) {
+        }
+    }
+
+    /**
+     * Une longueur annoncée trop courte pour les coureurs : le décodeur ne lit pas au-delà du top
+     */
+    public void testTruncatedPayload() throws IOException
+    {
+        Tick tick = tick(4, 10, 2);
+        advance(tick, 0, 300);
+        byte[] frame = toBytes(new BinaryFrameWriter().write(tick));
+        int len = frame.length - FrameDecoder.HEADER_SIZE;
+
+        for (int cut = 1; cut <= 6; cut++) {
+            byte[] shorter = Arrays.copyOf(frame, frame.length - cut);
+            ByteBuffer.wrap(shorter).putInt(2, len - cut);
+            FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(shorter));
+            try {
+                decoder.next();
+                fail("payload cut by " + cut + " bytes");
+            } catch (EOFException e) {
+                fail("the whole announced payload was present");
+            } catch (IOException expected) {
+                assertFalse(decoder.isSynced());
+            }
+        }
+
+        // top déjà réassemblé (multicast) : la longueur annoncée ne correspond plus
+        try {
+            new FrameDecoder().decode(frame, frame.length - 1);
+            fail("reassembled frame one byte short");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * Un top complet puis des deltas : l'état reconstruit suit le Tick, seuls les coureurs
+     * qui ont bougé sont transmis
+     */
+    public void testKeyframeThenDeltas() throws IOException
+    {
+        Tick tick = tick(20, 8, 1);
+        BinaryFrameWriter writer = new BinaryFrameWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] moved = new int[10];
+        move(tick, 0);
+        append(out, writer.write(tick));
+        for (int top = 1; top < 10; top++) {
+            moved[top] = move(tick, top);
+            append(out, writer.writeDelta(tick));
+        }
+
+        FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(out.toByteArray()));
+        Tick expected = tick(20, 8, 1);
+        for (int top = 0; top < 10; top++) {
+            move(expected, top);
+            RaceFrame f = decoder.next();
+            assertSame(expected, f, null);
+            if (top > 0) {
+                assertEquals(moved[top], f.getChanged());
+                assertTrue(moved[top] < 20);
+            }
+        }
+        assertNull(decoder.next());
+        assertEquals(1, decoder.getKeyframes());
+        assertEquals(9, decoder.getDeltas());
+    }
+
+    /**
+     * Les deltas reçus avant le premier top complet de leur course sont ignorés
+     */
+    public void testDeltaBeforeKeyframe() throws IOException
+    {
+        Tick tick = tick(6, 5, 0);
+        BinaryFrameWriter writer = new BinaryFrameWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        move(tick, 0);
+        move(tick, 1);
+        append(out, writer.writeDelta(tick));
+        move(tick, 2);
+        append(out, writer.write(tick));
+        move(tick, 3);
+        append(out, writer.writeDelta(tick));
+
+        FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(out.toByteArray()));
+        assertFalse(decoder.isSynced());
+        assertEquals(2, decoder.next().getTop());
+        assertTrue(decoder.isSynced());
+        assertSame(tick, decoder.next(), null);
+        assertNull(decoder.next());
+        assertEquals(1, decoder.getDeltas());
+    }
+
+    /**
+     * Courses partageant un port : chaque delta s'applique au dernier top complet de sa course
+     */
+    public void testSharedPortDeltas() throws IOException
+    {
+        Tick a = tick(12, 6, 1);
+        Tick b = tick(30, 9, 2);
+        Tick c = tick(4, 3, 3);
+        BinaryFrameWriter writer = new BinaryFrameWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        move(a, 0);
+        append(out, writer.write(a));
+        move(c, 0);
+        move(c, 1);
+        append(out, writer.writeDelta(c));
+        move(b, 0);
+        append(out, writer.write(b));
+        for (int top = 1; top < 6; top++) {
+            move(a, top);
+            append(out, writer.writeDelta(a));
+            move(b, top);
+            append(out, writer.writeDelta(b));
+        }
+
+        FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(out.toByteArray()));
+        Tick ea = tick(12, 6, 1);
+        Tick eb = tick(30, 9, 2);
+        move(ea, 0);
+        assertSame(ea, decoder.next(), null);
+        // le delta de la course 3 n'a pas de top complet : ignoré
+        move(eb, 0);
+        assertSame(eb, decoder.next(), null);
+        for (int top = 1; top < 6; top++) {
+            move(ea, top);
+            assertSame(ea, decoder.next(), null);
+            move(eb, top);
+            assertSame(eb, decoder.next(), null);
+        }
+        assertNull(decoder.next());
+    }
+
+    /**
+     * Un delta pour un coureur absent du top complet : l'état de la course est abandonné
+     * jusqu'à son prochain top complet
+     */
+    public void testDeltaForUnknownRunner() throws IOException
+    {
+        Tick tick = tick(3, 4, 5);
+        BinaryFrameWriter writer = new BinaryFrameWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        move(tick, 0);
+        append(out, writer.write(tick, new Partition(0, 2, new int[] { 0, 2 })));
+        tick.save();
+        tick.getCumul()[1] += 1;
+        tick.setTop(1);
+        append(out, writer.writeDelta(tick));
+        move(tick, 2);
+        append(out, writer.writeDelta(tick));
+
+        FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, decoder.next().getCount());
+        try {
+            decoder.next();
+            fail("delta for runner 1");
+        } catch (IOException expected) {
+        }
+        assertFalse(decoder.isSynced());
+        assertNull(decoder.next());
+    }
+
+    /*
+    course de nbRunners coureurs sur nbCellules cellules, partie d'une raceId donnée
+    * */
+    static Tick tick(int nbRunners, int nbCellules, int raceId)
+    {
+        Tick tick = new Tick(nbRunners, nbCellules);
+        tick.setRaceId(raceId);
+        return tick;
+    }
+
+    /*
+    top suivant : le coureur i a parcouru (i + 1) * step cellules de plus
+    * */
+    static void advance(Tick tick, long top, int step)
+    {
+        tick.save();
+        for (int i = 0; i < tick.getNbRunners(); i++) {
+            tick.getCumul()[i] = (int) ((i + 1) * step * (top + 1));
+            tick.getCellules()[i] = tick.getCumul()[i] % tick.getNbCellules();
+        }
+        tick.setTop(top);
+        tick.setTimestamp(1000 + top);
+    }
+
+    /*
+    top suivant où seul un coureur sur trois avance (tous au top 0) ;
+    retourne le nombre de coureurs qui ont bougé
+    * */
+    static int move(Tick tick, long top)
+    {
+        tick.save();
+        int moved = 0;
+        for (int i = 0; i < tick.getNbRunners(); i++) {
+            if (top == 0 || (i + top) % 3 == 0) {
+                tick.getCumul()[i] += i + 1;
+                tick.getCellules()[i] = tick.getCumul()[i] % tick.getNbCellules();
+                moved++;
+            }
+        }
+        tick.setTop(top);
+        tick.setTimestamp(1000 + top);
+        return moved;
+    }
+
+    /*
+    le top décodé correspond au Tick, pour les coureurs de ids (tous si null)
+    * */
+    static void assertSame(Tick tick, RaceFrame f, int[] ids)
+    {
+        assertNotNull(f);
+        assertEquals(tick.getTop(), f.getTop());
+        assertEquals(tick.getTimestamp(), f.getTimestamp());
+        assertEquals(tick.getRaceId(), f.getRaceId());
+        assertEquals(tick.getNbRunners(), f.getTotal());
+        assertEquals(tick.getNbCellules(), f.getMaxcel());
+        int count = (ids == null) ? tick.getNbRunners() : ids.length;
+        assertEquals(count, f.getCount());
+        for (int k = 0; k < count; k++) {
+            int i = (ids == null) ? k : ids[k];
+            assertEquals(i, f.getId(k));
+            assertEquals(tick.getTour(i), f.getTour(k));
+            assertEquals(tick.getCellules()[i], f.getCellule(k));
+        }
+    }
+
+    static void append(ByteArrayOutputStream out, ByteBuffer frame)
+    {
+        out.write(frame.array(), frame.position(), frame.remaining());
+    }
+
+    static byte[] toBytes(ByteBuffer frame)
+    {
+        return Arrays.copyOfRange(frame.array(), frame.position(), frame.limit());
+    }
+}
@@ -0,0 +1,180 @@
+package stormTP;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.storm.state.InMemoryKeyValueState;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.operator.GiveRankBolt;
+
+/**
+ * Unit test for GiveRankBolt.withChangesOnly: suppressed ranks, periodic refresh and new races.
+ */
+public class GiveRankBoltTest
+    extends TestCase
+{
+    private static final int REFRESH = 5;
+
+    private GiveRankBolt bolt;
+    private OutputCollector collector;
+    /* rangs émis, "id@top:rang" */
+    private final List<String> emitted = new ArrayList<>();
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public GiveRankBoltTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( GiveRankBoltTest.class );
+    }
+
+    @Override
+    protected void setUp()
+    {
+        collector = mock(OutputCollector.class);
+        when(collector.emit(any(Tuple.class), anyList())).thenAnswer(call -> {
+            List<?> values = call.getArgument(1);
+            emitted.add(values.get(0) + "@" + values.get(1) + ":" + values.get(3));
+            return List.of();
+        });
+        bolt = new GiveRankBolt().withChangesOnly(REFRESH);
+        bolt.prepare(new HashMap<>(), mock(TopologyContext.class), collector);
+        bolt.initState(new InMemoryKeyValueState<>());
+    }
+
+    /**
+     * Un rang inchangé n'est pas émis, mais le tuple est acquitté
+     */
+    public void testUnchangedSuppressed()
+    {
+        rank(0, 1, 10);
+        rank(1, 1, 5);
+        assertEmitted("0@1:1", "1@1:2");
+
+        // mêmes rangs au top suivant
+        Tuple a = rank(0, 2, 20);
+        Tuple b = rank(1, 2, 15);
+        assertEmitted();
+        verify(collector).ack(a);
+        verify(collector).ack(b);
+
+        // dépassement : les deux rangs changent
+        rank(1, 3, 30);
+        rank(0, 3, 25);
+        assertEmitted("1@3:1", "0@3:2");
+
+        // un ex aequo est un changement de rang
+        rank(1, 4, 40);
+        rank(0, 4, 40);
+        assertEmitted("0@4:1ex");
+        verify(collector, times(8)).ack(any(Tuple.class));
+    }
+
+    /**
+     * Aux tops multiples de refreshTops, le rang de chaque tortue est émis même inchangé
+     */
+    public void testRefresh()
+    {
+        rank(0, 3, 10);
+        rank(1, 3, 5);
+        assertEmitted("0@3:1", "1@3:2");
+
+        rank(0, 4, 11);
+        rank(1, 4, 6);
+        assertEmitted();
+
+        rank(0, REFRESH, 12);
+        rank(1, REFRESH, 7);
+        assertEmitted("0@5:1", "1@5:2");
+
+        rank(0, REFRESH + 1, 13);
+        rank(1, REFRESH + 1, 8);
+        assertEmitted();
+
+        rank(0, 2 * REFRESH, 14);
+        rank(1, 2 * REFRESH, 9);
+        assertEmitted("0@10:1", "1@10:2");
+    }
+
+    /**
+     * Une nouvelle course oublie les rangs envoyés : le premier rang de chaque tortue est émis
+     */
+    public void testNewRace()
+    {
+        rank(0, 2001, 10);
+        rank(1, 2001, 5);
+        assertEmitted("0@2001:1", "1@2001:2");
+        rank(0, 2002, 11);
+        assertEmitted();
+
+        // générateur relancé : tops repartis de zéro, mêmes rangs qu'avant
+        rank(0, 1, 1);
+        rank(1, 1, 0);
+        assertEmitted("0@1:1", "1@1:2");
+        rank(0, 2, 2);
+        rank(1, 2, 1);
+        assertEmitted();
+    }
+
+    /**
+     * Après un rollback, les rangs des tuples rejoués sont émis à nouveau
+     */
+    public void testRollback()
+    {
+        rank(0, 1, 10);
+        rank(1, 1, 5);
+        assertEmitted("0@1:1", "1@1:2");
+
+        bolt.preRollback();
+        rank(0, 1, 10);
+        rank(1, 1, 5);
+        assertEmitted("0@1:1", "1@1:2");
+    }
+
+    /*
+    un tuple de MyTortoiseBolt.OUTPUT_FIELDS pour la tortue id, passé au bolt
+    * */
+    private Tuple rank(int id, long top, long cells)
+    {
+        Tuple t = mock(Tuple.class);
+        when(t.getIntegerByField("id")).thenReturn(id);
+        when(t.getLongByField("top")).thenReturn(top);
+        when(t.getStringByField("nom")).thenReturn("T" + id);
+        when(t.getLongByField("nbCellsParcourus")).thenReturn(cells);
+        when(t.getIntegerByField("total")).thenReturn(2);
+        when(t.getIntegerByField("maxcel")).thenReturn(100);
+        bolt.execute(t);
+        return t;
+    }
+
+    /* rangs émis depuis le dernier appel */
+    private void assertEmitted(String... expected)
+    {
+        assertEquals(List.of(expected), emitted);
+        emitted.clear();
+    }
+}
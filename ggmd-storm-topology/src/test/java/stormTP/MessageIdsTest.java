@@ -0,0 +1,109 @@
+package stormTP;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.stream.MessageIds;
+
+/**
+ * Unit test for MessageIds, at the limits of the race(16) partition(8) top(40) fields.
+ */
+public class MessageIdsTest 
+    extends TestCase
+{
+    private static final long TOP_MAX = (1L << 40) - 1;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public MessageIdsTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( MessageIdsTest.class );
+    }
+
+    /**
+     * Chaque champ relu tel quel, à ses bornes et à côté des bornes des autres champs
+     */
+    public void testFieldLimits()
+    {
+        int[] races = { -1, 0, 1, 0x7FFF, 0x8000, 65534 };
+        int[] partitions = { 0, 1, 127, 128, 254, 255 };
+        long[] tops = { 0, 1, (1L << 39), TOP_MAX - 1, TOP_MAX };
+
+        for (int race : races) {
+            for (int partition : partitions) {
+                for (long top : tops) {
+                    long id = MessageIds.of(race, top, partition);
+                    if (race == -1 && partition == 255 && top == TOP_MAX) {
+                        // seule combinaison réservée, cf. MessageIds
+                        assertEquals(MessageIds.NONE, id);
+                        continue;
+                    }
+                    String what = race + "/" + partition + "/" + top;
+                    assertTrue(what, id != MessageIds.NONE);
+                    assertEquals(what, race, MessageIds.raceId(id));
+                    assertEquals(what, partition, MessageIds.partition(id));
+                    assertEquals(what, top, MessageIds.top(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Des identifiants distincts pour des tops voisins de courses et partitions voisines
+     */
+    public void testDistinct()
+    {
+        long a = MessageIds.of(65534, TOP_MAX, 255);
+        long b = MessageIds.of(-1, 0, 0);
+        long c = MessageIds.of(0, TOP_MAX, 255);
+        long d = MessageIds.of(1, 0, 0);
+
+        assertTrue(a != b);
+        assertEquals(c + 1, d);
+        assertEquals(MessageIds.of(3, 7, 2), MessageIds.of(3, 7, 2));
+        assertTrue(MessageIds.of(3, 7, 2) != MessageIds.of(3, 7, 3));
+        assertTrue(MessageIds.of(3, 7, 2) != MessageIds.of(4, 7, 2));
+    }
+
+    /**
+     * Un top ou une partition hors limites ne déborde pas sur les autres champs
+     */
+    public void testOverflowStaysInField()
+    {
+        long id = MessageIds.of(12, TOP_MAX + 1 + 5, 3);
+        assertEquals(12, MessageIds.raceId(id));
+        assertEquals(3, MessageIds.partition(id));
+        assertEquals(5, MessageIds.top(id));
+
+        id = MessageIds.of(12, 5, 256 + 3);
+        assertEquals(12, MessageIds.raceId(id));
+        assertEquals(3, MessageIds.partition(id));
+        assertEquals(5, MessageIds.top(id));
+    }
+
+    /**
+     * Identifiant d'une ligne JSON du générateur : raceId facultatif, top du premier coureur
+     */
+    public void testOfJson()
+    {
+        String withRace = "{\"timestamp\":1,\"raceId\":65534,\"runners\":[{\"id\":0,\"top\":1099511627774,"
+                + "\"tour\":0,\"cellule\":1,\"total\":2,\"maxcel\":3},{\"id\":1,\"top\":1099511627774}]}";
+        assertEquals(MessageIds.of(65534, TOP_MAX - 1, 255), MessageIds.ofJson(withRace, 255));
+
+        String noRace = "{\"timestamp\":1,\"runners\":[{\"id\":0,\"top\":42,\"tour\":0}]}";
+        assertEquals(MessageIds.of(-1, 42, 0), MessageIds.ofJson(noRace, 0));
+
+        assertEquals(MessageIds.NONE, MessageIds.ofJson("{\"timestamp\":1,\"raceId\":2,\"runners\":[]}", 1));
+    }
+}
@@ -0,0 +1,82 @@
+package stormTP;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.storm.daemon.GrouperFactory;
+import org.apache.storm.generated.Grouping;
+import org.apache.storm.tuple.Fields;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.operator.PartialRankBolt;
+
+/**
+ * Unit test for PartialRankBolt.partitionOf, checked against Storm's fieldsGrouping on "id".
+ */
+public class PartialRankBoltTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PartialRankBoltTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PartialRankBoltTest.class );
+    }
+
+    /**
+     * La partition calculée est l'indice de la tâche choisie par fieldsGrouping("id"),
+     * pour les champs des tuples coureur émis par le spout
+     */
+    public void testPartitionOfMatchesFieldsGrouping()
+    {
+        Fields fields = new Fields("id", "top", "tour", "cellule", "total", "maxcel");
+        for (int partitions : new int[] { 1, 2, 3, 4, 7, 16 }) {
+            // identifiants de tâches quelconques, triés comme ceux d'un composant
+            List<Integer> tasks = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                tasks.add(11 + 3 * i);
+            }
+            GrouperFactory.FieldsGrouper grouper = new GrouperFactory.FieldsGrouper(fields,
+                    Grouping.fields(List.of("id")));
+            grouper.prepare(null, null, tasks);
+
+            for (int id = 0; id < 2000; id++) {
+                List<Object> values = List.of(id, 42L, 1, 17, 2000, 100);
+                List<Integer> chosen = grouper.chooseTasks(5, values);
+                assertEquals(1, chosen.size());
+                assertEquals(id + "/" + partitions, tasks.get(PartialRankBolt.partitionOf(id, partitions)),
+                        chosen.get(0));
+            }
+        }
+    }
+
+    /**
+     * Toutes les partitions reçoivent des coureurs dès que la course en compte assez
+     */
+    public void testPartitionOfSpread()
+    {
+        int partitions = 8;
+        int[] counts = new int[partitions];
+        for (int id = 0; id < 800; id++) {
+            int p = PartialRankBolt.partitionOf(id, partitions);
+            assertTrue(p >= 0 && p < partitions);
+            counts[p]++;
+        }
+        for (int p = 0; p < partitions; p++) {
+            assertTrue("partition " + p + " : " + counts[p], counts[p] > 0);
+        }
+    }
+}
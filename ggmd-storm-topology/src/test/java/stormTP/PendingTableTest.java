@@ -0,0 +1,129 @@
+package stormTP;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.stream.PendingTable;
+
+/**
+ * Unit test for PendingTable, checked against a HashMap and a queue.
+ */
+public class PendingTableTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public PendingTableTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( PendingTableTest.class );
+    }
+
+    /**
+     * Ajout, doublon, remplacement et retrait d'un identifiant
+     */
+    public void testPutRemove()
+    {
+        PendingTable table = new PendingTable(4);
+
+        assertTrue(table.put(7, "a"));
+        assertFalse(table.put(7, "b"));
+        assertEquals("a", table.get(7));
+        assertTrue(table.replace(7, "c"));
+        assertFalse(table.replace(8, "c"));
+        assertEquals("c", table.remove(7));
+        assertNull(table.remove(7));
+        assertNull(table.get(7));
+        assertEquals(0, table.size());
+    }
+
+    /**
+     * Ajouts et retraits aléatoires, avec agrandissements : contenu comparé à une HashMap
+     */
+    public void testAgainstHashMap()
+    {
+        Random random = new Random(11);
+        PendingTable table = new PendingTable(2);
+        Map<Long, Object> map = new HashMap<>();
+
+        for (int step = 0; step < 50000; step++) {
+            // tops consécutifs et quelques identifiants quelconques
+            long key = (random.nextInt(4) == 0) ? random.nextLong() : random.nextInt(3000);
+            if (random.nextBoolean()) {
+                Object value = Integer.valueOf(step);
+                assertEquals(!map.containsKey(key), table.put(key, value));
+                map.putIfAbsent(key, value);
+            } else {
+                assertEquals(map.remove(key), table.remove(key));
+            }
+            assertEquals(map.size(), table.size());
+        }
+        for (Map.Entry<Long, Object> e : map.entrySet()) {
+            assertEquals(e.getValue(), table.get(e.getKey()));
+        }
+    }
+
+    /**
+     * File des échecs : ordre conservé quand elle fait le tour et quand elle s'agrandit
+     */
+    public void testFailedWraparound()
+    {
+        PendingTable table = new PendingTable(4);
+        Deque<Long> expected = new ArrayDeque<>();
+        for (long key = 0; key < 20; key++) {
+            table.put(key, "t" + key);
+        }
+        assertEquals(-1, table.fail(100));
+
+        long next = 0;
+        for (int round = 0; round < 50; round++) {
+            // quelques échecs puis quelques réémissions : la tête avance dans la file circulaire
+            for (int i = 0; i < 3; i++) {
+                long key = next++ % 20;
+                table.fail(key);
+                expected.add(key);
+            }
+            for (int i = 0; i < 2; i++) {
+                assertTrue(table.hasFailed());
+                assertEquals(expected.poll().longValue(), table.pollFailed());
+            }
+            assertEquals(expected.size(), table.getFailedCount());
+        }
+        while (!expected.isEmpty()) {
+            assertEquals(expected.poll().longValue(), table.pollFailed());
+        }
+        assertFalse(table.hasFailed());
+    }
+
+    /**
+     * Nombre d'échecs d'un identifiant, conservé par replace
+     */
+    public void testAttempts()
+    {
+        PendingTable table = new PendingTable(4);
+        table.put(3, "a");
+
+        assertEquals(1, table.fail(3));
+        table.replace(3, "b");
+        assertEquals(2, table.fail(3));
+        table.remove(3);
+        table.put(3, "c");
+        assertEquals(1, table.fail(3));
+    }
+}
@@ -0,0 +1,110 @@
+package stormTP;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.core.RankHistogram;
+
+/**
+ * Unit test for RankHistogram, checked against a naive count over all the runners.
+ */
+public class RankHistogramTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public RankHistogramTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( RankHistogramTest.class );
+    }
+
+    /**
+     * Histogramme d'une partition : positions distinctes croissantes et nombre de coureurs
+     */
+    public void testOf()
+    {
+        RankHistogram h = RankHistogram.of(new long[] { 30, 10, 30, 20, 30 });
+
+        assertEquals(3, h.size());
+        assertEquals(5, h.getRunners());
+        assertEquals(10, h.getPositions()[0]);
+        assertEquals(30, h.getPositions()[2]);
+        assertEquals(3, h.getCounts()[2]);
+        assertEquals(1, h.indexOf(20));
+        assertEquals(-1, h.indexOf(25));
+    }
+
+    /**
+     * Fusion des partitions puis rang de chaque position, comparés à un décompte naïf
+     */
+    public void testMergeAndRankAgainstNaiveCount()
+    {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            int partitions = 1 + random.nextInt(6);
+            List<long[]> values = new ArrayList<>();
+            List<RankHistogram> parts = new ArrayList<>();
+            List<Long> all = new ArrayList<>();
+            for (int p = 0; p < partitions; p++) {
+                // partitions vides comprises
+                long[] v = new long[random.nextInt(30)];
+                for (int i = 0; i < v.length; i++) {
+                    v[i] = random.nextInt(40);
+                    all.add(v[i]);
+                }
+                values.add(v);
+                parts.add(RankHistogram.of(v));
+            }
+            RankHistogram global = RankHistogram.merge(parts);
+            assertEquals(all.size(), global.getRunners());
+
+            for (int p = 0; p < partitions; p++) {
+                RankHistogram part = parts.get(p);
+                int[] ahead = new int[part.size()];
+                int[] tied = new int[part.size()];
+                global.rank(part, ahead, tied);
+
+                for (long v : values.get(p)) {
+                    int greater = 0;
+                    int same = 0;
+                    for (long w : all) {
+                        if (w > v) {
+                            greater++;
+                        } else if (w == v) {
+                            same++;
+                        }
+                    }
+                    int k = part.indexOf(v);
+                    assertEquals(greater, ahead[k]);
+                    assertEquals(same, tied[k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fusion sans partition : histogramme vide
+     */
+    public void testMergeNothing()
+    {
+        RankHistogram global = RankHistogram.merge(new ArrayList<RankHistogram>());
+
+        assertEquals(0, global.size());
+        assertEquals(0, global.getRunners());
+    }
+}
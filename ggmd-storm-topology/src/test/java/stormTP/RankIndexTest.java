@@ -0,0 +1,108 @@
+package stormTP;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.core.RankIndex;
+
+/**
+ * Unit test for RankIndex, checked against a sorted list.
+ */
+public class RankIndexTest 
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public RankIndexTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( RankIndexTest.class );
+    }
+
+    /**
+     * Rang = 1 + coureurs devant, "ex" s'il y a des ex aequo
+     */
+    public void testRankWithTies()
+    {
+        RankIndex index = new RankIndex();
+        long[] positions = { 50, 20, 50, 70, 10 };
+        for (long p : positions) {
+            index.add(p);
+        }
+
+        assertEquals(5, index.size());
+        assertEquals(0, index.countGreater(70));
+        assertEquals(1, index.countGreater(50));
+        assertEquals(2, index.count(50));
+        assertEquals(3, index.countGreater(20));
+        assertEquals(4, index.countGreater(10));
+        assertEquals(0, index.count(30));
+        assertEquals(3, index.countGreater(30));
+    }
+
+    /**
+     * Ajouts et retraits aléatoires : countGreater et count comparés à une liste triée
+     */
+    public void testAgainstSortedList()
+    {
+        Random random = new Random(42);
+        RankIndex index = new RankIndex(4);
+        List<Long> sorted = new ArrayList<>();
+
+        for (int step = 0; step < 20000; step++) {
+            long p = random.nextInt(200);
+            if (sorted.isEmpty() || random.nextInt(3) > 0) {
+                index.add(p);
+                sorted.add(p);
+            } else {
+                assertEquals(sorted.remove(p), index.remove(p));
+            }
+            Collections.sort(sorted);
+
+            long q = random.nextInt(210) - 5;
+            int greater = 0;
+            int same = 0;
+            for (long v : sorted) {
+                if (v > q) {
+                    greater++;
+                } else if (v == q) {
+                    same++;
+                }
+            }
+            assertEquals(sorted.size(), index.size());
+            assertEquals(greater, index.countGreater(q));
+            assertEquals(same, index.count(q));
+        }
+    }
+
+    /**
+     * Retrait d'une position absente : l'index est inchangé
+     */
+    public void testRemoveAbsent()
+    {
+        RankIndex index = new RankIndex();
+        index.add(5);
+
+        assertFalse(index.remove(6));
+        assertEquals(1, index.size());
+        assertTrue(index.remove(5));
+        assertFalse(index.remove(5));
+        assertEquals(0, index.size());
+        assertEquals(0, index.countGreater(0));
+    }
+}
@@ -0,0 +1,144 @@
+package stormTP;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.core.RunnerColumns;
+import stormTP.core.RunnerColumnsSerializer;
+
+/**
+ * Unit test for RunnerColumnsSerializer: Kryo round trips of state blocks.
+ */
+public class RunnerColumnsSerializerTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public RunnerColumnsSerializerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( RunnerColumnsSerializerTest.class );
+    }
+
+    /**
+     * Bloc vide, puis coureurs aux deux bornes du bloc
+     */
+    public void testBounds()
+    {
+        int base = 3 * RunnerColumns.SIZE;
+        RunnerColumns empty = new RunnerColumns(base);
+        assertSameColumns(empty, roundTrip(empty));
+
+        RunnerColumns c = new RunnerColumns(base);
+        c.put(base, 0, 0);
+        c.put(base + RunnerColumns.SIZE - 1, 7, -3);
+        RunnerColumns read = roundTrip(c);
+        assertSameColumns(c, read);
+        assertEquals(2, read.getLive());
+    }
+
+    /**
+     * Valeurs négatives, grands tops et grands écarts d'id, coureurs retirés
+     */
+    public void testValues()
+    {
+        RunnerColumns c = new RunnerColumns(RunnerColumns.SIZE);
+        int base = c.getBase();
+        c.put(base + 1, Long.MAX_VALUE, Long.MIN_VALUE);
+        c.put(base + 2, 1L << 40, Long.MAX_VALUE);
+        c.put(base + 700, 12, -1);
+        c.put(base + 701, 12, 1);
+        c.put(base + 900, 5, 99);
+        c.remove(base + 900);
+        c.remove(base + 901);
+
+        RunnerColumns read = roundTrip(c);
+        assertSameColumns(c, read);
+        assertEquals(4, read.getLive());
+        assertEquals(-1, read.getTop(base + 900));
+    }
+
+    /**
+     * Bloc plein, et écriture compacte : quelques octets par coureur
+     */
+    public void testFull()
+    {
+        RunnerColumns c = new RunnerColumns(0);
+        for (int id = 0; id < RunnerColumns.SIZE; id++) {
+            c.put(id, 1000 + id % 3, (id * 37) % 200 - 100);
+        }
+        byte[] bytes = write(c);
+        assertTrue(bytes.length + " bytes", bytes.length <= 4 + 5 * RunnerColumns.SIZE);
+        assertSameColumns(c, read(bytes));
+    }
+
+    /**
+     * copy est indépendante de l'original
+     */
+    public void testCopy()
+    {
+        RunnerColumns c = new RunnerColumns(0);
+        c.put(4, 10, 20);
+        RunnerColumns copy = new RunnerColumnsSerializer().copy(new Kryo(), c);
+        c.put(4, 11, 21);
+        c.put(5, 11, 22);
+        assertEquals(10, copy.getTop(4));
+        assertEquals(20, copy.getValue(4));
+        assertEquals(-1, copy.getTop(5));
+        assertEquals(1, copy.getLive());
+    }
+
+    static RunnerColumns roundTrip(RunnerColumns c)
+    {
+        return read(write(c));
+    }
+
+    static byte[] write(RunnerColumns c)
+    {
+        Output out = new Output(64, -1);
+        kryo().writeObject(out, c);
+        return out.toBytes();
+    }
+
+    static RunnerColumns read(byte[] bytes)
+    {
+        Input in = new Input(bytes);
+        RunnerColumns c = kryo().readObject(in, RunnerColumns.class);
+        assertEquals("bytes read", bytes.length, in.position());
+        return c;
+    }
+
+    /*
+    Kryo configuré comme par Serialization.register
+    * */
+    static Kryo kryo()
+    {
+        Kryo kryo = new Kryo();
+        kryo.register(RunnerColumns.class, new RunnerColumnsSerializer());
+        return kryo;
+    }
+
+    static void assertSameColumns(RunnerColumns expected, RunnerColumns actual)
+    {
+        assertEquals(expected.getBase(), actual.getBase());
+        assertEquals(expected.getLive(), actual.getLive());
+        for (int id = expected.getBase(); id < expected.getBase() + RunnerColumns.SIZE; id++) {
+            assertEquals("top " + id, expected.getTop(id), actual.getTop(id));
+            assertEquals("value " + id, expected.getValue(id), actual.getValue(id));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package stormTP;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.stream.RunnerScanner;
+
+/**
+ * Unit test for RunnerScanner, checked against the Jackson tree of the same top.
+ */
+public class RunnerScannerTest
+    extends TestCase
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int TOTAL = 50;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public RunnerScannerTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( RunnerScannerTest.class );
+    }
+
+    /**
+     * Un coureur suivi en début, au milieu et en fin de top
+     */
+    public void testOneWatched() throws Exception
+    {
+        String json = top(TOTAL, 1234);
+        for (int id : new int[] { 0, TOTAL / 2, TOTAL - 1 }) {
+            List<String> found = scan(new RunnerScanner(id), json);
+            assertEquals("id " + id, 1, found.size());
+            assertEquals("id " + id, expected(json, bits(id)), found);
+        }
+    }
+
+    /**
+     * Plusieurs coureurs suivis, dispersés dans le top, donnés par un BitSet
+     */
+    public void testSeveralWatched() throws Exception
+    {
+        String json = top(TOTAL, 77);
+        BitSet watched = bits(0, 3, 17, 31, TOTAL - 1);
+        RunnerScanner scanner = new RunnerScanner(watched);
+
+        List<String> found = scan(scanner, json);
+        assertEquals(5, found.size());
+        assertEquals(expected(json, watched), found);
+
+        // la copie du BitSet protège le scanner des modifications de l'appelant
+        watched.set(5);
+        assertFalse(scanner.isWatched(5));
+        assertEquals(found, scan(scanner, top(TOTAL, 77)));
+
+        // le même scanner réutilisé sur le top suivant
+        String next = top(TOTAL, 78);
+        assertEquals(expected(next, bits(0, 3, 17, 31, TOTAL - 1)), scan(scanner, next));
+    }
+
+    /**
+     * Un coureur suivi absent du top n'est pas signalé, les autres le sont
+     */
+    public void testMissing() throws Exception
+    {
+        String json = top(TOTAL, 5);
+        assertEquals(0, scan(new RunnerScanner(TOTAL + 10), json).size());
+
+        BitSet watched = bits(2, TOTAL + 10);
+        List<String> found = scan(new RunnerScanner(watched), json);
+        assertEquals(1, found.size());
+        assertEquals(expected(json, watched), found);
+
+        assertEquals(0, scan(new RunnerScanner(2), "{\"timestamp\":1,\"runners\":[]}").size());
+    }
+
+    /**
+     * Ancien format : un coureur seul par tuple, suivi ou non
+     */
+    public void testSingleRunner() throws Exception
+    {
+        String json = "{\"id\":3,\"top\":42,\"tour\":1,\"cellule\":17,\"total\":10,\"maxcel\":100}";
+        assertEquals(List.of(runner(MAPPER.readTree(json))), scan(new RunnerScanner(3), json));
+        assertEquals(0, scan(new RunnerScanner(4), json).size());
+    }
+
+    /**
+     * Champs inconnus, objets imbriqués et ordre des champs différent de celui du générateur
+     */
+    public void testOtherFields() throws Exception
+    {
+        String json = "{\"meta\":{\"runners\":[{\"id\":1}]},\"runners\":["
+                + "{\"id\":0,\"top\":9,\"tour\":0,\"cellule\":1,\"total\":3,\"maxcel\":50},"
+                + "{\"nom\":\"x\",\"pos\":[1,2],\"cellule\":4,\"id\":1,\"top\":9,\"tour\":2,\"total\":3,\"maxcel\":50},"
+                + "{\"id\":2,\"extra\":{\"a\":[{}]},\"top\":9,\"tour\":1,\"cellule\":8,\"total\":3,\"maxcel\":50}"
+                + "],\"timestamp\":5}";
+        BitSet watched = bits(1, 2);
+        assertEquals(expected(json, watched), scan(new RunnerScanner(watched), json));
+    }
+
+    /*
+    coureurs trouvés par le scanner, dans l'ordre de visite
+    * */
+    static List<String> scan(RunnerScanner scanner, String json) throws Exception
+    {
+        List<String> found = new ArrayList<>();
+        int n = scanner.scan(json, (id, top, tour, cellule, total, maxcel) ->
+                found.add(id + "/" + top + "/" + tour + "/" + cellule + "/" + total + "/" + maxcel));
+        assertEquals(found.size(), n);
+        return found;
+    }
+
+    /*
+    coureurs suivis lus dans l'arbre Jackson complet du top
+    * */
+    static List<String> expected(String json, BitSet watched) throws Exception
+    {
+        List<String> runners = new ArrayList<>();
+        for (JsonNode r : MAPPER.readTree(json).get("runners")) {
+            if (watched.get(r.get("id").asInt())) {
+                runners.add(runner(r));
+            }
+        }
+        return runners;
+    }
+
+    static String runner(JsonNode r)
+    {
+        return r.get("id").asInt() + "/" + r.get("top").asLong() + "/" + r.get("tour").asInt() + "/"
+                + r.get("cellule").asInt() + "/" + r.get("total").asInt() + "/" + r.get("maxcel").asInt();
+    }
+
+    static BitSet bits(int... ids)
+    {
+        BitSet b = new BitSet();
+        for (int id : ids) {
+            b.set(id);
+        }
+        return b;
+    }
+
+    /*
+    top au format JSON du générateur
+    * */
+    static String top(int total, long top)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"timestamp\":").append(1000 + top).append(",\"runners\":[");
+        for (int i = 0; i < total; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i).append(",\"top\":").append(top)
+                    .append(",\"tour\":").append((i + top) % 7).append(",\"cellule\":").append((i * 31 + top) % 100)
+                    .append(",\"total\":").append(total).append(",\"maxcel\":100}");
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,226 @@
+package stormTP;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.stream.StreamBuffer;
+import stormTP.stream.StreamBuffer.FullPolicy;
+
+/**
+ * Unit test for StreamBuffer: full policies, released slots and a producer/consumer run.
+ */
+public class StreamBufferTest
+    extends TestCase
+{
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public StreamBufferTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( StreamBufferTest.class );
+    }
+
+    /**
+     * BLOCK : le producteur attend qu'une place se libère, rien n'est perdu
+     */
+    public void testBlock() throws InterruptedException
+    {
+        StreamBuffer<Integer> buffer = new StreamBuffer<>(3, FullPolicy.BLOCK);
+        assertEquals(4, buffer.getCapacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.put(i));
+        }
+        assertFalse(buffer.offer(4));
+
+        CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            buffer.put(4);
+            done.countDown();
+        });
+        producer.start();
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+
+        assertEquals(Integer.valueOf(0), buffer.readTuple());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.readTuple());
+        }
+        assertNull(buffer.readTuple());
+        assertEquals(1, buffer.getBlocked());
+        assertEquals(0, buffer.getDropped());
+        assertEquals(4, buffer.getPeak());
+        assertReleased(buffer);
+    }
+
+    /**
+     * BLOCK : un producteur interrompu pendant l'attente abandonne l'élément
+     */
+    public void testBlockInterrupted() throws InterruptedException
+    {
+        StreamBuffer<Integer> buffer = new StreamBuffer<>(2, FullPolicy.BLOCK);
+        buffer.put(0);
+        buffer.put(1);
+
+        AtomicBoolean result = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> result.set(buffer.put(2)));
+        producer.start();
+        producer.interrupt();
+        producer.join(5000);
+
+        assertFalse(producer.isAlive());
+        assertFalse(result.get());
+        assertEquals(2, buffer.getDepth());
+    }
+
+    /**
+     * DROP_OLDEST : les plus anciens éléments non lus sont écartés, les emplacements libérés
+     */
+    public void testDropOldest()
+    {
+        StreamBuffer<Integer> buffer = new StreamBuffer<>(4, FullPolicy.DROP_OLDEST);
+        for (int i = 0; i < 7; i++) {
+            assertTrue(buffer.put(i));
+        }
+        assertEquals(3, buffer.getDropped());
+        assertEquals(4, buffer.getDepth());
+        for (int i = 3; i < 7; i++) {
+            assertEquals(Integer.valueOf(i), buffer.readTuple());
+        }
+        assertNull(buffer.readTuple());
+        assertReleased(buffer);
+
+        // écarts et lectures entremêlés
+        for (int i = 7; i < 12; i++) {
+            buffer.put(i);
+        }
+        assertEquals(Integer.valueOf(8), buffer.readTuple());
+        buffer.put(12);
+        buffer.put(13);
+        List<Integer> rest = new ArrayList<>();
+        assertEquals(4, buffer.drainTo(rest, 10));
+        assertEquals(List.of(10, 11, 12, 13), rest);
+        assertEquals(5, buffer.getDropped());
+        assertReleased(buffer);
+    }
+
+    /**
+     * DROP_NEWEST : le nouvel élément est écarté, ceux de la file restent dans l'ordre
+     */
+    public void testDropNewest()
+    {
+        StreamBuffer<Integer> buffer = new StreamBuffer<>(4, FullPolicy.DROP_NEWEST);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.put(i));
+        }
+        assertFalse(buffer.put(4));
+        assertFalse(buffer.put(5));
+        assertEquals(2, buffer.getDropped());
+
+        List<Integer> read = new ArrayList<>();
+        assertEquals(3, buffer.drainTo(read, 3));
+        assertTrue(buffer.put(6));
+        assertEquals(2, buffer.drainTo(read, 10));
+        assertEquals(List.of(0, 1, 2, 3, 6), read);
+        assertEquals(0, buffer.drainTo(read, 10));
+        assertReleased(buffer);
+    }
+
+    /**
+     * Un producteur et un consommateur en parallèle, pour chaque politique : ordre conservé,
+     * éléments lus + écartés = éléments écrits, aucun emplacement retenu à la fin
+     */
+    public void testProducerConsumer() throws InterruptedException
+    {
+        int n = 50000;
+        for (FullPolicy policy : FullPolicy.values()) {
+            for (int capacity : new int[] { 2, 64 }) {
+                StreamBuffer<Integer> buffer = new StreamBuffer<>(capacity, policy);
+                AtomicBoolean finished = new AtomicBoolean(false);
+                AtomicLong accepted = new AtomicLong();
+                Thread producer = new Thread(() -> {
+                    for (int i = 0; i < n; i++) {
+                        if (buffer.put(i)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                    finished.set(true);
+                });
+                producer.start();
+
+                String what = policy + "/" + capacity;
+                List<Integer> batch = new ArrayList<>();
+                long read = 0;
+                int last = -1;
+                for (int round = 0; ; round++) {
+                    boolean done = finished.get();
+                    batch.clear();
+                    // alternance des deux façons de lire
+                    if ((round & 1) == 0) {
+                        Integer item = buffer.readTuple();
+                        if (item != null) {
+                            batch.add(item);
+                        }
+                    } else {
+                        buffer.drainTo(batch, 16);
+                    }
+                    for (Integer item : batch) {
+                        assertTrue(what + " : " + item + " after " + last, item > last);
+                        last = item;
+                    }
+                    read += batch.size();
+                    if (batch.isEmpty() && done) {
+                        break;
+                    }
+                }
+                producer.join();
+
+                assertEquals(what, n, read + buffer.getDropped());
+                if (policy == FullPolicy.DROP_NEWEST) {
+                    assertEquals(what, read, accepted.get());
+                }
+                assertTrue(what, buffer.getPeak() <= buffer.getCapacity());
+                assertEquals(what, 0, buffer.getDepth());
+                assertReleased(buffer);
+                if (policy == FullPolicy.BLOCK) {
+                    assertEquals(what, n - 1, last);
+                    assertEquals(what, 0, buffer.getDropped());
+                }
+            }
+        }
+    }
+
+    /*
+    aucun emplacement de la file ne retient un élément déjà lu ou écarté
+    * */
+    static void assertReleased(StreamBuffer<?> buffer)
+    {
+        try {
+            Field field = StreamBuffer.class.getDeclaredField("ring");
+            field.setAccessible(true);
+            Object[] ring = (Object[]) field.get(buffer);
+            for (int i = 0; i < ring.length; i++) {
+                assertNull("slot " + i + " of " + buffer, ring[i]);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package stormTP;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import stormTP.stream.TopBarrier;
+
+/**
+ * Unit test for TopBarrier: complete, timed out and forced releases, late elements and new races.
+ */
+public class TopBarrierTest
+    extends TestCase
+{
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /* tops libérés, "top:éléments triés:complet" */
+    private final List<String> released = new ArrayList<>();
+    private final TopBarrier.Release<String> release = (top, items, complete) -> {
+        List<String> sorted = new ArrayList<>(items);
+        Collections.sort(sorted);
+        released.add(top + ":" + String.join(",", sorted) + ":" + (complete ? "complete" : "partial"));
+    };
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TopBarrierTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite()
+    {
+        return new TestSuite( TopBarrierTest.class );
+    }
+
+    /**
+     * Un top est libéré dès que tous ses coureurs sont arrivés, les tops dans l'ordre
+     */
+    public void testComplete()
+    {
+        TopBarrier<String> barrier = new TopBarrier<>(NEVER, 4);
+        barrier.add(0, 0, 3, "a", 0);
+        barrier.add(0, 1, 3, "b", 0);
+        barrier.drain(0, release);
+        assertEquals(0, released.size());
+        assertFalse(barrier.isReleased(0));
+
+        // le top 1 complet attend le top 0
+        barrier.add(1, 0, 3, "d", 0);
+        barrier.add(1, 2, 3, "f", 0);
+        barrier.add(1, 1, 3, "e", 0);
+        barrier.drain(0, release);
+        assertEquals(0, released.size());
+        assertEquals(2, barrier.getPending());
+
+        barrier.add(0, 2, 3, "c", 0);
+        barrier.drain(0, release);
+        assertEquals(List.of("0:a,b,c:complete", "1:d,e,f:complete"), released);
+        assertTrue(barrier.isReleased(1));
+        assertFalse(barrier.isReleased(2));
+        assertEquals(2, barrier.getComplete());
+        assertEquals(0, barrier.getPending());
+    }
+
+    /**
+     * Un top incomplet est libéré quand son premier élément attend depuis plus que le délai
+     */
+    public void testTimeout()
+    {
+        TopBarrier<String> barrier = new TopBarrier<>(1000, 4);
+        barrier.add(0, 0, 3, "a", 100);
+        barrier.add(0, 1, 3, "b", 900);
+        barrier.add(1, 0, 3, "c", 1000);
+        barrier.drain(1099, release);
+        assertEquals(0, released.size());
+
+        barrier.drain(1100, release);
+        assertEquals(List.of("0:a,b:partial"), released);
+        assertEquals(1, barrier.getTimedOut());
+        assertEquals(1, barrier.getPending());
+
+        barrier.drain(2000, release);
+        assertEquals(List.of("0:a,b:partial", "1:c:partial"), released);
+        assertEquals(2, barrier.getTimedOut());
+        assertEquals(0, barrier.getComplete());
+    }
+
+    /**
+     * Au-delà de maxTops tops en attente, le plus ancien est libéré incomplet
+     */
+    public void testForced()
+    {
+        TopBarrier<String> barrier = new TopBarrier<>(NEVER, 2);
+        barrier.add(0, 0, 2, "a", 0);
+        barrier.add(1, 0, 2, "b", 0);
+        barrier.add(1, 1, 2, "c", 0);
+        barrier.drain(0, release);
+        assertEquals(0, released.size());
+
+        barrier.add(2, 0, 2, "d", 0);
+        barrier.drain(0, release);
+        assertEquals(List.of("0:a:partial", "1:b,c:complete"), released);
+        assertEquals(1, barrier.getForced());
+        assertEquals(1, barrier.getComplete());
+        assertEquals(1, barrier.getPending());
+    }
+
+    /**
+     * Un élément d'un top déjà libéré est en retard, sans commencer une nouvelle course
+     */
+    public void testLate()
+    {
+        TopBarrier<String> barrier = new TopBarrier<>(NEVER, 4);
+        barrier.add(0, 0, 2, "a", 0);
+        barrier.add(0, 1, 2, "b", 0);
+        barrier.drain(0, release);
+
+        // même élément rejoué plusieurs fois : toujours le même top en retard
+        for (int i = 0; i < 10; i++) {
+            assertFalse(barrier.isNewRace(0, 2));
+            assertTrue(barrier.isReleased(0));
+        }
+        assertFalse(barrier.isNewRace(1, 2));
+        assertFalse(barrier.isReleased(1));
+    }
+
+    /**
+     * Un coureur reçu deux fois pour un top remplace le premier élément, compté une seule fois
+     */
+    public void testReplayed()
+    {
+        TopBarrier<String> barrier = new TopBarrier<>(NEVER, 4);
+        assertNull(barrier.add(0, 1, 2, "a", 0));
+        assertEquals("a", barrier.add(0, 1, 2, "a2", 0));
+        barrier.drain(0, release);
+        assertEquals(0, released.size());
+
+        assertNull(barrier.add(0, 0, 2, "b", 0));
+        barrier.drain(0, release);
+        assertEquals(List.of("0:a2,b:complete"), released);
+    }
+
+    /**
+     * Un nombre de coureurs différent commence une nouvelle course : restart libère les tops en
+     * attente et aucun top n'est plus libéré
+     */
+    public void testNewRaceByExpected()
+    {
+        TopBarrier<String> barrier = new TopBarrier<>(NEVER, 4);
+        barrier.add(10, 0, 3, "a", 0);
+        barrier.add(10, 1, 3, "b", 0);
+        barrier.add(10, 2, 3, "c", 0);
+        barrier.add(11, 0, 3, "d", 0);
+        barrier.add(12, 1, 3, "e", 0);
+        barrier.drain(0, release);
+        assertEquals(List.of("10:a,b,c:complete"), released);
+
+        assertFalse(barrier.isNewRace(13, 3));
+        assertTrue(barrier.isNewRace(0, 2));
+        barrier.restart(release);
+        assertEquals(List.of("10:a,b,c:complete", "11:d:partial", "12:e:partial"), released);
+        assertEquals(1, barrier.getRestarts());
+        assertEquals(2, barrier.getForced());
+        assertEquals(0, barrier.getPending());
+        assertFalse(barrier.isReleased(0));
+        assertFalse(barrier.isReleased(10));
+
+        // la nouvelle course repart de zéro
+        assertFalse(barrier.isNewRace(0, 2));
+        barrier.add(0, 0, 2, "x", 0);
+        barrier.add(0, 1, 2, "y", 0);
+        barrier.drain(0, release);
+        assertEquals("0:x,y:complete", released.get(3));
+    }
+
+    /**
+     * Des éléments en retard sur plus de maxTops tops successifs, sans élément à l'heure entre
+     * eux, commencent une nouvelle course de même taille
+     */
+    public void testNewRaceByLateTops()
+    {
+        TopBarrier<String> barrier = new TopBarrier<>(NEVER, 3);
+        for (int top = 0; top < 10; top++) {
+            barrier.add(top, 0, 1, "t" + top, 0);
+        }
+        barrier.drain(0, release);
+        assertTrue(barrier.isReleased(9));
+
+        assertFalse(barrier.isNewRace(0, 1));
+        assertFalse(barrier.isNewRace(1, 1));
+        assertFalse(barrier.isNewRace(2, 1));
+        // un élément à l'heure entre deux retards : tuples rejoués, pas de nouvelle course
+        barrier.add(10, 0, 1, "t10", 0);
+        assertFalse(barrier.isNewRace(3, 1));
+        assertFalse(barrier.isNewRace(4, 1));
+        assertFalse(barrier.isNewRace(5, 1));
+        assertTrue(barrier.isNewRace(6, 1));
+
+        barrier.restart(release);
+        assertEquals("10:t10:partial", released.get(released.size() - 1));
+        assertFalse(barrier.isReleased(6));
+        assertFalse(barrier.isNewRace(6, 1));
+    }
+}
@@ -0,0 +1,82 @@
+package stormTP.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Coût par tuple de la recherche d'un coureur dans un top JSON, selon le nombre de coureurs :
+ * arbre Jackson complet (ancien MyTortoiseBolt) contre lecture en flux (RunnerScanner).
+ *
+ * Lancement : mvn test-compile exec:java -Dexec.classpathScope=test
+ *             -Dexec.mainClass=stormTP.stream.RunnerScannerBenchmark [-Dexec.args="3"]
+ *
+ * Le coureur suivi (3 par défaut) est proche du début du top : la lecture en flux s'arrête
+ * après lui et son coût ne dépend pas du nombre total de coureurs. Pour un id en fin de top,
+ * tout le document est parcouru, sans être matérialisé.
+ */
+public class RunnerScannerBenchmark {
+
+	private static final int[] TOTALS = { 10, 100, 1000, 10000, 100000 };
+	/* nombre de coureurs lus par mesure, pour des durées comparables d'une taille à l'autre */
+	private static final long WORK = 5_000_000L;
+
+	private static long sink = 0;
+
+	public static void main(String[] args) throws Exception {
+		int watched = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+		ObjectMapper mapper = new ObjectMapper();
+		RunnerScanner scanner = new RunnerScanner(watched);
+		RunnerScanner.Visitor visitor = (id, top, tour, cellule, total, maxcel) -> sink += top + cellule;
+
+		System.out.printf("%8s %10s %14s %14s %8s%n", "total", "bytes", "tree ns/tuple", "scan ns/tuple", "ratio");
+		for (int total : TOTALS) {
+			String json = top(total, 1234);
+			int iterations = (int) Math.max(20, WORK / total);
+
+			// préchauffage puis mesure, pour chacune des deux méthodes
+			double tree = 0;
+			double scan = 0;
+			for (int round = 0; round < 3; round++) {
+				tree = measure(iterations, () -> {
+					for (JsonNode runner : mapper.readTree(json).get("runners")) {
+						if (runner.get("id").asInt() == watched) {
+							sink += runner.get("top").asLong() + runner.get("cellule").asInt();
+						}
+					}
+				});
+				scan = measure(iterations, () -> scanner.scan(json, visitor));
+			}
+			System.out.printf("%8d %10d %14.0f %14.0f %7.1fx%n", total, json.length(), tree, scan, tree / scan);
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	private interface Work {
+		void run() throws Exception;
+	}
+
+	private static double measure(int iterations, Work w) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			w.run();
+		}
+		return (double) (System.nanoTime() - start) / iterations;
+	}
+
+	/* top au format JSON du générateur */
+	static String top(int total, long top) {
+		StringBuilder sb = new StringBuilder(32 + total * 72);
+		sb.append("{\"timestamp\":").append(System.currentTimeMillis()).append(",\"runners\":[");
+		for (int i = 0; i < total; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"id\":").append(i).append(",\"top\":").append(top)
+					.append(",\"tour\":").append(i % 7).append(",\"cellule\":").append((i * 31) % 100)
+					.append(",\"total\":").append(total).append(",\"maxcel\":100}");
+		}
+		return sb.append("]}").toString();
+	}
+}